@@ -0,0 +1,60 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.service.AnalysisSession;
+import bca.oraclelog.queryanalyzer.service.OracleQueryAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One EXPLAIN PLAN analysis on a reused session, per plan retrieval mode
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalyzerBenchmark {
+    
+    @Param({"STANDARD", "SINGLE_ROUND_TRIP"})
+    public QueryDebugProperties.PlanRetrievalMode retrievalMode;
+    
+    @Param({"0", "200"})
+    public long explainLatencyMicros;
+    
+    private AnalyzerFixture fixture;
+    private OracleQueryAnalyzer analyzer;
+    private AnalysisSession session;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        long latencyNanos = TimeUnit.MICROSECONDS.toNanos(explainLatencyMicros);
+        fixture = new AnalyzerFixture(AnalyzerFixture.Mode.FULL, retrievalMode, latencyNanos);
+        analyzer = fixture.bean(OracleQueryAnalyzer.class);
+        session = AnalysisSession.wrap(StubJdbc.connection(latencyNanos));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        fixture.close();
+    }
+    
+    @Benchmark
+    public QueryExecutionSummary analyzeQuery() throws Exception {
+        return analyzer.analyzeQuery(session, AnalyzerFixture.QUERIES[1]);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.interceptor.OracleQueryDebugInterceptor;
+import bca.oraclelog.queryanalyzer.service.AnalysisCircuitBreaker;
+import bca.oraclelog.queryanalyzer.service.AnalysisConnectionPool;
+import bca.oraclelog.queryanalyzer.service.BindSensitivityTracker;
+import bca.oraclelog.queryanalyzer.service.CallSiteResolver;
+import bca.oraclelog.queryanalyzer.service.CallSiteStatistics;
+import bca.oraclelog.queryanalyzer.service.HeavyStatementAggregator;
+import bca.oraclelog.queryanalyzer.service.OracleQueryAnalyzer;
+import bca.oraclelog.queryanalyzer.service.PlanStore;
+import bca.oraclelog.queryanalyzer.service.QueryAnalysisPipeline;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMetrics;
+import bca.oraclelog.queryanalyzer.service.QueryDebugFormatter;
+import bca.oraclelog.queryanalyzer.service.QueryDebugOutput;
+import bca.oraclelog.queryanalyzer.service.QueryGuardrail;
+import bca.oraclelog.queryanalyzer.service.QueryLatencyRecorder;
+import bca.oraclelog.queryanalyzer.service.QueryPlanCache;
+import bca.oraclelog.queryanalyzer.service.QuerySampler;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.time.Duration;
+
+/**
+ * The analyzer's services wired the way QueryAnalyzerConfig wires them, over the stub driver.
+ * Reports are published to no sink so the numbers exclude console and file I/O.
+ */
+public final class AnalyzerFixture implements AutoCloseable {
+    
+    public enum Mode {
+        // Interceptor installed, analysis switched off
+        DISABLED,
+        // One statement in a hundred is analyzed, plans are cached
+        SAMPLED,
+        // Every statement is analyzed, every plan comes from the cache
+        CACHED,
+        // Every statement runs EXPLAIN PLAN against the stub
+        FULL
+    }
+    
+    static final String[] QUERIES = {
+            "SELECT o.ID, o.STATUS FROM ORDERS o WHERE o.ID = ?",
+            "SELECT o.ID, l.SKU, l.QTY FROM ORDERS o JOIN ORDER_LINES l ON l.ORDER_ID = o.ID WHERE o.CUSTOMER_ID = ?",
+            "UPDATE ORDERS SET STATUS = 'SHIPPED' WHERE ID = ?",
+            "SELECT COUNT(*) FROM ORDER_LINES WHERE SKU IN (?, ?, ?) AND CREATED_AT > SYSDATE - 7"
+    };
+    
+    private final GenericApplicationContext context = new GenericApplicationContext();
+    private final AnalysisConnectionPool connectionPool;
+    private final OracleQueryDebugInterceptor interceptor;
+    
+    AnalyzerFixture(Mode mode, QueryDebugProperties.PlanRetrievalMode retrievalMode, long latencyNanos) {
+        QueryDebugProperties properties = new QueryDebugProperties();
+        properties.setEnabled(mode != Mode.DISABLED);
+        properties.setLogToConsole(false);
+        properties.setLogToFile(false);
+        properties.getPlan().setRetrievalMode(retrievalMode);
+        properties.getCache().setEnabled(mode != Mode.FULL);
+        properties.getSampling().setRate(mode == Mode.SAMPLED ? 0.01 : 1.0);
+        // Keep the sampler and the circuit breaker from backing off so every mode measures the same path throughout
+        properties.getSampling().setAdaptive(false);
+        properties.getCircuitBreaker().setEnabled(false);
+        
+        QueryDebugProperties.Pool pool = new QueryDebugProperties.Pool();
+        pool.setMaxSize(Runtime.getRuntime().availableProcessors());
+        pool.setAcquireTimeout(Duration.ofSeconds(1));
+        connectionPool = new AnalysisConnectionPool(StubJdbc.dataSource(latencyNanos), pool);
+        
+        context.registerBean(QueryDebugProperties.class, () -> properties);
+        context.registerBean(AnalysisConnectionPool.class, () -> connectionPool);
+        context.registerBean(QueryAnalyzerMetrics.class);
+        context.registerBean(QueryDebugFormatter.class);
+        context.registerBean(QueryDebugOutput.class);
+        context.registerBean(QueryPlanCache.class);
+        context.registerBean(QuerySampler.class);
+        context.registerBean(AnalysisCircuitBreaker.class);
+        context.registerBean(QueryAnalysisPipeline.class);
+        context.registerBean(OracleQueryAnalyzer.class);
+        context.registerBean(QueryLatencyRecorder.class);
+        context.registerBean(HeavyStatementAggregator.class);
+        context.registerBean(PlanStore.class);
+        context.registerBean(BindSensitivityTracker.class);
+        context.registerBean(CallSiteResolver.class);
+        context.registerBean(CallSiteStatistics.class);
+        context.registerBean(QueryGuardrail.class);
+        context.refresh();
+        
+        interceptor = new OracleQueryDebugInterceptor();
+        interceptor.setApplicationContext(context);
+        interceptor.setAnalysisEnabled(properties.isEnabled());
+    }
+    
+    OracleQueryDebugInterceptor interceptor() { return interceptor; }
+    
+    <T> T bean(Class<T> type) { return context.getBean(type); }
+    
+    @Override
+    public void close() {
+        connectionPool.close();
+        context.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import bca.oraclelog.queryanalyzer.service.AnalysisSession;
+import bca.oraclelog.queryanalyzer.service.OracleQueryAnalyzer;
+import bca.oraclelog.queryanalyzer.service.QueryDebugFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Rendering one report with a five-node plan tree, as text and as a JSON line
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatterBenchmark {
+    
+    private QueryDebugFormatter formatter;
+    private QueryExecutionSummary summary;
+    private final StringBuilder jsonBuffer = new StringBuilder(4096);
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        try (AnalyzerFixture fixture = new AnalyzerFixture(AnalyzerFixture.Mode.FULL,
+                QueryDebugProperties.PlanRetrievalMode.STANDARD, 0);
+             AnalysisSession session = AnalysisSession.wrap(StubJdbc.connection(0))) {
+            formatter = fixture.bean(QueryDebugFormatter.class);
+            summary = fixture.bean(OracleQueryAnalyzer.class).analyzeQuery(session, AnalyzerFixture.QUERIES[1]);
+            summary.setFingerprint(SqlFingerprint.of(AnalyzerFixture.QUERIES[1]));
+        }
+    }
+    
+    @Benchmark
+    public String formatQueryDebug() {
+        return formatter.formatQueryDebug(summary);
+    }
+    
+    @Benchmark
+    public int appendJson() {
+        jsonBuffer.setLength(0);
+        formatter.appendJson(jsonBuffer, summary);
+        return jsonBuffer.length();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.interceptor.OracleQueryDebugInterceptor;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// beforeQuery + afterQuery for one statement, the work added to every application query
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+    
+    @Param({"DISABLED", "SAMPLED", "CACHED", "FULL"})
+    public AnalyzerFixture.Mode mode;
+    
+    @Param({"0", "200"})
+    public long explainLatencyMicros;
+    
+    private AnalyzerFixture fixture;
+    private OracleQueryDebugInterceptor interceptor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new AnalyzerFixture(mode, QueryDebugProperties.PlanRetrievalMode.STANDARD,
+                TimeUnit.MICROSECONDS.toNanos(explainLatencyMicros));
+        interceptor = fixture.interceptor();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+    
+    @State(Scope.Thread)
+    public static class Execution {
+        final ExecutionInfo executionInfo = new ExecutionInfo();
+        final List<List<QueryInfo>> statements = List.of(
+                List.of(new QueryInfo(AnalyzerFixture.QUERIES[0])),
+                List.of(new QueryInfo(AnalyzerFixture.QUERIES[1])),
+                List.of(new QueryInfo(AnalyzerFixture.QUERIES[2])),
+                List.of(new QueryInfo(AnalyzerFixture.QUERIES[3])));
+        int next;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            executionInfo.setSuccess(true);
+            executionInfo.setElapsedTime(TimeUnit.MICROSECONDS.toNanos(850));
+        }
+        
+        List<QueryInfo> nextStatement() {
+            next = (next + 1) & 3;
+            return statements.get(next);
+        }
+    }
+    
+    @Benchmark
+    public void beforeAndAfterQuery(Execution execution) {
+        List<QueryInfo> statement = execution.nextStatement();
+        interceptor.beforeQuery(execution.executionInfo, statement);
+        interceptor.afterQuery(execution.executionInfo, statement);
+    }
+}
\ No newline at end of file
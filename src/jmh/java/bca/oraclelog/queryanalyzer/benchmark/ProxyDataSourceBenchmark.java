@@ -0,0 +1,86 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import net.ttddyy.dsproxy.proxy.NanoTimeStopwatchFactory;
+import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// A full JDBC round trip on the stub, bare and through the proxy DataSource of QueryAnalyzerConfig
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyDataSourceBenchmark {
+    
+    @Param({"DISABLED", "SAMPLED", "CACHED", "FULL"})
+    public AnalyzerFixture.Mode mode;
+    
+    private AnalyzerFixture fixture;
+    private DataSource rawDataSource;
+    private DataSource proxyDataSource;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new AnalyzerFixture(mode, QueryDebugProperties.PlanRetrievalMode.STANDARD, 0);
+        rawDataSource = StubJdbc.dataSource(0);
+        
+        ProxyDataSource proxy = ProxyDataSourceBuilder
+                .create(rawDataSource)
+                .name("QueryAnalyzerDS")
+                .listener(fixture.interceptor())
+                .build();
+        proxy.setProxyConfig(ProxyConfig.Builder.from(proxy.getProxyConfig())
+                .stopwatchFactory(new NanoTimeStopwatchFactory())
+                .build());
+        proxyDataSource = proxy;
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+    
+    @Benchmark
+    public void rawDataSource(Blackhole blackhole) throws SQLException {
+        query(rawDataSource, blackhole);
+    }
+    
+    @Benchmark
+    public void proxyDataSource(Blackhole blackhole) throws SQLException {
+        query(proxyDataSource, blackhole);
+    }
+    
+    private static void query(DataSource dataSource, Blackhole blackhole) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(AnalyzerFixture.QUERIES[0])) {
+            pstmt.setLong(1, 42L);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                blackhole.consume(rs.next());
+            }
+        }
+    }
+}
\ No newline at end of file
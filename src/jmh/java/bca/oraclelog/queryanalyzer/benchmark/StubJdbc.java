@@ -0,0 +1,207 @@
+package bca.oraclelog.queryanalyzer.benchmark;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process JDBC stand-in built from dynamic proxies. EXPLAIN PLAN and PLAN_TABLE
+ * queries answer with a canned plan after a configurable delay; every other
+ * statement succeeds immediately with an empty result.
+ */
+final class StubJdbc {
+    
+    private static final String[] PLAN_COLUMNS = {
+            "ID", "PARENT_ID", "OPERATION", "OPTIONS", "OBJECT_NAME",
+            "COST", "CARDINALITY", "BYTES", "CPU_COST", "IO_COST", "TIME"
+    };
+    
+    private static final Object[][] PLAN_ROWS = {
+            {0, null, "SELECT STATEMENT", null, null, 42, 120, 9600, 1_250_000, 40, 1},
+            {1, 0, "NESTED LOOPS", null, null, 42, 120, 9600, 1_250_000, 40, 1},
+            {2, 1, "TABLE ACCESS", "BY INDEX ROWID", "ORDERS", 4, 1, 60, 29_000, 3, 1},
+            {3, 2, "INDEX", "UNIQUE SCAN", "PK_ORDERS", 2, 1, null, 15_000, 1, 1},
+            {4, 1, "TABLE ACCESS", "FULL", "ORDER_LINES", 38, 120, 2400, 1_200_000, 37, 1},
+    };
+    
+    private static final Object[][] NO_ROWS = {};
+    
+    private StubJdbc() {
+    }
+    
+    static DataSource dataSource(long latencyNanos) {
+        return proxy(DataSource.class, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+                return connection(latencyNanos);
+            }
+            return defaultValue(method);
+        });
+    }
+    
+    static Connection connection(long latencyNanos) {
+        boolean[] closed = {false};
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createStatement":
+                    return statement(Statement.class, null, latencyNanos);
+                case "prepareStatement":
+                    return statement(PreparedStatement.class, (String) args[0], latencyNanos);
+                case "prepareCall":
+                    return statement(CallableStatement.class, (String) args[0], latencyNanos);
+                case "close":
+                    closed[0] = true;
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "isValid":
+                    return !closed[0];
+                case "getAutoCommit":
+                    return true;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+    
+    private static <T extends Statement> T statement(Class<T> type, String preparedSql, long latencyNanos) {
+        return proxy(type, new InvocationHandler() {
+            private ResultSet cursor;
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                switch (name) {
+                    case "execute":
+                        if (isPlanStatement(sql)) {
+                            pause(latencyNanos);
+                            // Single round trip: the block returns the plan through its cursor parameter
+                            cursor = resultSet(PLAN_ROWS);
+                        }
+                        return false;
+                    case "executeQuery":
+                        if (isPlanStatement(sql)) {
+                            pause(latencyNanos);
+                            return resultSet(PLAN_ROWS);
+                        }
+                        return resultSet(NO_ROWS);
+                    case "executeUpdate":
+                    case "getUpdateCount":
+                        return 0;
+                    case "getObject":
+                        return cursor;
+                    case "executeBatch":
+                        return new int[0];
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+    
+    private static boolean isPlanStatement(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        String upper = sql.toUpperCase(Locale.ROOT);
+        return upper.contains("EXPLAIN PLAN") || (upper.contains("PLAN_TABLE") && !upper.startsWith("DELETE"));
+    }
+    
+    private static ResultSet resultSet(Object[][] rows) {
+        int[] row = {-1};
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.length;
+                case "getObject":
+                    return toOracleValue(column(rows, row[0], (String) args[0]));
+                case "getString":
+                    Object value = column(rows, row[0], (String) args[0]);
+                    return value != null ? value.toString() : null;
+                case "getInt":
+                    Object number = column(rows, row[0], (String) args[0]);
+                    return number != null ? ((Number) number).intValue() : 0;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+    
+    private static Object column(Object[][] rows, int row, String column) {
+        for (int i = 0; i < PLAN_COLUMNS.length; i++) {
+            if (PLAN_COLUMNS[i].equalsIgnoreCase(column)) {
+                return rows[row][i];
+            }
+        }
+        return null;
+    }
+    
+    // The Oracle driver hands NUMBER columns back as BigDecimal
+    private static Object toOracleValue(Object value) {
+        return value instanceof Integer ? BigDecimal.valueOf((Integer) value) : value;
+    }
+    
+    private static void pause(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "unwrap":
+                    return proxy;
+                case "isWrapperFor":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Stub" + type.getSimpleName();
+                default:
+                    return handler.invoke(proxy, method, args);
+            }
+        });
+    }
+    
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        return 0;
+    }
+}
\ No newline at end of file
@@ -1,22 +1,33 @@
 package bca.oraclelog.queryanalyzer.config;
 
 import bca.oraclelog.queryanalyzer.interceptor.OracleQueryDebugInterceptor;
+import bca.oraclelog.queryanalyzer.interceptor.QueryAnalyzerControlMBean;
+import bca.oraclelog.queryanalyzer.service.AnalysisConnectionPool;
 import net.ttddyy.dsproxy.listener.ChainListener;
-import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
+import net.ttddyy.dsproxy.proxy.NanoTimeStopwatchFactory;
+import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
 import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
 import javax.sql.DataSource;
 
+// The proxy is always installed; oracle.query.debug.enabled is only the initial state of the analysis switch
 @Configuration
-@ConditionalOnProperty(name = "oracle.query.debug.enabled", havingValue = "true")
+@EnableScheduling
 public class QueryAnalyzerConfig {
     
+    static final String CONTROL_OBJECT_NAME = "bca.oraclelog.queryanalyzer:type=QueryAnalyzerControl";
+    
     @Bean
     @ConfigurationProperties("spring.datasource")
     public DataSourceProperties dataSourceProperties() {
@@ -28,23 +39,40 @@ public class QueryAnalyzerConfig {
         return dataSourceProperties.initializeDataSourceBuilder().build();
     }
     
+    @Bean(destroyMethod = "close")
+    public AnalysisConnectionPool analysisConnectionPool(DataSourceProperties dataSourceProperties, QueryDebugProperties properties) {
+        // Unpooled driver connections; the analysis pool opens them on first use, keeps them open and bounds them itself
+        DataSource analysisDataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(SimpleDriverDataSource.class)
+                .build();
+        return new AnalysisConnectionPool(analysisDataSource, properties.getPool());
+    }
+    
     @Bean
     @Primary
-    public DataSource proxyDataSource(DataSourceProperties dataSourceProperties) {
-        // Create the original DataSource directly
-        DataSource originalDataSource = dataSourceProperties.initializeDataSourceBuilder().build();
-        
+    public DataSource proxyDataSource(@Qualifier("originalDataSource") DataSource originalDataSource,
+                                      OracleQueryDebugInterceptor queryInterceptor) {
         ChainListener listener = new ChainListener();
-        listener.addListener(new DataSourceQueryCountListener());
-        
-        // Create interceptor with the original DataSource
-        OracleQueryDebugInterceptor queryInterceptor = new OracleQueryDebugInterceptor(originalDataSource);
         listener.addListener(queryInterceptor);
         
-        return ProxyDataSourceBuilder
+        ProxyDataSource proxyDataSource = ProxyDataSourceBuilder
                 .create(originalDataSource)
                 .name("QueryAnalyzerDS")
                 .listener(listener)
                 .build();
+        
+        // Nanosecond elapsed times for the latency histograms; the default stopwatch is millisecond based
+        proxyDataSource.setProxyConfig(ProxyConfig.Builder.from(proxyDataSource.getProxyConfig())
+                .stopwatchFactory(new NanoTimeStopwatchFactory())
+                .build());
+        return proxyDataSource;
+    }
+    
+    // Analysis can be switched on and off at runtime through this MBean
+    @Bean
+    public QueryAnalyzerMetricsConfig.MBeanRegistration queryAnalyzerControlRegistration(OracleQueryDebugInterceptor queryInterceptor)
+            throws NotCompliantMBeanException {
+        return new QueryAnalyzerMetricsConfig.MBeanRegistration(
+                new StandardMBean(queryInterceptor, QueryAnalyzerControlMBean.class), CONTROL_OBJECT_NAME);
     }
 }
\ No newline at end of file
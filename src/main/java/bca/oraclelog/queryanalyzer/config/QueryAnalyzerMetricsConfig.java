@@ -0,0 +1,80 @@
+package bca.oraclelog.queryanalyzer.config;
+
+import bca.oraclelog.queryanalyzer.service.AnalysisCircuitBreaker;
+import bca.oraclelog.queryanalyzer.service.AnalysisConnectionPool;
+import bca.oraclelog.queryanalyzer.service.QueryAnalysisPipeline;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMeterBinder;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMetrics;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerStats;
+import bca.oraclelog.queryanalyzer.service.QueryDebugOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+// Analyzer metrics are always served by a platform MBean. With Micrometer on the classpath they are also
+// offered as a MeterBinder, which Spring Boot binds only if the application has a MeterRegistry (e.g. via actuator)
+@Configuration
+public class QueryAnalyzerMetricsConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QueryAnalyzerMetricsConfig.class);
+    
+    static final String OBJECT_NAME = "bca.oraclelog.queryanalyzer:type=QueryAnalyzerStats";
+    
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MicrometerMetricsConfig {
+        
+        // Spring Boot binds MeterBinder beans to every registry it manages; without a registry it stays unused
+        @Bean
+        public QueryAnalyzerMeterBinder queryAnalyzerMeterBinder(QueryAnalyzerMetrics metrics, QueryAnalysisPipeline pipeline,
+                                                                 QueryDebugOutput output, AnalysisCircuitBreaker circuitBreaker,
+                                                                 ObjectProvider<AnalysisConnectionPool> connectionPool) {
+            return new QueryAnalyzerMeterBinder(metrics, pipeline, output, circuitBreaker, connectionPool);
+        }
+    }
+    
+    // Not conditional on a MeterRegistry bean: auto-configured registries are created after this configuration is evaluated
+    @Bean
+    public MBeanRegistration queryAnalyzerStatsRegistration(QueryAnalyzerMetrics metrics, QueryAnalysisPipeline pipeline,
+                                                            QueryDebugOutput output, AnalysisCircuitBreaker circuitBreaker,
+                                                            ObjectProvider<AnalysisConnectionPool> connectionPool) {
+        return new MBeanRegistration(
+                new QueryAnalyzerStats(metrics, pipeline, output, circuitBreaker, connectionPool), OBJECT_NAME);
+    }
+    
+    // Keeps an MBean registered for the lifetime of the context
+    static class MBeanRegistration implements DisposableBean {
+        
+        private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        private ObjectName name;
+        
+        MBeanRegistration(Object mbean, String objectName) {
+            try {
+                ObjectName candidate = new ObjectName(objectName);
+                if (server.isRegistered(candidate)) {
+                    server.unregisterMBean(candidate);
+                }
+                server.registerMBean(mbean, candidate);
+                name = candidate;
+            } catch (JMException e) {
+                logger.warn("Cannot register {}: {}", objectName, e.getMessage());
+            }
+        }
+        
+        @Override
+        public void destroy() throws JMException {
+            if (name != null && server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+    }
+}
\ No newline at end of file
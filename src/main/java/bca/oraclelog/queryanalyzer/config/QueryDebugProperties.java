@@ -2,17 +2,40 @@ package bca.oraclelog.queryanalyzer.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties(prefix = "oracle.query.debug")
 public class QueryDebugProperties {
     
+    // Analysis state at startup; the QueryAnalyzerControl MBean switches it at runtime
     private boolean enabled = false;
     private boolean logToConsole = true;
     private boolean logToFile = false;
     private String logFilePath = "oracle-query-debug.log";
     private boolean includeStackTrace = false;
     private boolean includeQueryText = true;
+    private final Cache cache = new Cache();
+    private final Async async = new Async();
+    private final Pool pool = new Pool();
+    private final Plan plan = new Plan();
+    private final Sampling sampling = new Sampling();
+    private final Latency latency = new Latency();
+    private final Output output = new Output();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final TopStatements topStatements = new TopStatements();
+    private final Store store = new Store();
+    private final Binds binds = new Binds();
+    private final Batch batch = new Batch();
+    private final CallSites callSites = new CallSites();
+    private final Guardrail guardrail = new Guardrail();
+    private final Snapshots snapshots = new Snapshots();
     
     // Getters and Setters
     public boolean isEnabled() { return enabled; }
@@ -32,4 +55,574 @@ public class QueryDebugProperties {
     
     public boolean isIncludeQueryText() { return includeQueryText; }
     public void setIncludeQueryText(boolean includeQueryText) { this.includeQueryText = includeQueryText; }
+    
+    public Cache getCache() { return cache; }
+    
+    public Async getAsync() { return async; }
+    
+    public Pool getPool() { return pool; }
+    
+    public Plan getPlan() { return plan; }
+    
+    public Sampling getSampling() { return sampling; }
+    
+    public Latency getLatency() { return latency; }
+    
+    public Output getOutput() { return output; }
+    
+    public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+    
+    public TopStatements getTopStatements() { return topStatements; }
+    
+    public Store getStore() { return store; }
+    
+    public Binds getBinds() { return binds; }
+    
+    public Batch getBatch() { return batch; }
+    
+    public CallSites getCallSites() { return callSites; }
+    
+    public Guardrail getGuardrail() { return guardrail; }
+    
+    public Snapshots getSnapshots() { return snapshots; }
+    
+    public static class Cache {
+        
+        private boolean enabled = true;
+        private int maxSize = 1000;
+        private Duration ttl = Duration.ofMinutes(10);
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+        
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+    }
+    
+    public enum OverflowPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST,
+        BLOCK
+    }
+    
+    public static class Async {
+        
+        private boolean enabled = false;
+        private int queueCapacity = 1000;
+        private int workers = 2;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+        private Duration blockTimeout = Duration.ofMillis(5);
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        
+        public int getWorkers() { return workers; }
+        public void setWorkers(int workers) { this.workers = workers; }
+        
+        public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+        
+        public Duration getBlockTimeout() { return blockTimeout; }
+        public void setBlockTimeout(Duration blockTimeout) { this.blockTimeout = blockTimeout; }
+    }
+    
+    public static class Pool {
+        
+        private int maxSize = 2;
+        private Duration acquireTimeout = Duration.ofMillis(20);
+        
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+        
+        public Duration getAcquireTimeout() { return acquireTimeout; }
+        public void setAcquireTimeout(Duration acquireTimeout) { this.acquireTimeout = acquireTimeout; }
+    }
+    
+    public enum PlanRetrievalMode {
+        // EXPLAIN, PLAN_TABLE select and cleanup as separate calls
+        STANDARD,
+        // One anonymous PL/SQL block returning the plan through a ref cursor
+        SINGLE_ROUND_TRIP
+    }
+    
+    public static class Plan {
+        
+        private PlanRetrievalMode retrievalMode = PlanRetrievalMode.STANDARD;
+        private int cleanupBatchSize = 1;
+        
+        public PlanRetrievalMode getRetrievalMode() { return retrievalMode; }
+        public void setRetrievalMode(PlanRetrievalMode retrievalMode) { this.retrievalMode = retrievalMode; }
+        
+        public int getCleanupBatchSize() { return cleanupBatchSize; }
+        public void setCleanupBatchSize(int cleanupBatchSize) { this.cleanupBatchSize = cleanupBatchSize; }
+    }
+    
+    public static class Sampling {
+        
+        // Fraction of analyzable statements considered for analysis
+        private double rate = 1.0;
+        // Per fingerprint: analyze the first N executions, then one in M (0 disables the policy)
+        private int firstPerFingerprint = 0;
+        private int thenOneIn = 1;
+        private int fingerprintSlots = 4096;
+        // Instance-wide EXPLAIN budget (0 means unlimited)
+        private double maxExplainsPerSecond = 0;
+        private int explainBurst = 10;
+        // Adaptive back-off when analysis gets slow, fails or the pool is saturated
+        private boolean adaptive = true;
+        private Duration slowAnalysisThreshold = Duration.ofMillis(250);
+        private Duration recoveryInterval = Duration.ofSeconds(5);
+        
+        public double getRate() { return rate; }
+        public void setRate(double rate) { this.rate = rate; }
+        
+        public int getFirstPerFingerprint() { return firstPerFingerprint; }
+        public void setFirstPerFingerprint(int firstPerFingerprint) { this.firstPerFingerprint = firstPerFingerprint; }
+        
+        public int getThenOneIn() { return thenOneIn; }
+        public void setThenOneIn(int thenOneIn) { this.thenOneIn = thenOneIn; }
+        
+        public int getFingerprintSlots() { return fingerprintSlots; }
+        public void setFingerprintSlots(int fingerprintSlots) { this.fingerprintSlots = fingerprintSlots; }
+        
+        public double getMaxExplainsPerSecond() { return maxExplainsPerSecond; }
+        public void setMaxExplainsPerSecond(double maxExplainsPerSecond) { this.maxExplainsPerSecond = maxExplainsPerSecond; }
+        
+        public int getExplainBurst() { return explainBurst; }
+        public void setExplainBurst(int explainBurst) { this.explainBurst = explainBurst; }
+        
+        public boolean isAdaptive() { return adaptive; }
+        public void setAdaptive(boolean adaptive) { this.adaptive = adaptive; }
+        
+        public Duration getSlowAnalysisThreshold() { return slowAnalysisThreshold; }
+        public void setSlowAnalysisThreshold(Duration slowAnalysisThreshold) { this.slowAnalysisThreshold = slowAnalysisThreshold; }
+        
+        public Duration getRecoveryInterval() { return recoveryInterval; }
+        public void setRecoveryInterval(Duration recoveryInterval) { this.recoveryInterval = recoveryInterval; }
+    }
+    
+    public static class Latency {
+        
+        private boolean enabled = true;
+        // Tracked fingerprints are never evicted; statements first seen once the table is full count as untracked
+        private int maxFingerprints = 500;
+        private int reportTopN = 20;
+        // Read by the scheduled report through its placeholder
+        private Duration reportInterval = Duration.ofMinutes(5);
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMaxFingerprints() { return maxFingerprints; }
+        public void setMaxFingerprints(int maxFingerprints) { this.maxFingerprints = maxFingerprints; }
+        
+        public int getReportTopN() { return reportTopN; }
+        public void setReportTopN(int reportTopN) { this.reportTopN = reportTopN; }
+        
+        public Duration getReportInterval() { return reportInterval; }
+        public void setReportInterval(Duration reportInterval) { this.reportInterval = reportInterval; }
+    }
+    
+    public static class Output {
+        
+        // Reports waiting for a sink's writer thread; further reports are dropped and counted
+        private int queueCapacity = 10000;
+        private int batchSize = 256;
+        private Duration flushInterval = Duration.ofMillis(200);
+        // The JSON-lines file rolls to <path>.1 .. <path>.<maxFiles> past maxFileSize
+        private DataSize maxFileSize = DataSize.ofMegabytes(50);
+        private int maxFiles = 5;
+        
+        public int getQueueCapacity() { return queueCapacity; }
+        public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+        
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        
+        public Duration getFlushInterval() { return flushInterval; }
+        public void setFlushInterval(Duration flushInterval) { this.flushInterval = flushInterval; }
+        
+        public DataSize getMaxFileSize() { return maxFileSize; }
+        public void setMaxFileSize(DataSize maxFileSize) { this.maxFileSize = maxFileSize; }
+        
+        public int getMaxFiles() { return maxFiles; }
+        public void setMaxFiles(int maxFiles) { this.maxFiles = maxFiles; }
+    }
+    
+    public static class CircuitBreaker {
+        
+        private boolean enabled = true;
+        // Health is judged once per window
+        private Duration window = Duration.ofSeconds(5);
+        // Overhead budget: analysis time as a fraction of observed query time, and per second of wall time
+        private double maxOverheadRatio = 0.1;
+        private Duration maxAnalysisTimePerSecond = Duration.ofMillis(100);
+        // The ratio is only judged in windows with at least this many queries and this much query time
+        private long minimumQueries = 100;
+        private Duration minimumQueryTime = Duration.ofSeconds(1);
+        // Error budget, applied once a window has at least minimumAnalyses
+        private double errorRateThreshold = 0.5;
+        private int minimumAnalyses = 5;
+        // After openDuration, halfOpenProbes analyses are let through; one failure reopens, all succeeding closes
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenProbes = 3;
+        // On closing, admission starts at 1 in 2^rampSteps and doubles every healthy window
+        private int rampSteps = 3;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+        
+        public double getMaxOverheadRatio() { return maxOverheadRatio; }
+        public void setMaxOverheadRatio(double maxOverheadRatio) { this.maxOverheadRatio = maxOverheadRatio; }
+        
+        public Duration getMaxAnalysisTimePerSecond() { return maxAnalysisTimePerSecond; }
+        public void setMaxAnalysisTimePerSecond(Duration maxAnalysisTimePerSecond) { this.maxAnalysisTimePerSecond = maxAnalysisTimePerSecond; }
+        
+        public double getErrorRateThreshold() { return errorRateThreshold; }
+        public void setErrorRateThreshold(double errorRateThreshold) { this.errorRateThreshold = errorRateThreshold; }
+        
+        public long getMinimumQueries() { return minimumQueries; }
+        public void setMinimumQueries(long minimumQueries) { this.minimumQueries = minimumQueries; }
+        
+        public Duration getMinimumQueryTime() { return minimumQueryTime; }
+        public void setMinimumQueryTime(Duration minimumQueryTime) { this.minimumQueryTime = minimumQueryTime; }
+        
+        public int getMinimumAnalyses() { return minimumAnalyses; }
+        public void setMinimumAnalyses(int minimumAnalyses) { this.minimumAnalyses = minimumAnalyses; }
+        
+        public Duration getOpenDuration() { return openDuration; }
+        public void setOpenDuration(Duration openDuration) { this.openDuration = openDuration; }
+        
+        public int getHalfOpenProbes() { return halfOpenProbes; }
+        public void setHalfOpenProbes(int halfOpenProbes) { this.halfOpenProbes = halfOpenProbes; }
+        
+        public int getRampSteps() { return rampSteps; }
+        public void setRampSteps(int rampSteps) { this.rampSteps = rampSteps; }
+    }
+    
+    public enum RankBy {
+        COUNT,
+        COST,
+        TIME
+    }
+    
+    public static class TopStatements {
+        
+        private boolean enabled = true;
+        private RankBy rankBy = RankBy.COST;
+        // Statements tracked per time bucket; memory is capacity x buckets counters whatever the SQL variety
+        private int capacity = 200;
+        // The sliding window is buckets x bucketDuration
+        private Duration bucketDuration = Duration.ofMinutes(5);
+        private int buckets = 12;
+        private int reportTopN = 20;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public RankBy getRankBy() { return rankBy; }
+        public void setRankBy(RankBy rankBy) { this.rankBy = rankBy; }
+        
+        public int getCapacity() { return capacity; }
+        public void setCapacity(int capacity) { this.capacity = capacity; }
+        
+        public Duration getBucketDuration() { return bucketDuration; }
+        public void setBucketDuration(Duration bucketDuration) { this.bucketDuration = bucketDuration; }
+        
+        public int getBuckets() { return buckets; }
+        public void setBuckets(int buckets) { this.buckets = buckets; }
+        
+        public int getReportTopN() { return reportTopN; }
+        public void setReportTopN(int reportTopN) { this.reportTopN = reportTopN; }
+    }
+    
+    public static class Store {
+        
+        // Plans survive restarts only when the store is enabled
+        private boolean enabled = false;
+        private String path = "oracle-query-plans.bin";
+        // Load stored plans into the plan cache in the background at startup
+        private boolean warmUp = true;
+        private int maxEntries = 10000;
+        // Relative cost change that counts as a plan regression when the plan shape is unchanged
+        private double costChangeThreshold = 0.5;
+        // An unchanged plan is rewritten at most this often
+        private Duration refreshInterval = Duration.ofHours(24);
+        // Compact once the file holds this many records per live entry
+        private double compactionRatio = 2.0;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        
+        public boolean isWarmUp() { return warmUp; }
+        public void setWarmUp(boolean warmUp) { this.warmUp = warmUp; }
+        
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        
+        public double getCostChangeThreshold() { return costChangeThreshold; }
+        public void setCostChangeThreshold(double costChangeThreshold) { this.costChangeThreshold = costChangeThreshold; }
+        
+        public Duration getRefreshInterval() { return refreshInterval; }
+        public void setRefreshInterval(Duration refreshInterval) { this.refreshInterval = refreshInterval; }
+        
+        public double getCompactionRatio() { return compactionRatio; }
+        public void setCompactionRatio(double compactionRatio) { this.compactionRatio = compactionRatio; }
+    }
+    
+    public static class Binds {
+        
+        // Analyze each bind-value bucket of a statement separately, with the values inlined
+        private boolean enabled = false;
+        // Parameters past this position do not take part in the bucket
+        private int maxParameters = 16;
+        // Further buckets of a statement share its bind-free plan
+        private int maxBucketsPerStatement = 8;
+        private int maxTrackedStatements = 500;
+        // Strings up to this length are bucketed by value; typical of skewed status and type codes
+        private int exactValueLength = 2;
+        // Longer strings stay bind placeholders in the analyzed statement
+        private int maxLiteralLength = 1000;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMaxParameters() { return maxParameters; }
+        public void setMaxParameters(int maxParameters) { this.maxParameters = maxParameters; }
+        
+        public int getMaxBucketsPerStatement() { return maxBucketsPerStatement; }
+        public void setMaxBucketsPerStatement(int maxBucketsPerStatement) { this.maxBucketsPerStatement = maxBucketsPerStatement; }
+        
+        public int getMaxTrackedStatements() { return maxTrackedStatements; }
+        public void setMaxTrackedStatements(int maxTrackedStatements) { this.maxTrackedStatements = maxTrackedStatements; }
+        
+        public int getExactValueLength() { return exactValueLength; }
+        public void setExactValueLength(int exactValueLength) { this.exactValueLength = exactValueLength; }
+        
+        public int getMaxLiteralLength() { return maxLiteralLength; }
+        public void setMaxLiteralLength(int maxLiteralLength) { this.maxLiteralLength = maxLiteralLength; }
+    }
+    
+    public enum BatchInputFormat {
+        // Statements ending in ';' or followed by a line holding only '/'; PL/SQL blocks end only at '/'
+        SQL,
+        // One JSON report per line as written by the file sink; the "query" field is analyzed
+        JSON_LINES
+    }
+    
+    public static class Batch {
+        
+        // Captured SQL log to analyze; setting it runs the workload analysis at startup
+        private String input;
+        private BatchInputFormat format = BatchInputFormat.SQL;
+        private String report = "oracle-query-workload-report.txt";
+        // Defaults to the report path with a .checkpoint suffix
+        private String checkpoint;
+        // Concurrent EXPLAINs, each on its own connection
+        private int parallelism = 4;
+        // Distinct statements analyzed between two checkpoint opportunities
+        private int chunkSize = 500;
+        private Duration checkpointInterval = Duration.ofSeconds(30);
+        private RankBy rankBy = RankBy.COST;
+        // Statements listed in the report; 0 lists all of them
+        private int reportTopN = 1000;
+        private boolean exitOnCompletion = true;
+        
+        public String getInput() { return input; }
+        public void setInput(String input) { this.input = input; }
+        
+        public BatchInputFormat getFormat() { return format; }
+        public void setFormat(BatchInputFormat format) { this.format = format; }
+        
+        public String getReport() { return report; }
+        public void setReport(String report) { this.report = report; }
+        
+        public String getCheckpoint() { return checkpoint != null ? checkpoint : report + ".checkpoint"; }
+        public void setCheckpoint(String checkpoint) { this.checkpoint = checkpoint; }
+        
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+        
+        public int getChunkSize() { return chunkSize; }
+        public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+        
+        public Duration getCheckpointInterval() { return checkpointInterval; }
+        public void setCheckpointInterval(Duration checkpointInterval) { this.checkpointInterval = checkpointInterval; }
+        
+        public RankBy getRankBy() { return rankBy; }
+        public void setRankBy(RankBy rankBy) { this.rankBy = rankBy; }
+        
+        public int getReportTopN() { return reportTopN; }
+        public void setReportTopN(int reportTopN) { this.reportTopN = reportTopN; }
+        
+        public boolean isExitOnCompletion() { return exitOnCompletion; }
+        public void setExitOnCompletion(boolean exitOnCompletion) { this.exitOnCompletion = exitOnCompletion; }
+    }
+    
+    public static class CallSites {
+        
+        // Attribute every analyzable execution to its application call site
+        private boolean enabled = false;
+        // Distinct frames remembered; frames past the limit are not attributed
+        private int maxCallSites = 2000;
+        // Tracked (call site, fingerprint) pairs
+        private int maxEntries = 1000;
+        private int reportTopN = 20;
+        // Package prefixes skipped in addition to the JDK, Spring, JDBC and pool packages
+        private List<String> frameworkPackages = new ArrayList<>();
+        // Prefixes of the analyzer's own classes, skipped as well; narrow these when application code shares them
+        private List<String> analyzerPackages = new ArrayList<>(List.of("bca.oraclelog.queryanalyzer.interceptor.",
+                "bca.oraclelog.queryanalyzer.service.", "bca.oraclelog.queryanalyzer.config."));
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMaxCallSites() { return maxCallSites; }
+        public void setMaxCallSites(int maxCallSites) { this.maxCallSites = maxCallSites; }
+        
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        
+        public int getReportTopN() { return reportTopN; }
+        public void setReportTopN(int reportTopN) { this.reportTopN = reportTopN; }
+        
+        public List<String> getFrameworkPackages() { return frameworkPackages; }
+        public void setFrameworkPackages(List<String> frameworkPackages) { this.frameworkPackages = frameworkPackages; }
+        
+        public List<String> getAnalyzerPackages() { return analyzerPackages; }
+        public void setAnalyzerPackages(List<String> analyzerPackages) { this.analyzerPackages = analyzerPackages; }
+    }
+    
+    public enum GuardrailMode {
+        // Log the statement and let it run
+        WARN,
+        // Let at most max-concurrent executions of the statement run at a time
+        THROTTLE,
+        // Fail the execution with QueryRejectedException, an SQLException with SQLState 54000
+        REJECT
+    }
+    
+    public static class Guardrail {
+        
+        // Check every analyzable execution against the cost of its cached plan
+        private boolean enabled = false;
+        private GuardrailMode mode = GuardrailMode.WARN;
+        // Optimizer cost and cardinality above which a statement is over the limit; 0 disables the check
+        private double maxCost = 0;
+        private long maxCardinality = 0;
+        // THROTTLE: executions of one statement allowed at once, and how long another may wait before it is rejected
+        private int maxConcurrent = 2;
+        private Duration throttleTimeout = Duration.ofSeconds(5);
+        // WARN: at most one log line per statement per interval
+        private Duration warnInterval = Duration.ofMinutes(1);
+        // Statements with their own semaphore; the rest over the limit share one
+        private int maxTrackedStatements = 500;
+        // Per-statement overrides keyed by the hexadecimal fingerprint shown in the reports
+        private Map<String, Limit> statements = new LinkedHashMap<>();
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public GuardrailMode getMode() { return mode; }
+        public void setMode(GuardrailMode mode) { this.mode = mode; }
+        
+        public double getMaxCost() { return maxCost; }
+        public void setMaxCost(double maxCost) { this.maxCost = maxCost; }
+        
+        public long getMaxCardinality() { return maxCardinality; }
+        public void setMaxCardinality(long maxCardinality) { this.maxCardinality = maxCardinality; }
+        
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+        
+        public Duration getThrottleTimeout() { return throttleTimeout; }
+        public void setThrottleTimeout(Duration throttleTimeout) { this.throttleTimeout = throttleTimeout; }
+        
+        public Duration getWarnInterval() { return warnInterval; }
+        public void setWarnInterval(Duration warnInterval) { this.warnInterval = warnInterval; }
+        
+        public int getMaxTrackedStatements() { return maxTrackedStatements; }
+        public void setMaxTrackedStatements(int maxTrackedStatements) { this.maxTrackedStatements = maxTrackedStatements; }
+        
+        public Map<String, Limit> getStatements() { return statements; }
+        public void setStatements(Map<String, Limit> statements) { this.statements = statements; }
+    }
+    
+    public static class Limit {
+        
+        // Unset values fall back to the global guardrail settings
+        private GuardrailMode mode;
+        private Double maxCost;
+        private Long maxCardinality;
+        private Integer maxConcurrent;
+        
+        public GuardrailMode getMode() { return mode; }
+        public void setMode(GuardrailMode mode) { this.mode = mode; }
+        
+        public Double getMaxCost() { return maxCost; }
+        public void setMaxCost(Double maxCost) { this.maxCost = maxCost; }
+        
+        public Long getMaxCardinality() { return maxCardinality; }
+        public void setMaxCardinality(Long maxCardinality) { this.maxCardinality = maxCardinality; }
+        
+        public Integer getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(Integer maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+    }
+    
+    public static class Snapshots {
+        
+        // Periodically write per-fingerprint statistics to a snapshot file that can be merged across instances
+        private boolean enabled = false;
+        private String directory = "query-stats";
+        // Names this instance's file; defaults to <host>-<pid>
+        private String instanceId;
+        // Comma-separated snapshot files or directories; setting it merges them at startup instead
+        private List<String> mergeInputs = new ArrayList<>();
+        // Merged snapshot, itself mergeable again; not written when unset
+        private String mergeOutput;
+        private String mergeReport = "oracle-query-fleet-report.txt";
+        private RankBy rankBy = RankBy.TIME;
+        // Statements listed in the report; 0 lists all of them
+        private int reportTopN = 100;
+        private boolean exitOnCompletion = true;
+        
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        
+        public String getInstanceId() { return instanceId; }
+        public void setInstanceId(String instanceId) { this.instanceId = instanceId; }
+        
+        public List<String> getMergeInputs() { return mergeInputs; }
+        public void setMergeInputs(List<String> mergeInputs) { this.mergeInputs = mergeInputs; }
+        
+        public String getMergeOutput() { return mergeOutput; }
+        public void setMergeOutput(String mergeOutput) { this.mergeOutput = mergeOutput; }
+        
+        public String getMergeReport() { return mergeReport; }
+        public void setMergeReport(String mergeReport) { this.mergeReport = mergeReport; }
+        
+        public RankBy getRankBy() { return rankBy; }
+        public void setRankBy(RankBy rankBy) { this.rankBy = rankBy; }
+        
+        public int getReportTopN() { return reportTopN; }
+        public void setReportTopN(int reportTopN) { this.reportTopN = reportTopN; }
+        
+        public boolean isExitOnCompletion() { return exitOnCompletion; }
+        public void setExitOnCompletion(boolean exitOnCompletion) { this.exitOnCompletion = exitOnCompletion; }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package bca.oraclelog.queryanalyzer.config;
+
+import bca.oraclelog.queryanalyzer.service.QueryDebugFormatter;
+import bca.oraclelog.queryanalyzer.service.StatisticsSnapshotMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import java.util.List;
+
+// Merge mode: combine statistics snapshots of several instances into a fleet report at startup
+@Configuration
+@Conditional(SnapshotMergeConfig.MergeInputsCondition.class)
+public class SnapshotMergeConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotMergeConfig.class);
+    
+    @Bean
+    public ApplicationRunner snapshotMergeRunner(QueryDebugProperties properties, QueryDebugFormatter formatter,
+                                                 ConfigurableApplicationContext applicationContext) {
+        return args -> {
+            QueryDebugProperties.Snapshots snapshots = properties.getSnapshots();
+            
+            int exitCode = 0;
+            try {
+                new StatisticsSnapshotMerger(snapshots, formatter).run();
+            } catch (Exception e) {
+                logger.error("Merging statistics snapshots {} failed: {}", snapshots.getMergeInputs(), e.getMessage());
+                exitCode = 1;
+            }
+            
+            if (snapshots.isExitOnCompletion()) {
+                int code = exitCode;
+                System.exit(SpringApplication.exit(applicationContext, () -> code));
+            }
+        };
+    }
+    
+    // Binds the list like the properties do, so the comma-separated and the indexed YAML forms both count
+    static class MergeInputsCondition implements Condition {
+        
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return Binder.get(context.getEnvironment())
+                    .bind("oracle.query.debug.snapshots.merge-inputs", Bindable.listOf(String.class))
+                    .map(inputs -> inputs.stream().anyMatch(input -> !input.isBlank()))
+                    .orElse(false);
+        }
+    }
+}
\ No newline at end of file
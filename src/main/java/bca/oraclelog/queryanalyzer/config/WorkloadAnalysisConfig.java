@@ -0,0 +1,60 @@
+package bca.oraclelog.queryanalyzer.config;
+
+import bca.oraclelog.queryanalyzer.service.AnalysisConnectionPool;
+import bca.oraclelog.queryanalyzer.service.OracleQueryAnalyzer;
+import bca.oraclelog.queryanalyzer.service.QueryDebugFormatter;
+import bca.oraclelog.queryanalyzer.service.WorkloadAnalyzer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Offline mode: analyze a captured SQL log at startup instead of listening to live traffic
+@Configuration
+@ConditionalOnProperty(name = "oracle.query.debug.batch.input")
+public class WorkloadAnalysisConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadAnalysisConfig.class);
+    
+    @Bean
+    public ApplicationRunner workloadAnalysisRunner(DataSourceProperties dataSourceProperties, QueryDebugProperties properties,
+                                                    OracleQueryAnalyzer queryAnalyzer, QueryDebugFormatter formatter,
+                                                    ConfigurableApplicationContext applicationContext) {
+        return args -> {
+            QueryDebugProperties.Batch batch = properties.getBatch();
+            
+            // One connection per worker; workers wait for a connection instead of skipping
+            QueryDebugProperties.Pool poolSettings = new QueryDebugProperties.Pool();
+            poolSettings.setMaxSize(Math.max(1, batch.getParallelism()));
+            poolSettings.setAcquireTimeout(Duration.ofMinutes(1));
+            DataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                    .type(SimpleDriverDataSource.class)
+                    .build();
+            
+            int exitCode = 0;
+            try (AnalysisConnectionPool connectionPool = new AnalysisConnectionPool(dataSource, poolSettings)) {
+                new WorkloadAnalyzer(batch, queryAnalyzer, connectionPool, formatter).run();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                logger.error("Workload analysis of {} stopped: {}", batch.getInput(), e.getMessage());
+                exitCode = 1;
+            }
+            
+            if (batch.isExitOnCompletion()) {
+                int code = exitCode;
+                System.exit(SpringApplication.exit(applicationContext, () -> code));
+            }
+        };
+    }
+}
\ No newline at end of file
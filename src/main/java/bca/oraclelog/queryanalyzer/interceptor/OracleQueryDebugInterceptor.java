@@ -1,148 +1,453 @@
 package bca.oraclelog.queryanalyzer.interceptor;
 
 import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.BindBucket;
+import bca.oraclelog.queryanalyzer.model.CallSite;
 import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import bca.oraclelog.queryanalyzer.service.AnalysisCircuitBreaker;
+import bca.oraclelog.queryanalyzer.service.AnalysisConnectionPool;
+import bca.oraclelog.queryanalyzer.service.AnalysisSession;
+import bca.oraclelog.queryanalyzer.service.BindSensitivityTracker;
+import bca.oraclelog.queryanalyzer.service.CallSiteResolver;
+import bca.oraclelog.queryanalyzer.service.CallSiteStatistics;
+import bca.oraclelog.queryanalyzer.service.HeavyStatementAggregator;
 import bca.oraclelog.queryanalyzer.service.OracleQueryAnalyzer;
-import bca.oraclelog.queryanalyzer.service.QueryDebugFormatter;
+import bca.oraclelog.queryanalyzer.service.PlanStore;
+import bca.oraclelog.queryanalyzer.service.QueryAnalysisPipeline;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMetrics;
+import bca.oraclelog.queryanalyzer.service.QueryDebugOutput;
+import bca.oraclelog.queryanalyzer.service.QueryGuardrail;
+import bca.oraclelog.queryanalyzer.service.QueryLatencyRecorder;
+import bca.oraclelog.queryanalyzer.service.QueryPlanCache;
+import bca.oraclelog.queryanalyzer.service.QueryRejectedException;
+import bca.oraclelog.queryanalyzer.service.QuerySampler;
+import bca.oraclelog.queryanalyzer.service.SqlStatementClassifier;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
 import net.ttddyy.dsproxy.listener.QueryExecutionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 @Component
-public class OracleQueryDebugInterceptor implements QueryExecutionListener, ApplicationContextAware {
+public class OracleQueryDebugInterceptor implements QueryExecutionListener, QueryAnalyzerControlMBean,
+        ApplicationContextAware, SmartInitializingSingleton {
     
     private static final Logger logger = LoggerFactory.getLogger(OracleQueryDebugInterceptor.class);
     
-    private final DataSource dataSource;
+    // Fingerprint computed in beforeQuery, reused by afterQuery of the same execution
+    private final ThreadLocal<InFlightQuery> inFlight = ThreadLocal.withInitial(InFlightQuery::new);
     private ApplicationContext applicationContext;
     
-    // Lazy-loaded dependencies
-    private QueryDebugProperties properties;
-    private OracleQueryAnalyzer queryAnalyzer;
-    private QueryDebugFormatter formatter;
+    // Set while analysis is switched on; the only field the proxy reads when it is off
+    private volatile Dependencies active;
+    // Created the first time analysis is switched on and kept for later switches
+    private volatile Dependencies installed;
     
-    // Default constructor for Spring component scanning
-    public OracleQueryDebugInterceptor() {
-        this.dataSource = null;
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
     }
     
-    // Constructor for manual instantiation with DataSource
-    public OracleQueryDebugInterceptor(DataSource dataSource) {
-        this.dataSource = dataSource;
+    // oracle.query.debug.enabled only sets the state the application starts in
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!applicationContext.getBean(QueryDebugProperties.class).isEnabled()) {
+            return;
+        }
+        try {
+            setAnalysisEnabled(true);
+        } catch (RuntimeException e) {
+            // A missing bean, or a service that failed on I/O or the database, must not stop the application
+            logger.warn("Query analysis stays switched off: {}", e.getMessage());
+        }
     }
     
     @Override
-    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-        this.applicationContext = applicationContext;
-    }
+    public boolean isAnalysisEnabled() { return active != null; }
     
-    private void initializeDependencies() {
-        if (properties == null && applicationContext != null) {
-            try {
-                properties = applicationContext.getBean(QueryDebugProperties.class);
-                queryAnalyzer = applicationContext.getBean(OracleQueryAnalyzer.class);
-                formatter = applicationContext.getBean(QueryDebugFormatter.class);
-            } catch (Exception e) {
-                logger.debug("Failed to initialize query debug dependencies: {}", e.getMessage());
+    // Switching off also ends the pipeline workers, sink writers and plan store writer once they have drained
+    // their queues, and the scheduled reports skip while nothing new is recorded. What remains is the circuit
+    // breaker's window tick and the memory of the caches and statistics tables, kept for the next switch-on.
+    @Override
+    public synchronized void setAnalysisEnabled(boolean enabled) {
+        if (!enabled) {
+            if (active != null) {
+                active = null;
+                installed.stop();
+                logger.info("Query analysis switched off");
             }
+            return;
+        }
+        if (active != null) {
+            return;
+        }
+        
+        Dependencies dependencies = installed;
+        if (dependencies == null) {
+            if (applicationContext == null) {
+                throw new IllegalStateException("Query analysis needs an application context to resolve its services");
+            }
+            dependencies = new Dependencies(applicationContext);
+            installed = dependencies;
+        } else {
+            // Statements that were running when analysis was switched off never hand their permits back
+            dependencies.guardrail.reset();
         }
+        dependencies.start();
+        active = dependencies;
+        logger.info("Query analysis switched on");
     }
     
     @Override
     public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
-        initializeDependencies();
-        
-        // Check if debug is enabled
-        if (properties == null || !properties.isEnabled()) {
+        Dependencies d = active;
+        if (d == null) {
             return;
         }
         
+        InFlightQuery current = null;
         for (QueryInfo queryInfo : queryInfoList) {
             String query = queryInfo.getQuery();
-            if (isAnalyzableQuery(query)) {
-                try {
-                    debugQuery(query);
-                } catch (Exception e) {
-                    logger.debug("Failed to debug query: {}", e.getMessage());
-                }
+            if (!isAnalyzableQuery(query)) {
+                continue;
+            }
+            
+            d.metrics.recordIntercepted();
+            long fingerprintId = SqlFingerprint.idOf(query);
+            if (current == null) {
+                current = inFlight.get();
+                // Every statement of a batch comes from the same frame, so the stack is walked at most once
+                current.callSite = d.callSiteStatistics.isEnabled() ? d.callSiteResolver.resolve() : null;
             }
+            current.query = query;
+            current.fingerprintId = fingerprintId;
+            
+            boolean sampled = d.sampler.shouldSample(fingerprintId);
+            if (!sampled) {
+                d.metrics.recordSkipped(QueryAnalyzerMetrics.SkipReason.SAMPLED_OUT);
+            }
+            // Unsampled executions only use their bucket to look up a plan for the guardrail, latency and call
+            // sites, so they classify their binds only once one of the statement's buckets has been analyzed
+            boolean needsPlan = d.guardrail.isEnabled() || d.latencyRecorder.isEnabled() || current.callSite != null;
+            BindBucket bindBucket = null;
+            if (d.bindTracker.isEnabled() && (sampled || needsPlan && d.bindTracker.hasBucketPlans(fingerprintId))) {
+                bindBucket = d.bindTracker.bucketOf(fingerprintId, queryInfo.getParametersList());
+            }
+            current.cacheKey = bindBucket != null ? bindBucket.keyFor(fingerprintId) : fingerprintId;
+            if (sampled) {
+                submitAnalysis(d, current, query, fingerprintId, bindBucket);
+            }
+            
+            // After a synchronous analysis, so even the first execution is checked against a fresh plan
+            if (d.guardrail.isEnabled()) {
+                admit(d, current, query, fingerprintId, current.cacheKey);
+            }
+        }
+    }
+    
+    private void submitAnalysis(Dependencies d, InFlightQuery current, String query, long fingerprintId,
+                                BindBucket bindBucket) {
+        // The call stack and bind values only exist on the application thread, capture them before handing off
+        if (d.properties.isIncludeStackTrace() && current.callSite == null) {
+            current.callSite = d.callSiteResolver.resolve();
+        }
+        String stackTrace = d.properties.isIncludeStackTrace() && current.callSite != null
+                ? current.callSite.getFrame() : null;
+        
+        if (d.pipeline.isEnabled()) {
+            if (!d.pipeline.submit(() -> debugQuerySafely(d, query, fingerprintId, bindBucket, stackTrace))) {
+                d.metrics.recordSkipped(QueryAnalyzerMetrics.SkipReason.QUEUE_FULL);
+                d.sampler.recordSaturation();
+            }
+        } else {
+            debugQuerySafely(d, query, fingerprintId, bindBucket, stackTrace);
+        }
+    }
+    
+    private void admit(Dependencies d, InFlightQuery current, String query, long fingerprintId, long cacheKey) {
+        // A batch repeating a throttled statement runs as one execution; a second permit could wait on the first
+        if (current.holdsPermitFor(fingerprintId)) {
+            return;
+        }
+        Semaphore permit;
+        try {
+            permit = d.guardrail.admit(fingerprintId, cacheKey, query);
+        } catch (QueryRejectedException e) {
+            // The statement is not executed, so afterQuery will not run for it
+            releasePermits(d, current);
+            current.query = null;
+            current.callSite = null;
+            // Checked, but the JDBC method that runs the listener declares SQLException, so it reaches the caller as is
+            throw OracleQueryDebugInterceptor.<RuntimeException>rethrow(e);
+        }
+        if (permit != null) {
+            current.addPermit(fingerprintId, permit);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E rethrow(Throwable e) throws E {
+        throw (E) e;
+    }
+    
+    private void releasePermits(Dependencies d, InFlightQuery current) {
+        for (int i = 0; i < current.permits.size(); i++) {
+            d.guardrail.release(current.permits.get(i));
         }
+        current.permits.clear();
     }
     
     @Override
     public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
-        // Post-execution debugging if needed in the future
+        Dependencies d = active;
+        if (d == null) {
+            return;
+        }
+        
+        InFlightQuery current = inFlight.get();
+        if (!current.permits.isEmpty()) {
+            releasePermits(d, current);
+        }
+        
+        // Elapsed time is in nanoseconds (see QueryAnalyzerConfig); it is the base of the analyzer's overhead budget
+        d.circuitBreaker.recordQueryTime(execInfo.getElapsedTime());
+        CallSite callSite = d.callSiteStatistics.isEnabled() ? current.callSite : null;
+        boolean recordLatency = d.latencyRecorder.isEnabled();
+        if (!recordLatency && callSite == null) {
+            current.query = null;
+            current.callSite = null;
+            return;
+        }
+        
+        // A batch is split evenly across its statements
+        long elapsedNanos = execInfo.getElapsedTime() / Math.max(1, queryInfoList.size());
+        for (QueryInfo queryInfo : queryInfoList) {
+            String query = queryInfo.getQuery();
+            long fingerprintId;
+            long cacheKey;
+            if (query == current.query) {
+                fingerprintId = current.fingerprintId;
+                cacheKey = current.cacheKey;
+            } else if (isAnalyzableQuery(query)) {
+                fingerprintId = SqlFingerprint.idOf(query);
+                cacheKey = fingerprintId;
+            } else {
+                continue;
+            }
+            // Cost of the cached plan only, the bind bucket's when it has one; never explained from here
+            QueryExecutionSummary plan = d.planCache.peek(cacheKey);
+            if (plan == null && cacheKey != fingerprintId) {
+                plan = d.planCache.peek(fingerprintId);
+            }
+            if (recordLatency) {
+                d.latencyRecorder.record(fingerprintId, d.properties.isIncludeQueryText() ? query : null,
+                        elapsedNanos, execInfo.isSuccess(), plan);
+            }
+            if (callSite != null) {
+                d.callSiteStatistics.record(callSite, fingerprintId, d.properties.isIncludeQueryText() ? query : null,
+                        elapsedNanos, plan != null ? plan.getCost() : -1);
+            }
+        }
+        // Do not keep the statement text or the caller's frame reachable from the thread
+        current.query = null;
+        current.callSite = null;
     }
     
     private boolean isAnalyzableQuery(String query) {
-        String upperQuery = query.trim().toUpperCase();
-        return upperQuery.startsWith("SELECT") || 
-               upperQuery.startsWith("INSERT") || 
-               upperQuery.startsWith("UPDATE") || 
-               upperQuery.startsWith("DELETE");
+        // Single pass over the original text; skips comments and hints without copying
+        return SqlStatementClassifier.isAnalyzable(query);
     }
     
-    private void debugQuery(String query) throws Exception {
-        if (dataSource == null) {
-            logger.debug("DataSource not available for query debugging");
-            return;
+    private void debugQuerySafely(Dependencies d, String query, long fingerprintId, BindBucket bindBucket,
+                                  String stackTrace) {
+        try {
+            debugQuery(d, query, fingerprintId, bindBucket, stackTrace);
+        } catch (Exception e) {
+            logger.debug("Failed to debug query: {}", e.getMessage());
         }
+    }
+    
+    private void debugQuery(Dependencies d, String query, long fingerprintId, BindBucket bindBucket, String stackTrace)
+            throws Exception {
+        QueryExecutionSummary summary;
         
-        try (Connection connection = dataSource.getConnection()) {
-            QueryExecutionSummary summary = queryAnalyzer.analyzeQuery(connection, query);
-            
-            // Add query text if enabled
-            if (properties.isIncludeQueryText()) {
-                summary.setOriginalQuery(query);
+        // Reuse the plan of an identical statement shape, or of the same shape and bind bucket
+        long cacheKey = bindBucket != null ? bindBucket.keyFor(fingerprintId) : fingerprintId;
+        QueryExecutionSummary cached = d.planCache.get(cacheKey, query);
+        if (cached != null) {
+            d.metrics.recordCacheHit();
+            // A hit is only reported; without a consumer it needs no copy
+            if (!d.output.hasSinks() && !d.heavyStatements.isEnabled()) {
+                return;
             }
-            
-            // Add stack trace if enabled
-            if (properties.isIncludeStackTrace()) {
-                summary.setStackTrace(getCurrentStackTrace());
+            summary = cached.copyForReuse();
+        } else {
+            // Analysis is switched off while it is over its overhead budget or failing
+            if (!d.circuitBreaker.allowAnalysis()) {
+                d.metrics.recordSkipped(QueryAnalyzerMetrics.SkipReason.CIRCUIT_OPEN);
+                return;
             }
             
-            String debugOutput = formatter.formatQueryDebug(summary);
-            
-            // Output to console if enabled
-            if (properties.isLogToConsole()) {
-                System.out.println(debugOutput);
+            // Instance-wide EXPLAIN budget
+            if (!d.sampler.tryAcquireExplain()) {
+                d.metrics.recordSkipped(QueryAnalyzerMetrics.SkipReason.EXPLAIN_BUDGET);
+                return;
             }
             
-            // Output to file if enabled
-            if (properties.isLogToFile()) {
-                logger.info(debugOutput);
+            SqlFingerprint fingerprint = SqlFingerprint.of(query);
+            long acquireStart = System.nanoTime();
+            // A connection that cannot be opened counts as a failed analysis
+            boolean attempted = true;
+            boolean success = false;
+            try (AnalysisSession session = d.connectionPool.acquire()) {
+                long startTime = System.nanoTime();
+                d.metrics.recordPhase(QueryAnalyzerMetrics.Phase.ACQUIRE, startTime - acquireStart);
+                
+                // Skip rather than queue behind application traffic when the pool is busy
+                if (session == null) {
+                    attempted = false;
+                    d.metrics.recordSkipped(QueryAnalyzerMetrics.SkipReason.NO_CONNECTION);
+                    d.sampler.recordSaturation();
+                    return;
+                }
+                
+                try {
+                    summary = d.queryAnalyzer.analyzeQuery(session, query,
+                            bindBucket != null ? bindBucket.getLiterals() : null);
+                    success = true;
+                } finally {
+                    long elapsed = System.nanoTime() - startTime;
+                    d.sampler.recordAnalysis(elapsed, success);
+                    d.metrics.recordPhase(QueryAnalyzerMetrics.Phase.TOTAL, elapsed);
+                    if (success) {
+                        d.metrics.recordAnalyzed();
+                    } else {
+                        d.metrics.recordExplainFailure();
+                    }
+                }
+            } finally {
+                long overhead = System.nanoTime() - acquireStart;
+                if (attempted) {
+                    d.circuitBreaker.recordAnalysis(overhead, success);
+                } else {
+                    d.circuitBreaker.recordOverhead(overhead);
+                }
+            }
+            summary.setFingerprint(fingerprint);
+            QueryExecutionSummary reusable = summary.copyForReuse();
+            d.planCache.put(cacheKey, reusable);
+            if (bindBucket != null) {
+                summary.setBindBucket(bindBucket.getLabel());
+                reusable.setBindBucket(bindBucket.getLabel());
+                d.bindTracker.recordPlan(fingerprintId, bindBucket, reusable);
+            } else {
+                // The store keeps one plan per statement shape; per-bucket plans would read as plan changes
+                d.planStore.record(reusable);
             }
         }
+        
+        // Add query text if enabled
+        summary.setOriginalQuery(d.properties.isIncludeQueryText() ? query : null);
+        summary.setStackTrace(stackTrace);
+        
+        d.heavyStatements.record(summary);
+        
+        // Formatting and I/O happen on the sinks' writer threads
+        d.output.publish(summary);
     }
     
-    private String getCurrentStackTrace() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        StringBuilder sb = new StringBuilder();
+    private static final class InFlightQuery {
+        private String query;
+        private long fingerprintId;
+        // Plan cache key of the statement's bind bucket, the fingerprint id when it has none
+        private long cacheKey;
+        private CallSite callSite;
+        // Guardrail permits held until the statement has run, and the statements they were taken for
+        private final List<Semaphore> permits = new ArrayList<>(2);
+        private long[] permitFingerprints = new long[2];
         
-        // Skip internal methods and focus on application code
-        for (int i = 4; i < Math.min(stackTrace.length, 8); i++) {
-            StackTraceElement element = stackTrace[i];
-            String className = element.getClassName();
-            
-            // Skip framework and proxy classes
-            if (!className.contains("queryanalyzer") && 
-                !className.contains("dsproxy") && 
-                !className.contains("springframework.jdbc") &&
-                !className.contains("hikari")) {
-                sb.append("  at ").append(element.toString()).append("\n");
+        private boolean holdsPermitFor(long fingerprintId) {
+            for (int i = 0; i < permits.size(); i++) {
+                if (permitFingerprints[i] == fingerprintId) {
+                    return true;
+                }
             }
+            return false;
         }
         
-        return sb.toString();
+        private void addPermit(long fingerprintId, Semaphore permit) {
+            if (permits.size() == permitFingerprints.length) {
+                permitFingerprints = Arrays.copyOf(permitFingerprints, permits.size() * 2);
+            }
+            permitFingerprints[permits.size()] = fingerprintId;
+            permits.add(permit);
+        }
+    }
+    
+    // Resolved once and published through a volatile field, so every reader sees them fully built.
+    // The @Lazy services are only created here. The metrics, pipeline, output, plan cache, latency
+    // recorder and circuit breaker are also injected into the metrics and snapshot beans, so they
+    // exist from startup, but they hold no threads or files outside start() and stop().
+    private static final class Dependencies {
+        private final QueryDebugProperties properties;
+        private final AnalysisConnectionPool connectionPool;
+        private final OracleQueryAnalyzer queryAnalyzer;
+        private final QueryDebugOutput output;
+        private final QueryPlanCache planCache;
+        private final QueryAnalysisPipeline pipeline;
+        private final QuerySampler sampler;
+        private final QueryLatencyRecorder latencyRecorder;
+        private final QueryAnalyzerMetrics metrics;
+        private final AnalysisCircuitBreaker circuitBreaker;
+        private final HeavyStatementAggregator heavyStatements;
+        private final PlanStore planStore;
+        private final BindSensitivityTracker bindTracker;
+        private final CallSiteResolver callSiteResolver;
+        private final CallSiteStatistics callSiteStatistics;
+        private final QueryGuardrail guardrail;
+        
+        private Dependencies(ApplicationContext context) {
+            this.properties = context.getBean(QueryDebugProperties.class);
+            this.connectionPool = context.getBean(AnalysisConnectionPool.class);
+            this.queryAnalyzer = context.getBean(OracleQueryAnalyzer.class);
+            this.output = context.getBean(QueryDebugOutput.class);
+            this.planCache = context.getBean(QueryPlanCache.class);
+            this.pipeline = context.getBean(QueryAnalysisPipeline.class);
+            this.sampler = context.getBean(QuerySampler.class);
+            this.latencyRecorder = context.getBean(QueryLatencyRecorder.class);
+            this.metrics = context.getBean(QueryAnalyzerMetrics.class);
+            this.circuitBreaker = context.getBean(AnalysisCircuitBreaker.class);
+            this.heavyStatements = context.getBean(HeavyStatementAggregator.class);
+            this.planStore = context.getBean(PlanStore.class);
+            this.bindTracker = context.getBean(BindSensitivityTracker.class);
+            this.callSiteResolver = context.getBean(CallSiteResolver.class);
+            this.callSiteStatistics = context.getBean(CallSiteStatistics.class);
+            this.guardrail = context.getBean(QueryGuardrail.class);
+        }
+        
+        // Threads, files and sinks exist only while analysis is switched on
+        private void start() {
+            output.open();
+            planStore.open();
+            pipeline.start();
+        }
+        
+        // Queued analyses still publish to the sinks and the store, so the pipeline goes first
+        private void stop() {
+            pipeline.shutdown();
+            output.close();
+            planStore.close();
+        }
     }
 }
\ No newline at end of file
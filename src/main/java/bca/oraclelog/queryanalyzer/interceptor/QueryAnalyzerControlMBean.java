@@ -0,0 +1,9 @@
+package bca.oraclelog.queryanalyzer.interceptor;
+
+// Management interface for switching query analysis on and off without a restart
+public interface QueryAnalyzerControlMBean {
+    
+    boolean isAnalysisEnabled();
+    
+    void setAnalysisEnabled(boolean enabled);
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package bca.oraclelog.queryanalyzer.model;
+
+/**
+ * Class of bind values one execution of a statement ran with, such as "a number in the
+ * thousands and a short string ending in %". Executions in the same bucket are expected
+ * to get the same plan. The SQL literals of the execution that opened the bucket are kept
+ * so the statement can be explained with representative values instead of placeholders.
+ */
+public final class BindBucket {
+    
+    private final long id;
+    private final String label;
+    private final String[] literals;
+    
+    public BindBucket(long id, String label, String[] literals) {
+        this.id = id;
+        this.label = label;
+        this.literals = literals;
+    }
+    
+    public long getId() { return id; }
+    
+    public String getLabel() { return label; }
+    
+    // Literal per parameter position; null where the value cannot be written as a literal
+    public String[] getLiterals() { return literals; }
+    
+    // Plan cache key of this bucket of the statement
+    public long keyFor(long fingerprintId) {
+        long key = (fingerprintId ^ Long.rotateLeft(id, 29)) * 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+    
+    @Override
+    public String toString() {
+        return label;
+    }
+}
\ No newline at end of file
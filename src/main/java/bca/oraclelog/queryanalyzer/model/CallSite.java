@@ -0,0 +1,44 @@
+package bca.oraclelog.queryanalyzer.model;
+
+/**
+ * Application frame a statement was issued from. Instances are interned by the resolver,
+ * one per distinct frame, so they can be compared by identity and used as map keys cheaply.
+ */
+public final class CallSite {
+    
+    private final int id;
+    private final String className;
+    private final String methodName;
+    private final String fileName;
+    private final int lineNumber;
+    private final String frame;
+    
+    public CallSite(int id, String className, String methodName, String fileName, int lineNumber) {
+        this.id = id;
+        this.className = className;
+        this.methodName = methodName;
+        this.fileName = fileName;
+        this.lineNumber = lineNumber;
+        this.frame = "  at " + className + "." + methodName
+                + "(" + (fileName != null ? fileName : "Unknown Source")
+                + (lineNumber > 0 ? ":" + lineNumber : "") + ")\n";
+    }
+    
+    public int getId() { return id; }
+    
+    public String getClassName() { return className; }
+    
+    public String getMethodName() { return methodName; }
+    
+    public String getFileName() { return fileName; }
+    
+    public int getLineNumber() { return lineNumber; }
+    
+    // Stack-trace style line, built once
+    public String getFrame() { return frame; }
+    
+    @Override
+    public String toString() {
+        return frame.trim();
+    }
+}
\ No newline at end of file
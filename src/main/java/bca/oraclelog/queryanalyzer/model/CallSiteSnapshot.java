@@ -0,0 +1,39 @@
+package bca.oraclelog.queryanalyzer.model;
+
+// Point-in-time view of one statement shape as issued from one call site
+public class CallSiteSnapshot {
+    private final CallSite callSite;
+    private final long fingerprintId;
+    private final String sampleQuery;
+    private final long executionCount;
+    private final double totalCost;
+    private final long costedCount;
+    private final long totalMicros;
+    private final long p95Micros;
+    private final long maxMicros;
+    
+    public CallSiteSnapshot(CallSite callSite, long fingerprintId, String sampleQuery, long executionCount,
+                            double totalCost, long costedCount, long totalMicros, long p95Micros, long maxMicros) {
+        this.callSite = callSite;
+        this.fingerprintId = fingerprintId;
+        this.sampleQuery = sampleQuery;
+        this.executionCount = executionCount;
+        this.totalCost = totalCost;
+        this.costedCount = costedCount;
+        this.totalMicros = totalMicros;
+        this.p95Micros = p95Micros;
+        this.maxMicros = maxMicros;
+    }
+    
+    public CallSite getCallSite() { return callSite; }
+    public long getFingerprintId() { return fingerprintId; }
+    public String getSampleQuery() { return sampleQuery; }
+    public long getExecutionCount() { return executionCount; }
+    // Sum of the plan cost of each execution whose plan was known at the time
+    public double getTotalCost() { return totalCost; }
+    public long getCostedCount() { return costedCount; }
+    public double getAverageCost() { return costedCount > 0 ? totalCost / costedCount : 0; }
+    public long getTotalMicros() { return totalMicros; }
+    public long getP95Micros() { return p95Micros; }
+    public long getMaxMicros() { return maxMicros; }
+}
\ No newline at end of file
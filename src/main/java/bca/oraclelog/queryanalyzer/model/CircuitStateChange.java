@@ -0,0 +1,35 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import java.time.Instant;
+
+// One transition of the analysis circuit breaker and why it happened
+public class CircuitStateChange {
+    
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private final Instant timestamp;
+    private final State from;
+    private final State to;
+    private final String reason;
+    
+    public CircuitStateChange(Instant timestamp, State from, State to, String reason) {
+        this.timestamp = timestamp;
+        this.from = from;
+        this.to = to;
+        this.reason = reason;
+    }
+    
+    public Instant getTimestamp() { return timestamp; }
+    public State getFrom() { return from; }
+    public State getTo() { return to; }
+    public String getReason() { return reason; }
+    
+    @Override
+    public String toString() {
+        return timestamp + " " + from + " -> " + to + ": " + reason;
+    }
+}
\ No newline at end of file
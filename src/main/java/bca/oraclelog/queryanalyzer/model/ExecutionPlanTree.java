@@ -0,0 +1,191 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import java.util.Arrays;
+
+/**
+ * Complete EXPLAIN PLAN tree of a statement held in parallel primitive arrays,
+ * one slot per PLAN_TABLE row in ID order. Names are {@link PlanSymbols} ids.
+ * Instances are immutable once built and safe to share between cached summaries.
+ */
+public final class ExecutionPlanTree {
+    
+    private final int size;
+    private final int[] ids;
+    private final int[] parentIds;
+    private final int[] operations;
+    private final int[] options;
+    private final int[] objectNames;
+    private final double[] costs;
+    private final long[] cardinalities;
+    private final long[] bytes;
+    private final long planHash;
+    
+    private ExecutionPlanTree(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.parentIds = Arrays.copyOf(builder.parentIds, size);
+        this.operations = Arrays.copyOf(builder.operations, size);
+        this.options = Arrays.copyOf(builder.options, size);
+        this.objectNames = Arrays.copyOf(builder.objectNames, size);
+        this.costs = Arrays.copyOf(builder.costs, size);
+        this.cardinalities = Arrays.copyOf(builder.cardinalities, size);
+        this.bytes = Arrays.copyOf(builder.bytes, size);
+        this.planHash = computePlanHash();
+    }
+    
+    // FNV-1a over the tree shape and access paths; costs and estimates do not take part
+    private long computePlanHash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < size; i++) {
+            hash = mix(hash, ids[i]);
+            hash = mix(hash, parentIds[i]);
+            hash = mix(hash, PlanSymbols.name(operations[i]));
+            hash = mix(hash, PlanSymbols.name(options[i]));
+            hash = mix(hash, PlanSymbols.name(objectNames[i]));
+        }
+        return hash;
+    }
+    
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xFF) * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xFE) * 0x100000001b3L;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public int size() { return size; }
+    
+    // Same value in every run for the same plan, so plans can be compared across restarts
+    public long getPlanHash() { return planHash; }
+    
+    public int getId(int node) { return ids[node]; }
+    
+    public int getParentId(int node) { return parentIds[node]; }
+    
+    public String getOperation(int node) { return PlanSymbols.name(operations[node]); }
+    
+    public String getOptions(int node) { return PlanSymbols.name(options[node]); }
+    
+    public String getObjectName(int node) { return PlanSymbols.name(objectNames[node]); }
+    
+    public double getCost(int node) { return costs[node]; }
+    
+    public long getCardinality(int node) { return cardinalities[node]; }
+    
+    public long getBytes(int node) { return bytes[node]; }
+    
+    public int indexOf(int id) {
+        // Rows arrive ordered by ID starting at 0, so the index normally is the ID
+        if (id >= 0 && id < size && ids[id] == id) {
+            return id;
+        }
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public int getDepth(int node) {
+        int depth = 0;
+        int parent = parentIds[node];
+        while (parent >= 0 && depth < size) {
+            int parentIndex = indexOf(parent);
+            if (parentIndex < 0) {
+                break;
+            }
+            depth++;
+            parent = parentIds[parentIndex];
+        }
+        return depth;
+    }
+    
+    // Oracle costs are cumulative; a node's own share is its cost minus its children's
+    public double getSelfCost(int node) {
+        double self = costs[node];
+        int id = ids[node];
+        for (int i = 0; i < size; i++) {
+            if (parentIds[i] == id) {
+                self -= costs[i];
+            }
+        }
+        return Math.max(0, self);
+    }
+    
+    public int getMostExpensiveNode() {
+        int mostExpensive = -1;
+        double highest = -1;
+        for (int i = 0; i < size; i++) {
+            double self = getSelfCost(i);
+            if (self > highest) {
+                highest = self;
+                mostExpensive = i;
+            }
+        }
+        return mostExpensive;
+    }
+    
+    public static final class Builder {
+        
+        private int size;
+        private int[] ids = new int[8];
+        private int[] parentIds = new int[8];
+        private int[] operations = new int[8];
+        private int[] options = new int[8];
+        private int[] objectNames = new int[8];
+        private double[] costs = new double[8];
+        private long[] cardinalities = new long[8];
+        private long[] bytes = new long[8];
+        
+        private Builder() {
+        }
+        
+        public Builder addNode(int id, int parentId, String operation, String option, String objectName,
+                               double cost, long cardinality, long byteCount) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = id;
+            parentIds[size] = parentId;
+            operations[size] = PlanSymbols.intern(operation);
+            options[size] = PlanSymbols.intern(option);
+            objectNames[size] = PlanSymbols.intern(objectName);
+            costs[size] = cost;
+            cardinalities[size] = cardinality;
+            bytes[size] = byteCount;
+            size++;
+            return this;
+        }
+        
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+            operations = Arrays.copyOf(operations, capacity);
+            options = Arrays.copyOf(options, capacity);
+            objectNames = Arrays.copyOf(objectNames, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+            bytes = Arrays.copyOf(bytes, capacity);
+        }
+        
+        public ExecutionPlanTree build() {
+            return new ExecutionPlanTree(this);
+        }
+    }
+}
\ No newline at end of file
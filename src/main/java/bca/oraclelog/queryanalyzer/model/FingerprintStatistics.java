@@ -0,0 +1,156 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import java.util.Arrays;
+
+/**
+ * Execution statistics of one statement shape as stored in a snapshot file. Merging adds
+ * counts, totals and histogram buckets and keeps minimums and maximums, so any grouping of
+ * snapshots merges to the same result. Instances are mutable and reused while streaming.
+ */
+public final class FingerprintStatistics {
+    
+    private long fingerprintId;
+    private String sampleQuery;
+    // Instances that saw the statement
+    private long instanceCount;
+    private long successCount;
+    private long failureCount;
+    private final long[] latencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+    private long totalMicros;
+    private long maxMicros;
+    // Executions that ran with a cached plan, and the sum of that plan's cost over them; the cost
+    // is the plan's as cached when each execution finished, not re-estimated afterwards
+    private long costedExecutions;
+    private double totalCost;
+    private double minCost = Double.NaN;
+    private double maxCost = Double.NaN;
+    private long maxCardinality;
+    
+    public void reset(long fingerprintId) {
+        this.fingerprintId = fingerprintId;
+        sampleQuery = null;
+        instanceCount = successCount = failureCount = 0;
+        Arrays.fill(latencyCounts, 0);
+        totalMicros = maxMicros = 0;
+        costedExecutions = 0;
+        totalCost = 0;
+        minCost = maxCost = Double.NaN;
+        maxCardinality = 0;
+    }
+    
+    // One instance's view: its latency histogram and the plan costs accumulated per execution
+    public static FingerprintStatistics of(long fingerprintId, String sampleQuery, long successCount,
+                                           long failureCount, LatencyHistogram histogram, long costedExecutions,
+                                           double totalCost, double minCost, double maxCost, long maxCardinality) {
+        FingerprintStatistics statistics = new FingerprintStatistics();
+        statistics.reset(fingerprintId);
+        statistics.sampleQuery = sampleQuery;
+        statistics.instanceCount = 1;
+        statistics.successCount = successCount;
+        statistics.failureCount = failureCount;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            statistics.latencyCounts[i] = histogram.getCountAt(i);
+        }
+        statistics.totalMicros = histogram.getTotalMicros();
+        statistics.maxMicros = histogram.getMaxMicros();
+        if (costedExecutions > 0) {
+            statistics.costedExecutions = costedExecutions;
+            statistics.totalCost = totalCost;
+            statistics.minCost = minCost;
+            statistics.maxCost = maxCost;
+            statistics.maxCardinality = maxCardinality;
+        }
+        return statistics;
+    }
+    
+    public void merge(FingerprintStatistics other) {
+        if (sampleQuery == null) {
+            sampleQuery = other.sampleQuery;
+        }
+        instanceCount += other.instanceCount;
+        successCount += other.successCount;
+        failureCount += other.failureCount;
+        for (int i = 0; i < latencyCounts.length; i++) {
+            latencyCounts[i] += other.latencyCounts[i];
+        }
+        totalMicros += other.totalMicros;
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+        costedExecutions += other.costedExecutions;
+        totalCost += other.totalCost;
+        // NaN means no cost seen yet
+        if (!Double.isNaN(other.minCost)) {
+            minCost = Double.isNaN(minCost) ? other.minCost : Math.min(minCost, other.minCost);
+            maxCost = Double.isNaN(maxCost) ? other.maxCost : Math.max(maxCost, other.maxCost);
+        }
+        maxCardinality = Math.max(maxCardinality, other.maxCardinality);
+    }
+    
+    public FingerprintStatistics copy() {
+        FingerprintStatistics copy = new FingerprintStatistics();
+        copy.reset(fingerprintId);
+        copy.merge(this);
+        return copy;
+    }
+    
+    public long getPercentileMicros(double percentile) {
+        long count = 0;
+        for (long bucket : latencyCounts) {
+            count += bucket;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < latencyCounts.length; i++) {
+            seen += latencyCounts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.bucketUpperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+    
+    public long getFingerprintId() { return fingerprintId; }
+    
+    public String getSampleQuery() { return sampleQuery; }
+    public void setSampleQuery(String sampleQuery) { this.sampleQuery = sampleQuery; }
+    
+    public long getInstanceCount() { return instanceCount; }
+    public void setInstanceCount(long instanceCount) { this.instanceCount = instanceCount; }
+    
+    public long getSuccessCount() { return successCount; }
+    public void setSuccessCount(long successCount) { this.successCount = successCount; }
+    
+    public long getFailureCount() { return failureCount; }
+    public void setFailureCount(long failureCount) { this.failureCount = failureCount; }
+    
+    public long getExecutionCount() { return successCount + failureCount; }
+    
+    // Bucket counts of the latency histogram, indexed like LatencyHistogram's buckets
+    public long[] getLatencyCounts() { return latencyCounts; }
+    
+    public long getTotalMicros() { return totalMicros; }
+    public void setTotalMicros(long totalMicros) { this.totalMicros = totalMicros; }
+    
+    public long getMaxMicros() { return maxMicros; }
+    public void setMaxMicros(long maxMicros) { this.maxMicros = maxMicros; }
+    
+    public long getCostedExecutions() { return costedExecutions; }
+    public void setCostedExecutions(long costedExecutions) { this.costedExecutions = costedExecutions; }
+    
+    public double getTotalCost() { return totalCost; }
+    public void setTotalCost(double totalCost) { this.totalCost = totalCost; }
+    
+    public double getAverageCost() { return costedExecutions > 0 ? totalCost / costedExecutions : 0; }
+    
+    public double getMinCost() { return minCost; }
+    public void setMinCost(double minCost) { this.minCost = minCost; }
+    
+    public double getMaxCost() { return maxCost; }
+    public void setMaxCost(double maxCost) { this.maxCost = maxCost; }
+    
+    public long getMaxCardinality() { return maxCardinality; }
+    public void setMaxCardinality(long maxCardinality) { this.maxCardinality = maxCardinality; }
+}
\ No newline at end of file
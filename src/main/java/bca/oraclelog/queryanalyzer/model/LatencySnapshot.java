@@ -0,0 +1,43 @@
+package bca.oraclelog.queryanalyzer.model;
+
+// Point-in-time view of one fingerprint's observed latencies next to the optimizer estimate
+public class LatencySnapshot {
+    private final long fingerprintId;
+    private final String sampleQuery;
+    private final long successCount;
+    private final long failureCount;
+    private final long p50Micros;
+    private final long p95Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+    private final double meanMicros;
+    private final long estimatedMicros;
+    
+    public LatencySnapshot(long fingerprintId, String sampleQuery, long successCount, long failureCount,
+                           long p50Micros, long p95Micros, long p99Micros, long maxMicros, double meanMicros,
+                           long estimatedMicros) {
+        this.fingerprintId = fingerprintId;
+        this.sampleQuery = sampleQuery;
+        this.successCount = successCount;
+        this.failureCount = failureCount;
+        this.p50Micros = p50Micros;
+        this.p95Micros = p95Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+        this.meanMicros = meanMicros;
+        this.estimatedMicros = estimatedMicros;
+    }
+    
+    public long getFingerprintId() { return fingerprintId; }
+    public String getSampleQuery() { return sampleQuery; }
+    public long getSuccessCount() { return successCount; }
+    public long getFailureCount() { return failureCount; }
+    public long getExecutionCount() { return successCount + failureCount; }
+    public long getP50Micros() { return p50Micros; }
+    public long getP95Micros() { return p95Micros; }
+    public long getP99Micros() { return p99Micros; }
+    public long getMaxMicros() { return maxMicros; }
+    public double getMeanMicros() { return meanMicros; }
+    // Optimizer estimate from the cached plan, -1 when no plan is known
+    public long getEstimatedMicros() { return estimatedMicros; }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import java.time.Instant;
+
+/**
+ * Published when a statement's plan differs from the one stored for its fingerprint,
+ * either in shape (plan hash) or in cost by more than the configured threshold.
+ */
+public class PlanRegressionEvent {
+    
+    public enum Kind {
+        PLAN_CHANGED,
+        COST_CHANGED
+    }
+    
+    private final Kind kind;
+    private final SqlFingerprint fingerprint;
+    private final long previousPlanHash;
+    private final long planHash;
+    private final double previousCost;
+    private final double cost;
+    private final Instant previousRecordedAt;
+    private final Instant detectedAt;
+    
+    public PlanRegressionEvent(Kind kind, SqlFingerprint fingerprint, long previousPlanHash, long planHash,
+                               double previousCost, double cost, Instant previousRecordedAt, Instant detectedAt) {
+        this.kind = kind;
+        this.fingerprint = fingerprint;
+        this.previousPlanHash = previousPlanHash;
+        this.planHash = planHash;
+        this.previousCost = previousCost;
+        this.cost = cost;
+        this.previousRecordedAt = previousRecordedAt;
+        this.detectedAt = detectedAt;
+    }
+    
+    public Kind getKind() { return kind; }
+    public SqlFingerprint getFingerprint() { return fingerprint; }
+    public long getPreviousPlanHash() { return previousPlanHash; }
+    public long getPlanHash() { return planHash; }
+    public double getPreviousCost() { return previousCost; }
+    public double getCost() { return cost; }
+    public Instant getPreviousRecordedAt() { return previousRecordedAt; }
+    public Instant getDetectedAt() { return detectedAt; }
+    
+    public boolean isCostIncrease() { return cost > previousCost; }
+    
+    @Override
+    public String toString() {
+        return kind + " for " + fingerprint.getIdHex() + ": plan " + Long.toHexString(previousPlanHash) + " -> "
+                + Long.toHexString(planHash) + ", cost " + previousCost + " -> " + cost;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide table of plan operation, option and object names.
+ * Plan trees store the small integer id of a name instead of the string itself,
+ * so each distinct name is held once no matter how many cached plans use it.
+ */
+public final class PlanSymbols {
+    
+    public static final int NONE = -1;
+    
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size;
+    
+    private PlanSymbols() {
+    }
+    
+    public static int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        
+        synchronized (PlanSymbols.class) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = name;
+            // Publish the array before the id so readers always find the name
+            names = current;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+    
+    public static String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+    
+    public static int size() {
+        return ids.size();
+    }
+}
\ No newline at end of file
@@ -1,6 +1,8 @@
 package bca.oraclelog.queryanalyzer.model;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.UUID;
 
 public class QueryExecutionSummary {
@@ -13,12 +15,40 @@ public class QueryExecutionSummary {
     private double ioCost;
     private long time;
     private long analysisTimeMs;
-    private LocalDateTime timestamp;
+    // Epoch millis; the LocalDateTime is only built when a report is formatted
+    private long timestampMillis;
     private String stackTrace;
+    private SqlFingerprint fingerprint;
+    private boolean fromCache;
+    private ExecutionPlanTree planTree;
+    private String bindBucket;
     
     public QueryExecutionSummary() {
         this.statementId = UUID.randomUUID().toString();
-        this.timestamp = LocalDateTime.now();
+        this.timestampMillis = System.currentTimeMillis();
+    }
+    
+    // Copy of the plan figures for reuse from the plan cache; per-execution fields start fresh.
+    // The copy is the only allocation of a reported cache hit: it carries that execution's text and frame
+    public QueryExecutionSummary copyForReuse() {
+        QueryExecutionSummary copy = new QueryExecutionSummary(statementId);
+        copy.cost = cost;
+        copy.cardinality = cardinality;
+        copy.bytes = bytes;
+        copy.cpuCost = cpuCost;
+        copy.ioCost = ioCost;
+        copy.time = time;
+        copy.analysisTimeMs = analysisTimeMs;
+        copy.fingerprint = fingerprint;
+        copy.planTree = planTree;
+        copy.bindBucket = bindBucket;
+        copy.fromCache = true;
+        return copy;
+    }
+    
+    private QueryExecutionSummary(String statementId) {
+        this.statementId = statementId;
+        this.timestampMillis = System.currentTimeMillis();
     }
     
     // Getters and Setters
@@ -49,9 +79,27 @@ public class QueryExecutionSummary {
     public long getAnalysisTimeMs() { return analysisTimeMs; }
     public void setAnalysisTimeMs(long analysisTimeMs) { this.analysisTimeMs = analysisTimeMs; }
     
-    public LocalDateTime getTimestamp() { return timestamp; }
-    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+    }
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestampMillis = timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    public long getTimestampMillis() { return timestampMillis; }
     
     public String getStackTrace() { return stackTrace; }
     public void setStackTrace(String stackTrace) { this.stackTrace = stackTrace; }
+    
+    public SqlFingerprint getFingerprint() { return fingerprint; }
+    public void setFingerprint(SqlFingerprint fingerprint) { this.fingerprint = fingerprint; }
+    
+    public boolean isFromCache() { return fromCache; }
+    public void setFromCache(boolean fromCache) { this.fromCache = fromCache; }
+    
+    public ExecutionPlanTree getPlanTree() { return planTree; }
+    public void setPlanTree(ExecutionPlanTree planTree) { this.planTree = planTree; }
+    
+    public String getBindBucket() { return bindBucket; }
+    public void setBindBucket(String bindBucket) { this.bindBucket = bindBucket; }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package bca.oraclelog.queryanalyzer.model;
+
+public enum SqlCommandType {
+    SELECT(true),
+    INSERT(true),
+    UPDATE(true),
+    DELETE(true),
+    MERGE(true),
+    OTHER(false);
+    
+    private final boolean explainable;
+    
+    SqlCommandType(boolean explainable) {
+        this.explainable = explainable;
+    }
+    
+    public boolean isExplainable() { return explainable; }
+}
\ No newline at end of file
@@ -0,0 +1,224 @@
+package bca.oraclelog.queryanalyzer.model;
+
+/**
+ * Normalized form of a SQL statement used as the identity of a query shape.
+ * String and numeric literals are replaced by {@code ?}, comments are dropped
+ * (optimizer hints are kept), whitespace is collapsed and unquoted text is upper-cased,
+ * so executions that only differ in literal values share the same fingerprint.
+ */
+public final class SqlFingerprint {
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private static final ThreadLocal<Normalizer> NORMALIZER = ThreadLocal.withInitial(Normalizer::new);
+    
+    private final String normalized;
+    private final long id;
+    
+    private SqlFingerprint(String normalized, long id) {
+        this.normalized = normalized;
+        this.id = id;
+    }
+    
+    public static SqlFingerprint of(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        long id = NORMALIZER.get().run(sql, sb);
+        return new SqlFingerprint(sb.toString(), id);
+    }
+    
+    // Fingerprint read back from storage; the id is trusted as written
+    public static SqlFingerprint restore(String normalized, long id) {
+        return new SqlFingerprint(normalized, id);
+    }
+    
+    // Same id as of(sql).getId(), computed without building the normalized text
+    public static long idOf(String sql) {
+        return NORMALIZER.get().run(sql, null);
+    }
+    
+    // Whether sql normalizes to this fingerprint's text, walked once without building it
+    public boolean matches(String sql) {
+        return NORMALIZER.get().matches(sql, normalized);
+    }
+    
+    public String getNormalized() { return normalized; }
+    
+    public long getId() { return id; }
+    
+    public String getIdHex() { return String.format("%016x", id); }
+    
+    // Single pass over the SQL text feeding the FNV-1a hash and, when given, the normalized text
+    private static final class Normalizer {
+        
+        private long hash;
+        private int emitted;
+        private StringBuilder out;
+        // Compared against instead of appended to when matching
+        private String expected;
+        private boolean mismatch;
+        
+        boolean matches(String sql, String normalized) {
+            expected = normalized;
+            mismatch = false;
+            try {
+                run(sql, null);
+                return !mismatch && emitted == normalized.length();
+            } finally {
+                expected = null;
+            }
+        }
+        
+        long run(String sql, StringBuilder target) {
+            hash = FNV_OFFSET;
+            emitted = 0;
+            out = target;
+            
+            int length = sql.length();
+            boolean pendingSpace = false;
+            int i = 0;
+            
+            while (i < length) {
+                char c = sql.charAt(i);
+                
+                if (Character.isWhitespace(c)) {
+                    pendingSpace = emitted > 0;
+                    i++;
+                    continue;
+                }
+                
+                // Line comment
+                if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                    while (i < length && sql.charAt(i) != '\n') i++;
+                    pendingSpace = emitted > 0;
+                    continue;
+                }
+                
+                // Block comment; hints (/*+ ... */) change the plan and are kept
+                if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                    int end = sql.indexOf("*/", i + 2);
+                    end = end < 0 ? length : end + 2;
+                    boolean hint = i + 2 < length && sql.charAt(i + 2) == '+';
+                    if (hint) {
+                        if (pendingSpace) emit(' ');
+                        emitUpperCollapsed(sql, i, end);
+                    }
+                    pendingSpace = emitted > 0;
+                    i = end;
+                    continue;
+                }
+                
+                if (pendingSpace) {
+                    emit(' ');
+                    pendingSpace = false;
+                }
+                
+                // String literal, '' is an escaped quote
+                if (c == '\'') {
+                    i++;
+                    while (i < length) {
+                        if (sql.charAt(i) == '\'') {
+                            if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                                i += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        i++;
+                    }
+                    emit('?');
+                    i++;
+                    continue;
+                }
+                
+                // Quoted identifier, case is significant
+                if (c == '"') {
+                    int end = sql.indexOf('"', i + 1);
+                    end = end < 0 ? length : end + 1;
+                    for (int j = i; j < end; j++) {
+                        emit(sql.charAt(j));
+                    }
+                    i = end;
+                    continue;
+                }
+                
+                // Numeric literal not part of an identifier
+                if (isNumberStart(sql, i) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+                    i++;
+                    while (i < length) {
+                        char n = sql.charAt(i);
+                        if (Character.isDigit(n) || n == '.') {
+                            i++;
+                        } else if ((n == 'E' || n == 'e') && i + 1 < length
+                                && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                            i += 2;
+                        } else {
+                            break;
+                        }
+                    }
+                    emit('?');
+                    continue;
+                }
+                
+                emit(Character.toUpperCase(c));
+                i++;
+            }
+            
+            out = null;
+            return hash;
+        }
+        
+        private void emit(char c) {
+            hash ^= c;
+            hash *= FNV_PRIME;
+            if (out != null) {
+                out.append(c);
+            } else if (expected != null && (emitted >= expected.length() || expected.charAt(emitted) != c)) {
+                mismatch = true;
+            }
+            emitted++;
+        }
+        
+        private void emitUpperCollapsed(String sql, int from, int to) {
+            boolean space = false;
+            for (int i = from; i < to; i++) {
+                char c = sql.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = true;
+                } else {
+                    if (space) emit(' ');
+                    emit(Character.toUpperCase(c));
+                    space = false;
+                }
+            }
+        }
+    }
+    
+    private static boolean isNumberStart(String sql, int i) {
+        char c = sql.charAt(i);
+        return Character.isDigit(c)
+                || (c == '.' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1)));
+    }
+    
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == ':';
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SqlFingerprint)) return false;
+        SqlFingerprint other = (SqlFingerprint) o;
+        return id == other.id && normalized.equals(other.normalized);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+    
+    @Override
+    public String toString() {
+        return normalized;
+    }
+}
\ No newline at end of file
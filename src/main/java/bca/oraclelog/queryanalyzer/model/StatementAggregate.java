@@ -0,0 +1,49 @@
+package bca.oraclelog.queryanalyzer.model;
+
+// Totals of one SQL fingerprint over a time window, as kept by the heavy-hitter aggregator
+public class StatementAggregate {
+    private final long fingerprintId;
+    private final String sampleQuery;
+    private final double weight;
+    private final double error;
+    private final long count;
+    private final double totalCost;
+    private final double maxCost;
+    private final long totalCardinality;
+    private final long maxCardinality;
+    private final long totalBytes;
+    private final long maxBytes;
+    private final long totalTime;
+    
+    public StatementAggregate(long fingerprintId, String sampleQuery, double weight, double error, long count,
+                              double totalCost, double maxCost, long totalCardinality, long maxCardinality,
+                              long totalBytes, long maxBytes, long totalTime) {
+        this.fingerprintId = fingerprintId;
+        this.sampleQuery = sampleQuery;
+        this.weight = weight;
+        this.error = error;
+        this.count = count;
+        this.totalCost = totalCost;
+        this.maxCost = maxCost;
+        this.totalCardinality = totalCardinality;
+        this.maxCardinality = maxCardinality;
+        this.totalBytes = totalBytes;
+        this.maxBytes = maxBytes;
+        this.totalTime = totalTime;
+    }
+    
+    public long getFingerprintId() { return fingerprintId; }
+    public String getSampleQuery() { return sampleQuery; }
+    // Ranking value; may overestimate the true value by at most getError()
+    public double getWeight() { return weight; }
+    public double getError() { return error; }
+    public long getCount() { return count; }
+    public double getTotalCost() { return totalCost; }
+    public double getMaxCost() { return maxCost; }
+    public long getTotalCardinality() { return totalCardinality; }
+    public long getMaxCardinality() { return maxCardinality; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getMaxBytes() { return maxBytes; }
+    // Sum of the optimizer's time estimates, in seconds
+    public long getTotalTime() { return totalTime; }
+}
\ No newline at end of file
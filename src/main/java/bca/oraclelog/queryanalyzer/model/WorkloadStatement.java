@@ -0,0 +1,66 @@
+package bca.oraclelog.queryanalyzer.model;
+
+/**
+ * Outcome of analyzing one distinct statement of an offline workload: the plan figures of
+ * its first occurrence, or the error that prevented the analysis, and how often the
+ * statement shape occurs in the workload.
+ */
+public class WorkloadStatement {
+    
+    private final long fingerprintId;
+    private final String normalizedSql;
+    private final long planHash;
+    private final double cost;
+    private final long cardinality;
+    private final long bytes;
+    private final double cpuCost;
+    private final double ioCost;
+    private final long time;
+    private final String error;
+    private long executions;
+    
+    public WorkloadStatement(long fingerprintId, String normalizedSql, long planHash, double cost, long cardinality,
+                             long bytes, double cpuCost, double ioCost, long time, String error) {
+        this.fingerprintId = fingerprintId;
+        this.normalizedSql = normalizedSql;
+        this.planHash = planHash;
+        this.cost = cost;
+        this.cardinality = cardinality;
+        this.bytes = bytes;
+        this.cpuCost = cpuCost;
+        this.ioCost = ioCost;
+        this.time = time;
+        this.error = error;
+    }
+    
+    public static WorkloadStatement failed(SqlFingerprint fingerprint, String error) {
+        return new WorkloadStatement(fingerprint.getId(), fingerprint.getNormalized(), 0, 0, 0, 0, 0, 0, 0,
+                error != null ? error : "unknown error");
+    }
+    
+    public long getFingerprintId() { return fingerprintId; }
+    
+    public String getNormalizedSql() { return normalizedSql; }
+    
+    public long getPlanHash() { return planHash; }
+    
+    public double getCost() { return cost; }
+    
+    public long getCardinality() { return cardinality; }
+    
+    public long getBytes() { return bytes; }
+    
+    public double getCpuCost() { return cpuCost; }
+    
+    public double getIoCost() { return ioCost; }
+    
+    public long getTime() { return time; }
+    
+    public String getError() { return error; }
+    
+    public boolean isFailed() { return error != null; }
+    
+    public long getExecutions() { return executions; }
+    
+    public void setExecutions(long executions) { this.executions = executions; }
+}
\ No newline at end of file
@@ -0,0 +1,267 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CircuitStateChange;
+import bca.oraclelog.queryanalyzer.model.CircuitStateChange.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Switches EXPLAIN analysis off when it costs more than its budget or keeps failing.
+ * Health is judged per window, rolled on a clock: analysis time against observed query time
+ * and against wall time, and the analysis error rate. The overhead ratio is only judged once
+ * a window has seen enough application queries, so a cold start with little traffic does not
+ * trip it. An open circuit rejects analyses for the open duration, then lets a few probes
+ * through. Any failed probe opens it again; once all probes have succeeded it closes, with
+ * admission ramping up from a fraction of analyses to all of them over the following windows.
+ */
+@Service
+public class AnalysisCircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisCircuitBreaker.class);
+    
+    private static final int HISTORY_SIZE = 50;
+    
+    private final boolean enabled;
+    private final long windowNanos;
+    private final long openNanos;
+    private final double maxOverheadRatio;
+    private final long maxAnalysisNanosPerSecond;
+    private final double errorRateThreshold;
+    private final int minimumAnalyses;
+    private final long minimumQueries;
+    private final long minimumQueryNanos;
+    private final int halfOpenProbes;
+    private final int rampSteps;
+    
+    // Current window
+    private final LongAdder analysisNanos = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private long windowStart;
+    private volatile long windowEnd;
+    
+    private final AtomicInteger probesLeft = new AtomicInteger();
+    // Probes finished since the circuit went half-open; only touched while rolling
+    private long probesSucceeded;
+    private final AtomicLong admissions = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final Deque<CircuitStateChange> history = new ArrayDeque<>();
+    
+    private volatile State state = State.CLOSED;
+    private volatile int rampShift;
+    private long openUntil;
+    
+    public AnalysisCircuitBreaker(QueryDebugProperties properties) {
+        QueryDebugProperties.CircuitBreaker settings = properties.getCircuitBreaker();
+        this.enabled = settings.isEnabled();
+        this.windowNanos = Math.max(1, settings.getWindow().toNanos());
+        this.openNanos = settings.getOpenDuration().toNanos();
+        this.maxOverheadRatio = settings.getMaxOverheadRatio();
+        this.maxAnalysisNanosPerSecond = settings.getMaxAnalysisTimePerSecond().toNanos();
+        this.errorRateThreshold = settings.getErrorRateThreshold();
+        this.minimumAnalyses = Math.max(1, settings.getMinimumAnalyses());
+        this.minimumQueries = Math.max(1, settings.getMinimumQueries());
+        this.minimumQueryNanos = settings.getMinimumQueryTime().toNanos();
+        this.halfOpenProbes = Math.max(1, settings.getHalfOpenProbes());
+        this.rampSteps = Math.max(0, Math.min(settings.getRampSteps(), 16));
+        
+        this.windowStart = System.nanoTime();
+        this.windowEnd = windowStart + windowNanos;
+    }
+    
+    public boolean allowAnalysis() {
+        if (!enabled) {
+            return true;
+        }
+        
+        // Windows roll on the scheduler; roll here only if it is a whole window late, e.g. without scheduling
+        long now = System.nanoTime();
+        if (now - windowEnd >= windowNanos) {
+            rollIfOverdue(now);
+        }
+        
+        boolean allowed;
+        switch (state) {
+            case OPEN:
+                allowed = false;
+                break;
+            case HALF_OPEN:
+                allowed = probesLeft.getAndDecrement() > 0;
+                break;
+            case CLOSED:
+            default:
+                int shift = rampShift;
+                allowed = shift == 0 || (admissions.getAndIncrement() & ((1L << shift) - 1)) == 0;
+                break;
+        }
+        
+        if (!allowed) {
+            rejected.increment();
+        }
+        return allowed;
+    }
+    
+    // Execution time of an application statement, the base of the overhead ratio
+    public void recordQueryTime(long elapsedNanos) {
+        if (enabled) {
+            queryNanos.add(elapsedNanos);
+            queries.increment();
+        }
+    }
+    
+    public void recordAnalysis(long elapsedNanos, boolean success) {
+        if (!enabled) {
+            return;
+        }
+        analysisNanos.add(elapsedNanos);
+        attempts.increment();
+        if (!success) {
+            failures.increment();
+        }
+    }
+    
+    // Time spent without an analysis outcome, such as waiting for a connection that never came
+    public void recordOverhead(long elapsedNanos) {
+        if (enabled) {
+            analysisNanos.add(elapsedNanos);
+        }
+    }
+    
+    @Scheduled(fixedRateString = "${oracle.query.debug.circuit-breaker.window:PT5S}",
+               initialDelayString = "${oracle.query.debug.circuit-breaker.window:PT5S}")
+    public void rollWindow() {
+        if (enabled) {
+            roll(System.nanoTime());
+        }
+    }
+    
+    private synchronized void rollIfOverdue(long now) {
+        if (now - windowEnd >= windowNanos) {
+            roll(now);
+        }
+    }
+    
+    private synchronized void roll(long now) {
+        long elapsed = Math.max(1, now - windowStart);
+        long analysis = analysisNanos.sumThenReset();
+        long query = queryNanos.sumThenReset();
+        long queryCount = queries.sumThenReset();
+        long attempted = attempts.sumThenReset();
+        long failed = failures.sumThenReset();
+        windowStart = now;
+        windowEnd = now + windowNanos;
+        
+        switch (state) {
+            case OPEN:
+                if (now - openUntil >= 0) {
+                    probesSucceeded = 0;
+                    probesLeft.set(halfOpenProbes);
+                    transition(State.HALF_OPEN, "open for " + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms, probing with "
+                            + halfOpenProbes + " analyses");
+                }
+                break;
+            case HALF_OPEN: {
+                // Too few probes for an error rate; a single failure is enough to stay open
+                String problem = failed > 0 ? failed + " of " + attempted + " probes failed"
+                        : assess(analysis, query, queryCount, elapsed, attempted, failed, halfOpenProbes);
+                probesSucceeded += attempted;
+                if (problem != null) {
+                    open(now, "probe failed: " + problem);
+                } else if (probesSucceeded < halfOpenProbes) {
+                    // Not all probes have finished yet; let the missing ones through
+                    probesLeft.set((int) (halfOpenProbes - probesSucceeded));
+                } else {
+                    rampShift = rampSteps;
+                    transition(State.CLOSED, probesSucceeded + " probes healthy, admitting 1 in " + (1 << rampSteps)
+                            + " analyses");
+                }
+                break;
+            }
+            case CLOSED:
+            default: {
+                String problem = assess(analysis, query, queryCount, elapsed, attempted, failed, minimumAnalyses);
+                if (problem != null) {
+                    open(now, problem);
+                } else if (rampShift > 0) {
+                    rampShift--;
+                    logger.debug("Analysis circuit ramping up, admitting 1 in {} analyses", 1 << rampShift);
+                }
+                break;
+            }
+        }
+    }
+    
+    // Returns why the window broke the budget, or null when it was healthy
+    private String assess(long analysis, long query, long queryCount, long elapsed, long attempted, long failed,
+                          int minimum) {
+        if (attempted >= minimum && failed >= attempted * errorRateThreshold && failed > 0) {
+            return "error rate " + (failed * 100 / attempted) + "% (" + failed + " of " + attempted + " analyses)";
+        }
+        
+        long perSecond = (long) (analysis * (1_000_000_000.0 / elapsed));
+        if (maxAnalysisNanosPerSecond > 0 && perSecond > maxAnalysisNanosPerSecond) {
+            return "analysis time " + TimeUnit.NANOSECONDS.toMillis(perSecond) + " ms/s over budget of "
+                    + TimeUnit.NANOSECONDS.toMillis(maxAnalysisNanosPerSecond) + " ms/s";
+        }
+        
+        // Too little application traffic in the window makes the ratio meaningless
+        boolean enoughQueries = queryCount >= minimumQueries && query >= minimumQueryNanos && query > 0;
+        if (maxOverheadRatio > 0 && attempted >= minimum && enoughQueries && analysis > query * maxOverheadRatio) {
+            return "analysis time " + (analysis * 100 / query) + "% of query time over budget of "
+                    + Math.round(maxOverheadRatio * 100) + "%";
+        }
+        return null;
+    }
+    
+    private void open(long now, String reason) {
+        openUntil = now + openNanos;
+        rampShift = 0;
+        transition(State.OPEN, reason);
+    }
+    
+    private void transition(State to, String reason) {
+        CircuitStateChange change = new CircuitStateChange(Instant.now(), state, to, reason);
+        state = to;
+        
+        synchronized (history) {
+            if (history.size() == HISTORY_SIZE) {
+                history.removeFirst();
+            }
+            history.addLast(change);
+        }
+        
+        if (to == State.OPEN) {
+            logger.warn("Query analysis circuit opened: {}", reason);
+        } else {
+            logger.info("Query analysis circuit {}: {}", to == State.CLOSED ? "closed" : "half-open", reason);
+        }
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    public State getState() { return state; }
+    
+    public long getRejectedCount() { return rejected.sum(); }
+    
+    // Most recent last
+    public List<CircuitStateChange> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+}
\ No newline at end of file
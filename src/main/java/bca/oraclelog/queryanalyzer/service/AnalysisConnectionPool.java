@@ -0,0 +1,110 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small, bounded pool of analysis sessions kept apart from the application pool.
+ * When no session becomes free within the acquire timeout the caller gets {@code null}
+ * and is expected to skip the analysis instead of waiting behind application traffic.
+ */
+public class AnalysisConnectionPool implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisConnectionPool.class);
+    
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final BlockingQueue<AnalysisSession> idle = new LinkedBlockingQueue<>();
+    
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    
+    private volatile boolean closed;
+    
+    public AnalysisConnectionPool(DataSource dataSource, QueryDebugProperties.Pool settings) {
+        this.dataSource = dataSource;
+        this.maxSize = Math.max(1, settings.getMaxSize());
+        this.acquireTimeoutNanos = settings.getAcquireTimeout().toNanos();
+        this.permits = new Semaphore(maxSize);
+    }
+    
+    public AnalysisSession acquire() throws SQLException {
+        if (closed) {
+            return null;
+        }
+        
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                acquireTimeouts.increment();
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        
+        AnalysisSession session = idle.poll();
+        if (session == null) {
+            try {
+                session = new AnalysisSession(dataSource.getConnection(), this);
+                created.increment();
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        
+        acquired.increment();
+        return session;
+    }
+    
+    void release(AnalysisSession session) {
+        try {
+            if (closed || session.isBroken()) {
+                session.destroy();
+                discarded.increment();
+            } else {
+                idle.offer(session);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        AnalysisSession session;
+        while ((session = idle.poll()) != null) {
+            session.destroy();
+        }
+        logger.debug("Analysis connection pool closed after {} acquisitions", acquired.sum());
+    }
+    
+    public int getMaxSize() { return maxSize; }
+    
+    public int getActiveCount() { return maxSize - permits.availablePermits(); }
+    
+    public int getIdleCount() { return idle.size(); }
+    
+    public long getAcquiredCount() { return acquired.sum(); }
+    
+    public long getAcquireTimeoutCount() { return acquireTimeouts.sum(); }
+    
+    public long getCreatedCount() { return created.sum(); }
+    
+    public long getDiscardedCount() { return discarded.sum(); }
+}
\ No newline at end of file
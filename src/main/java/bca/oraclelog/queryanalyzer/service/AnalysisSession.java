@@ -0,0 +1,149 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A connection used for query analysis together with the statements prepared on it.
+ * Sessions are used by one thread at a time; closing a pooled session hands it back
+ * to its pool with its prepared statements still open for the next analysis.
+ */
+public class AnalysisSession implements AutoCloseable {
+    
+    private final Connection connection;
+    private final AnalysisConnectionPool pool;
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+    private final List<String> pendingCleanup = new ArrayList<>();
+    private Statement statement;
+    private boolean broken;
+    
+    AnalysisSession(Connection connection, AnalysisConnectionPool pool) {
+        this.connection = connection;
+        this.pool = pool;
+    }
+    
+    // Session over a caller-owned connection; closing it only closes the statements
+    public static AnalysisSession wrap(Connection connection) {
+        return new AnalysisSession(connection, null);
+    }
+    
+    public Connection getConnection() { return connection; }
+    
+    public Statement statement() throws SQLException {
+        if (statement == null) {
+            statement = connection.createStatement();
+        }
+        return statement;
+    }
+    
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = preparedStatements.get(sql);
+        if (pstmt == null) {
+            pstmt = connection.prepareStatement(sql);
+            preparedStatements.put(sql, pstmt);
+        }
+        return pstmt;
+    }
+    
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        PreparedStatement cstmt = preparedStatements.get(sql);
+        if (cstmt == null) {
+            cstmt = connection.prepareCall(sql);
+            preparedStatements.put(sql, cstmt);
+        }
+        return (CallableStatement) cstmt;
+    }
+    
+    // Queue a PLAN_TABLE statement ID for removal; one DELETE runs once batchSize IDs are pending
+    public void deferCleanup(String statementId, int batchSize) throws SQLException {
+        pendingCleanup.add(statementId);
+        if (pendingCleanup.size() >= batchSize) {
+            flushCleanup();
+        }
+    }
+    
+    public void flushCleanup() throws SQLException {
+        if (pendingCleanup.isEmpty()) {
+            return;
+        }
+        
+        StringBuilder sql = new StringBuilder("DELETE FROM PLAN_TABLE WHERE STATEMENT_ID IN (");
+        for (int i = 0; i < pendingCleanup.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        
+        try {
+            PreparedStatement pstmt = prepare(sql.toString());
+            for (int i = 0; i < pendingCleanup.size(); i++) {
+                pstmt.setString(i + 1, pendingCleanup.get(i));
+            }
+            pstmt.execute();
+        } finally {
+            pendingCleanup.clear();
+        }
+    }
+    
+    // Mark the session unusable when the failure came from the connection rather than the SQL
+    public void invalidateIfBroken(SQLException e) {
+        if (e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"))) {
+            broken = true;
+        }
+    }
+    
+    boolean isBroken() { return broken; }
+    
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.release(this);
+        } else {
+            try {
+                flushCleanup();
+            } catch (Exception e) {
+                // Silently ignore cleanup errors
+            }
+            closeStatements();
+        }
+    }
+    
+    void closeStatements() {
+        for (PreparedStatement pstmt : preparedStatements.values()) {
+            closeQuietly(pstmt);
+        }
+        preparedStatements.clear();
+        if (statement != null) {
+            closeQuietly(statement);
+            statement = null;
+        }
+    }
+    
+    void destroy() {
+        try {
+            flushCleanup();
+        } catch (Exception e) {
+            // Plan rows of a session-private PLAN_TABLE go away with the connection
+        }
+        closeStatements();
+        closeQuietly(connection);
+    }
+    
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Silently ignore close errors
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sink that hands reports to a single writer thread through a bounded queue.
+ * The writer drains whatever has accumulated and writes it as one batch, so
+ * output costs one write per batch rather than one per report.
+ */
+public abstract class AsyncQueryDebugSink implements QueryDebugSink {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AsyncQueryDebugSink.class);
+    
+    private final BlockingQueue<QueryExecutionSummary> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread writer;
+    
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    
+    private volatile boolean running = true;
+    
+    protected AsyncQueryDebugSink(String name, QueryDebugProperties.Output settings) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getQueueCapacity()));
+        this.batchSize = Math.max(1, settings.getBatchSize());
+        this.flushIntervalNanos = Math.max(1, settings.getFlushInterval().toNanos());
+        this.writer = new Thread(this::runWriter, "query-debug-" + name);
+        this.writer.setDaemon(true);
+    }
+    
+    // Subclasses call this once their own state is initialized
+    protected void start() {
+        writer.start();
+    }
+    
+    @Override
+    public boolean publish(QueryExecutionSummary summary) {
+        if (running && queue.offer(summary)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+    
+    protected abstract void writeBatch(List<QueryExecutionSummary> batch) throws IOException;
+    
+    protected abstract void closeOutput() throws IOException;
+    
+    // Runs on the writer thread before the first batch; reports queue up meanwhile
+    protected void openOutput() throws IOException {
+    }
+    
+    private void runWriter() {
+        try {
+            openOutput();
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            logger.warn("Cannot open query debug output, reports will be dropped: {}", e.getMessage());
+            return;
+        }
+        
+        List<QueryExecutionSummary> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueryExecutionSummary first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            
+            try {
+                writeBatch(batch);
+                written.add(batch.size());
+            } catch (IOException | RuntimeException e) {
+                failed.add(batch.size());
+                logger.debug("Failed to write {} query debug reports: {}", batch.size(), e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+        
+        int abandoned = queue.size();
+        queue.clear();
+        dropped.add(abandoned);
+        
+        try {
+            closeOutput();
+        } catch (IOException e) {
+            logger.debug("Failed to close query debug output: {}", e.getMessage());
+        }
+    }
+    
+    @Override
+    public long getWrittenCount() { return written.sum(); }
+    
+    @Override
+    public long getDroppedCount() { return dropped.sum(); }
+    
+    public long getFailedCount() { return failed.sum(); }
+    
+    public int getQueueDepth() { return queue.size(); }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.BindBucket;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the bind-value buckets seen per statement and the plan each of them was given.
+ * Each statement gets a bounded number of buckets; executions that would open another
+ * one fall back to the statement's plain plan. A statement whose buckets end up with
+ * different plans is logged, since its plan depends on the values it is run with.
+ */
+@Lazy
+@Service
+public class BindSensitivityTracker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BindSensitivityTracker.class);
+    
+    private final QueryDebugProperties.Binds settings;
+    private final boolean enabled;
+    private final int maxBuckets;
+    private final FingerprintTable<Buckets> statements;
+    private final LongAdder sensitiveStatements = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    
+    public BindSensitivityTracker(QueryDebugProperties properties) {
+        this.settings = properties.getBinds();
+        this.enabled = settings.isEnabled();
+        this.maxBuckets = Math.max(1, settings.getMaxBucketsPerStatement());
+        this.statements = new FingerprintTable<>(settings.getMaxTrackedStatements());
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    // Bucket of this execution, or null to analyze it without bind values
+    public BindBucket bucketOf(long fingerprintId, List<List<ParameterSetOperation>> parametersList) {
+        if (!enabled) {
+            return null;
+        }
+        BindBucket bucket = BindValueClassifier.classify(parametersList, settings);
+        if (bucket == null) {
+            return null;
+        }
+        
+        // The factory captures this tracker, so it is only created for a new statement
+        Buckets buckets = statements.get(fingerprintId);
+        if (buckets == null) {
+            buckets = statements.getOrCreate(fingerprintId, id -> new Buckets(maxBuckets));
+        }
+        if (buckets == null || !buckets.admit(bucket)) {
+            overflows.increment();
+            return null;
+        }
+        return bucket;
+    }
+    
+    public void recordPlan(long fingerprintId, BindBucket bucket, QueryExecutionSummary summary) {
+        Buckets buckets = statements.get(fingerprintId);
+        if (buckets == null || summary.getPlanTree() == null) {
+            return;
+        }
+        
+        String report = buckets.record(bucket.getId(), summary.getPlanTree().getPlanHash(), summary.getCost());
+        if (report != null) {
+            logger.warn("Statement {} gets different plans depending on its bind values:{}",
+                    Long.toHexString(fingerprintId), report);
+        }
+    }
+    
+    // Whether any bucket of the statement has been analyzed, so that its plan may be cached under the bucket's key
+    public boolean hasBucketPlans(long fingerprintId) {
+        Buckets buckets = statements.get(fingerprintId);
+        return buckets != null && buckets.anyAnalyzed;
+    }
+    
+    public int getTrackedStatementCount() { return statements.size(); }
+    
+    public long getSensitiveStatementCount() { return sensitiveStatements.sum(); }
+    
+    public long getBucketOverflowCount() { return overflows.sum(); }
+    
+    private final class Buckets {
+        private final long[] ids;
+        private final String[] labels;
+        private final long[] planHashes;
+        private final double[] costs;
+        private final boolean[] analyzed;
+        private int size;
+        private int reportedPlans = 1;
+        private volatile boolean anyAnalyzed;
+        
+        private Buckets(int capacity) {
+            ids = new long[capacity];
+            labels = new String[capacity];
+            planHashes = new long[capacity];
+            costs = new double[capacity];
+            analyzed = new boolean[capacity];
+        }
+        
+        private synchronized boolean admit(BindBucket bucket) {
+            if (indexOf(bucket.getId()) >= 0) {
+                return true;
+            }
+            if (size == ids.length) {
+                return false;
+            }
+            ids[size] = bucket.getId();
+            labels[size] = bucket.getLabel();
+            size++;
+            return true;
+        }
+        
+        // Returns a report when this plan raises the number of distinct plans past the last one reported
+        private synchronized String record(long bucketId, long planHash, double cost) {
+            int index = indexOf(bucketId);
+            if (index < 0) {
+                return null;
+            }
+            planHashes[index] = planHash;
+            costs[index] = cost;
+            analyzed[index] = true;
+            anyAnalyzed = true;
+            
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (analyzed[i] && firstWithPlan(planHashes[i]) == i) {
+                    distinct++;
+                }
+            }
+            if (distinct <= reportedPlans) {
+                return null;
+            }
+            if (reportedPlans == 1) {
+                sensitiveStatements.increment();
+            }
+            reportedPlans = distinct;
+            
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                if (analyzed[i]) {
+                    sb.append("\n  plan ").append(Long.toHexString(planHashes[i]))
+                            .append(" cost ").append(costs[i])
+                            .append(" for ").append(labels[i]);
+                }
+            }
+            return sb.toString();
+        }
+        
+        private int firstWithPlan(long planHash) {
+            for (int i = 0; i < size; i++) {
+                if (analyzed[i] && planHashes[i] == planHash) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        private int indexOf(long bucketId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == bucketId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,268 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.BindBucket;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Sorts the bind values of an execution into coarse classes that tend to decide the plan:
+ * the decimal magnitude of numbers, the length and LIKE wildcards of strings,
+ * the age of dates, and the value itself for very short codes. Together the classes of the
+ * leading parameters form the execution's {@link BindBucket}. An execution with a null among
+ * them gets no bucket: it is analyzed like one without binds, with placeholders.
+ */
+public final class BindValueClassifier {
+    
+    private static final int MISSING = 0;
+    private static final int NUMBER = 2;
+    private static final int STRING = 3;
+    private static final int TEMPORAL = 4;
+    private static final int BOOLEAN = 5;
+    private static final int OTHER = 6;
+    
+    private static final long DETAIL_MASK = (1L << 56) - 1;
+    private static final long NOT_FINITE = 3 << 8;
+    private static final long EXACT = 1 << 10;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final String[] AGES = {"future", "day", "week", "month", "year", "older"};
+    
+    private BindValueClassifier() {
+    }
+    
+    // Buckets the first parameter set of the execution; null when it ran without binds or with a null one
+    public static BindBucket classify(List<List<ParameterSetOperation>> parametersList, QueryDebugProperties.Binds settings) {
+        if (parametersList == null || parametersList.isEmpty()) {
+            return null;
+        }
+        List<ParameterSetOperation> parameters = parametersList.get(0);
+        if (parameters == null || parameters.isEmpty()) {
+            return null;
+        }
+        
+        int count = 0;
+        for (ParameterSetOperation parameter : parameters) {
+            count = Math.max(count, positionOf(parameter));
+        }
+        count = Math.min(count, settings.getMaxParameters());
+        if (count == 0) {
+            return null;
+        }
+        
+        long now = System.currentTimeMillis();
+        long[] classes = new long[count];
+        String[] literals = new String[count];
+        for (ParameterSetOperation parameter : parameters) {
+            int position = positionOf(parameter);
+            if (position <= 0 || position > count || ParameterSetOperation.isRegisterOutParameterOperation(parameter)) {
+                continue;
+            }
+            Object[] args = parameter.getArgs();
+            Object value = ParameterSetOperation.isSetNullParameterOperation(parameter) || args.length < 2 ? null : args[1];
+            if (value == null) {
+                // A NULL literal would be explained as an always-false filter, and a placeholder
+                // gives the generic plan; either would read as a plan change against the other buckets
+                return null;
+            }
+            classes[position - 1] = classOf(value, settings.getExactValueLength(), now);
+            literals[position - 1] = toLiteral(value, settings.getMaxLiteralLength());
+        }
+        
+        long id = 0xcbf29ce484222325L;
+        StringBuilder label = new StringBuilder(count * 12);
+        for (int i = 0; i < count; i++) {
+            id = (id ^ classes[i]) * 0x100000001b3L;
+            id ^= id >>> 29;
+            if (i > 0) {
+                label.append(", ");
+            }
+            label.append(':').append(i + 1).append('=');
+            appendClass(label, classes[i]);
+        }
+        return new BindBucket(id, label.toString(), literals);
+    }
+    
+    // 1-based position of a positional parameter; 0 for named parameters
+    private static int positionOf(ParameterSetOperation parameter) {
+        Object[] args = parameter.getArgs();
+        return args != null && args.length > 0 && args[0] instanceof Integer ? (Integer) args[0] : 0;
+    }
+    
+    private static long classOf(Object value, int exactValueLength, long now) {
+        if (value instanceof Boolean) {
+            return code(BOOLEAN, (Boolean) value ? 1 : 0);
+        }
+        if (value instanceof Number) {
+            return code(NUMBER, magnitudeOf(((Number) value).doubleValue()));
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            return code(STRING, shapeOf(value.toString(), exactValueLength));
+        }
+        
+        long millis = epochMillisOf(value);
+        if (millis != Long.MIN_VALUE) {
+            return code(TEMPORAL, ageOf(now - millis));
+        }
+        return code(OTHER, 0);
+    }
+    
+    private static long code(int kind, long detail) {
+        return (long) kind << 56 | detail;
+    }
+    
+    // Sign and decimal exponent; 0 for zero
+    private static long magnitudeOf(double value) {
+        if (value == 0) {
+            return 0;
+        }
+        if (!Double.isFinite(value)) {
+            return NOT_FINITE;
+        }
+        int exponent = (int) Math.floor(Math.log10(Math.abs(value)));
+        exponent = Math.max(-64, Math.min(63, exponent));
+        return (value < 0 ? 1L : 2L) << 8 | (exponent + 64);
+    }
+    
+    // Power-of-two length class and leading/trailing wildcards; short codes are told apart by value
+    private static long shapeOf(String value, int exactValueLength) {
+        int length = value.length();
+        long wildcards = (length > 0 && value.charAt(0) == '%' ? 1 : 0)
+                | (length > 1 && value.charAt(length - 1) == '%' ? 2 : 0);
+        long detail = wildcards << 6 | (32 - Integer.numberOfLeadingZeros(length));
+        if (length > 0 && length <= exactValueLength) {
+            detail |= EXACT | (value.hashCode() & 0xFFFFFFFFL) << 16;
+        }
+        return detail;
+    }
+    
+    private static long ageOf(long elapsedMillis) {
+        if (elapsedMillis < 0) {
+            return 0;
+        }
+        long days = elapsedMillis / DAY_MILLIS;
+        return days < 1 ? 1 : days < 7 ? 2 : days < 31 ? 3 : days < 366 ? 4 : 5;
+    }
+    
+    private static long epochMillisOf(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Instant) {
+            return ((Instant) value).toEpochMilli();
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant().toEpochMilli();
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).toInstant().toEpochMilli();
+        }
+        return Long.MIN_VALUE;
+    }
+    
+    private static void appendClass(StringBuilder sb, long code) {
+        int kind = (int) (code >>> 56);
+        long detail = code & DETAIL_MASK;
+        switch (kind) {
+            case BOOLEAN:
+                sb.append(detail == 1 ? "true" : "false");
+                break;
+            case NUMBER:
+                if (detail == 0) {
+                    sb.append("num:0");
+                } else if (detail == NOT_FINITE) {
+                    sb.append("num:nan");
+                } else {
+                    sb.append(detail >>> 8 == 1 ? "num:-1e" : "num:1e").append((detail & 0xFF) - 64);
+                }
+                break;
+            case STRING:
+                appendStringClass(sb, detail);
+                break;
+            case TEMPORAL:
+                sb.append("time:").append(AGES[(int) detail]);
+                break;
+            case OTHER:
+                sb.append("other");
+                break;
+            case MISSING:
+            default:
+                sb.append("unset");
+        }
+    }
+    
+    private static void appendStringClass(StringBuilder sb, long detail) {
+        sb.append("str:");
+        if ((detail & EXACT) != 0) {
+            sb.append('=').append(Integer.toHexString((int) (detail >>> 16)));
+            return;
+        }
+        int lengthClass = (int) (detail & 0x3F);
+        if ((detail & 0x40) != 0) {
+            sb.append('%');
+        }
+        if (lengthClass <= 1) {
+            sb.append(lengthClass);
+        } else {
+            sb.append(1 << (lengthClass - 1)).append('-').append((1 << lengthClass) - 1);
+        }
+        if ((detail & 0x80) != 0) {
+            sb.append('%');
+        }
+    }
+    
+    // Oracle literal for a bind value; null leaves the parameter as a placeholder
+    static String toLiteral(Object value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger) {
+            return value.toString();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isFinite(d) ? BigDecimal.valueOf(d).toPlainString() : null;
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            String s = value.toString();
+            return s.length() <= maxLength ? "'" + s.replace("'", "''") + "'" : null;
+        }
+        if (value instanceof Timestamp) {
+            return "TIMESTAMP '" + value + "'";
+        }
+        if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return "DATE '" + value + "'";
+        }
+        if (value instanceof LocalDateTime) {
+            return "TIMESTAMP '" + Timestamp.valueOf((LocalDateTime) value) + "'";
+        }
+        if (value instanceof Date && !(value instanceof Time)) {
+            return "TIMESTAMP '" + new Timestamp(((Date) value).getTime()) + "'";
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CallSite;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Finds the application frame that issued the current statement. The stack is walked
+ * lazily and the walk stops at the first frame outside the JDK, Spring, the JDBC stack and
+ * the configured analyzer packages, so only the top few frames are ever materialized.
+ * Whether a class is framework code is decided once per class, and each distinct frame is
+ * turned into an interned {@link CallSite} once, keyed by class, method and bytecode index.
+ */
+@Lazy
+@Service
+public class CallSiteResolver {
+    
+    private static final String[] FRAMEWORK_PACKAGES = {
+            "java.", "javax.", "jdk.", "sun.", "com.sun.", "jakarta.",
+            "org.springframework.", "net.ttddyy.dsproxy.", "com.zaxxer.hikari.", "oracle.jdbc.", "oracle.ucp.",
+            "org.hibernate.", "org.apache.ibatis.", "org.mybatis.", "org.jooq.", "org.apache.commons.dbcp2.",
+            "org.apache.tomcat.jdbc."
+    };
+    
+    private final StackWalker walker = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private final String[] frameworkPackages;
+    private final int maxCallSites;
+    
+    private final ClassValue<Boolean> framework = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return isFrameworkClass(type);
+        }
+    };
+    private final Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame> firstApplicationFrame =
+            frames -> frames.filter(frame -> !framework.get(frame.getDeclaringClass())).findFirst().orElse(null);
+    
+    // Holds on to the classes of at most maxCallSites frames
+    private final Map<FrameKey, CallSite> callSites = new ConcurrentHashMap<>();
+    private final ThreadLocal<FrameKey> probe = ThreadLocal.withInitial(FrameKey::new);
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final LongAdder unresolved = new LongAdder();
+    
+    public CallSiteResolver(QueryDebugProperties properties) {
+        QueryDebugProperties.CallSites settings = properties.getCallSites();
+        List<String> packages = new ArrayList<>(List.of(FRAMEWORK_PACKAGES));
+        packages.addAll(settings.getFrameworkPackages());
+        packages.addAll(settings.getAnalyzerPackages());
+        this.frameworkPackages = packages.toArray(new String[0]);
+        this.maxCallSites = Math.max(1, settings.getMaxCallSites());
+    }
+    
+    // Call site of the current thread's statement; null when none is found or too many are known
+    public CallSite resolve() {
+        StackWalker.StackFrame frame = walker.walk(firstApplicationFrame);
+        if (frame == null) {
+            unresolved.increment();
+            return null;
+        }
+        
+        FrameKey key = probe.get();
+        key.type = frame.getDeclaringClass();
+        key.methodName = frame.getMethodName();
+        key.byteCodeIndex = frame.getByteCodeIndex();
+        CallSite callSite = callSites.get(key);
+        if (callSite != null) {
+            return callSite;
+        }
+        if (callSites.size() >= maxCallSites) {
+            unresolved.increment();
+            return null;
+        }
+        
+        // File and line are looked up only the first time a frame is seen
+        return callSites.computeIfAbsent(key.copy(), k -> new CallSite(nextId.incrementAndGet(),
+                frame.getClassName(), frame.getMethodName(), frame.getFileName(), frame.getLineNumber()));
+    }
+    
+    private boolean isFrameworkClass(Class<?> type) {
+        // Lambdas, JDK proxies and generated subclasses stand in for the code that declared them
+        if (type.isHidden() || Proxy.isProxyClass(type) || type.getName().contains("$$")) {
+            return true;
+        }
+        // Its own frames are on every walk, whatever the analyzer packages are narrowed to
+        if (type == CallSiteResolver.class) {
+            return true;
+        }
+        String name = type.getName();
+        for (String prefix : frameworkPackages) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int getCallSiteCount() { return callSites.size(); }
+    
+    public long getUnresolvedCount() { return unresolved.sum(); }
+    
+    private static final class FrameKey {
+        private Class<?> type;
+        private String methodName;
+        private int byteCodeIndex;
+        
+        private FrameKey copy() {
+            FrameKey copy = new FrameKey();
+            copy.type = type;
+            copy.methodName = methodName;
+            copy.byteCodeIndex = byteCodeIndex;
+            return copy;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey other = (FrameKey) o;
+            return type == other.type && byteCodeIndex == other.byteCodeIndex && methodName.equals(other.methodName);
+        }
+        
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(type) * 31 + methodName.hashCode()) * 31 + byteCodeIndex;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CallSite;
+import bca.oraclelog.queryanalyzer.model.CallSiteSnapshot;
+import bca.oraclelog.queryanalyzer.model.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution count, plan cost and observed latency per (call site, fingerprint), recorded
+ * from afterQuery. Ranking the pairs by accumulated plan cost points at the application
+ * method behind the most expensive SQL.
+ */
+@Lazy
+@Service
+public class CallSiteStatistics {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CallSiteStatistics.class);
+    
+    private final boolean enabled;
+    private final int reportTopN;
+    private final FingerprintTable<Entry> entries;
+    private final QueryDebugFormatter formatter;
+    private final LongAdder untracked = new LongAdder();
+    // Read and written by the scheduler thread only
+    private long reportedCount;
+    
+    public CallSiteStatistics(QueryDebugProperties properties, QueryDebugFormatter formatter) {
+        QueryDebugProperties.CallSites settings = properties.getCallSites();
+        this.enabled = settings.isEnabled();
+        this.reportTopN = settings.getReportTopN();
+        this.entries = new FingerprintTable<>(settings.getMaxEntries());
+        this.formatter = formatter;
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    // A negative cost means the statement's plan is not known yet
+    public void record(CallSite callSite, long fingerprintId, String query, long elapsedNanos, double cost) {
+        long key = keyOf(callSite, fingerprintId);
+        // The factory captures its arguments, so it is only created for a new pair
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = entries.getOrCreate(key, k -> new Entry(callSite, fingerprintId, query));
+        }
+        if (entry == null || entry.callSite != callSite || entry.fingerprintId != fingerprintId) {
+            untracked.increment();
+            return;
+        }
+        
+        entry.latency.recordNanos(elapsedNanos);
+        if (cost >= 0) {
+            entry.totalCost.add(cost);
+            entry.costed.increment();
+        }
+    }
+    
+    private static long keyOf(CallSite callSite, long fingerprintId) {
+        long key = (fingerprintId ^ ((long) callSite.getId() << 40)) * 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 31);
+    }
+    
+    // Highest accumulated plan cost first, then longest total time
+    public List<CallSiteSnapshot> snapshot() {
+        List<CallSiteSnapshot> snapshots = new ArrayList<>();
+        entries.forEach((key, entry) -> {
+            LatencyHistogram histogram = entry.latency;
+            snapshots.add(new CallSiteSnapshot(entry.callSite, entry.fingerprintId, entry.sampleQuery,
+                    histogram.getCount(), entry.totalCost.sum(), entry.costed.sum(),
+                    histogram.getTotalMicros(), histogram.getPercentileMicros(95), histogram.getMaxMicros()));
+        });
+        snapshots.sort(Comparator.comparingDouble(CallSiteSnapshot::getTotalCost)
+                .thenComparingLong(CallSiteSnapshot::getTotalMicros)
+                .reversed());
+        return snapshots;
+    }
+    
+    @Scheduled(fixedDelayString = "${oracle.query.debug.call-sites.report-interval:PT15M}",
+               initialDelayString = "${oracle.query.debug.call-sites.report-interval:PT15M}")
+    public void reportCallSites() {
+        if (!enabled || entries.size() == 0) {
+            return;
+        }
+        // Nothing recorded since the last report, e.g. while analysis is switched off
+        long[] recorded = {untracked.sum()};
+        entries.forEach((key, entry) -> recorded[0] += entry.latency.getCount());
+        if (recorded[0] == reportedCount) {
+            return;
+        }
+        reportedCount = recorded[0];
+        
+        List<CallSiteSnapshot> snapshots = snapshot();
+        if (snapshots.size() > reportTopN) {
+            snapshots = snapshots.subList(0, reportTopN);
+        }
+        logger.info(formatter.formatCallSiteReport(snapshots, untracked.sum()));
+    }
+    
+    public int getTrackedCount() { return entries.size(); }
+    
+    public long getUntrackedCount() { return untracked.sum(); }
+    
+    private static final class Entry {
+        private final CallSite callSite;
+        private final long fingerprintId;
+        private final String sampleQuery;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final DoubleAdder totalCost = new DoubleAdder();
+        private final LongAdder costed = new LongAdder();
+        
+        private Entry(CallSite callSite, long fingerprintId, String sampleQuery) {
+            this.callSite = callSite;
+            this.fingerprintId = fingerprintId;
+            this.sampleQuery = sampleQuery;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+
+import java.io.PrintStream;
+import java.util.List;
+
+// Human-readable reports on stdout, printed by the writer thread instead of the query thread
+public class ConsoleQueryDebugSink extends AsyncQueryDebugSink {
+    
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    
+    private final QueryDebugFormatter formatter;
+    private final PrintStream out;
+    private StringBuilder buffer = new StringBuilder(8192);
+    
+    public ConsoleQueryDebugSink(QueryDebugFormatter formatter, QueryDebugProperties.Output settings) {
+        super("console", settings);
+        this.formatter = formatter;
+        this.out = System.out;
+        start();
+    }
+    
+    @Override
+    protected void writeBatch(List<QueryExecutionSummary> batch) {
+        for (QueryExecutionSummary summary : batch) {
+            formatter.appendQueryDebug(buffer, summary);
+        }
+        out.print(buffer);
+        out.flush();
+        
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new StringBuilder(8192);
+        } else {
+            buffer.setLength(0);
+        }
+    }
+    
+    @Override
+    protected void closeOutput() {
+        out.flush();
+    }
+}
\ No newline at end of file
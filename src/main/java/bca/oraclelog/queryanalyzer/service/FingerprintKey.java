@@ -0,0 +1,21 @@
+package bca.oraclelog.queryanalyzer.service;
+
+// Map key comparing by fingerprint id only; the tables keep one per thread as a mutable lookup probe
+final class FingerprintKey {
+    
+    long id;
+    
+    FingerprintKey(long id) {
+        this.id = id;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FingerprintKey && ((FingerprintKey) o).id == id;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+}
\ No newline at end of file
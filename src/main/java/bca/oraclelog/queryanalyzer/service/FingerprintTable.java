@@ -0,0 +1,62 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from fingerprint id to per-statement state with a fixed upper bound
+ * on the number of entries. Entries are never removed; once the bound is reached, new
+ * fingerprints are turned away. Lookups go through a per-thread probe key, so reading
+ * an existing entry allocates nothing.
+ */
+public class FingerprintTable<V> {
+    
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long fingerprintId, V value);
+    }
+    
+    private final Map<FingerprintKey, V> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<FingerprintKey> probe = ThreadLocal.withInitial(() -> new FingerprintKey(0));
+    private final int maxSize;
+    
+    public FingerprintTable(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+    
+    public V get(long fingerprintId) {
+        FingerprintKey key = probe.get();
+        key.id = fingerprintId;
+        return entries.get(key);
+    }
+    
+    // Returns null once the table is full and the fingerprint is not tracked yet
+    public V getOrCreate(long fingerprintId, LongFunction<V> factory) {
+        V value = get(fingerprintId);
+        if (value != null) {
+            return value;
+        }
+        if (entries.size() >= maxSize) {
+            return null;
+        }
+        return entries.computeIfAbsent(new FingerprintKey(fingerprintId), key -> factory.apply(key.id));
+    }
+    
+    public V remove(long fingerprintId) {
+        return entries.remove(new FingerprintKey(fingerprintId));
+    }
+    
+    public void forEach(EntryConsumer<V> action) {
+        entries.forEach((key, value) -> action.accept(key.id, value));
+    }
+    
+    public int size() { return entries.size(); }
+    
+    public int getMaxSize() { return maxSize; }
+    
+    public void clear() {
+        entries.clear();
+    }
+
+}
\ No newline at end of file
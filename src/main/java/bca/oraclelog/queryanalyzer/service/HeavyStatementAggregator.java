@@ -0,0 +1,336 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.StatementAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heaviest SQL fingerprints over a sliding window, in fixed memory.
+ * The window is a ring of time buckets; each bucket is a weighted Space-Saving summary
+ * of at most {@code capacity} counters. A new fingerprint arriving at a full bucket takes
+ * over the lightest counter and inherits its weight as error bound, so heavy statements
+ * are never lost while the long tail of one-off SQL costs nothing extra.
+ */
+@Lazy
+@Service
+public class HeavyStatementAggregator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HeavyStatementAggregator.class);
+    
+    private final boolean enabled;
+    private final QueryDebugProperties.RankBy rankBy;
+    private final long bucketMillis;
+    private final int reportTopN;
+    private final Bucket[] buckets;
+    private final QueryDebugFormatter formatter;
+    // Only written when it changes, so recording costs a volatile read
+    private volatile boolean recordedSinceReport;
+    
+    public HeavyStatementAggregator(QueryDebugProperties properties, QueryDebugFormatter formatter) {
+        QueryDebugProperties.TopStatements settings = properties.getTopStatements();
+        this.enabled = settings.isEnabled();
+        this.rankBy = settings.getRankBy();
+        this.bucketMillis = Math.max(1, settings.getBucketDuration().toMillis());
+        this.reportTopN = settings.getReportTopN();
+        this.formatter = formatter;
+        
+        this.buckets = new Bucket[Math.max(1, settings.getBuckets())];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(Math.max(1, settings.getCapacity()));
+        }
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    public void record(QueryExecutionSummary summary) {
+        if (!enabled || summary.getFingerprint() == null) {
+            return;
+        }
+        if (!recordedSinceReport) {
+            recordedSinceReport = true;
+        }
+        
+        double weight;
+        switch (rankBy) {
+            case COUNT:
+                weight = 1;
+                break;
+            case TIME:
+                weight = summary.getTime();
+                break;
+            case COST:
+            default:
+                weight = summary.getCost();
+                break;
+        }
+        
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        Bucket bucket = buckets[(int) (epoch % buckets.length)];
+        synchronized (bucket) {
+            if (bucket.epoch != epoch) {
+                bucket.reset(epoch);
+            }
+            bucket.add(summary.getFingerprint().getId(), Math.max(0, weight), summary);
+        }
+    }
+    
+    // Heaviest fingerprints of the whole window, merged across its buckets
+    public List<StatementAggregate> topStatements(int limit) {
+        long currentEpoch = System.currentTimeMillis() / bucketMillis;
+        Map<Long, Counter> merged = new HashMap<>();
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                if (bucket.epoch < 0 || currentEpoch - bucket.epoch >= buckets.length) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size; i++) {
+                    Counter counter = bucket.counters[i];
+                    merged.computeIfAbsent(counter.id, id -> new Counter()).merge(counter);
+                }
+            }
+        }
+        
+        List<StatementAggregate> top = new ArrayList<>(merged.size());
+        for (Counter counter : merged.values()) {
+            top.add(counter.toAggregate());
+        }
+        top.sort(Comparator.comparingDouble(StatementAggregate::getWeight).reversed());
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+    
+    @Scheduled(fixedDelayString = "${oracle.query.debug.top-statements.report-interval:PT15M}",
+               initialDelayString = "${oracle.query.debug.top-statements.report-interval:PT15M}")
+    public void reportTopStatements() {
+        // Nothing recorded since the last report, e.g. while analysis is switched off
+        if (!enabled || !recordedSinceReport) {
+            return;
+        }
+        recordedSinceReport = false;
+        
+        List<StatementAggregate> top = topStatements(reportTopN);
+        if (!top.isEmpty()) {
+            logger.info(formatter.formatTopStatements(top, rankBy, getWindow()));
+        }
+    }
+    
+    public Duration getWindow() { return Duration.ofMillis(bucketMillis * buckets.length); }
+    
+    public QueryDebugProperties.RankBy getRankBy() { return rankBy; }
+    
+    private static final class Bucket {
+        private final Counter[] counters;
+        // Open-addressing index from fingerprint id to counter position, kept at most half full
+        private final long[] indexKeys;
+        private final int[] indexSlots;
+        private final int mask;
+        // Min-heap of counter positions by weight, so the lightest counter is found in constant time
+        private final int[] heap;
+        private final int[] heapIndex;
+        private int size;
+        private long epoch = -1;
+        
+        private Bucket(int capacity) {
+            counters = new Counter[capacity];
+            for (int i = 0; i < capacity; i++) {
+                counters[i] = new Counter();
+            }
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+            indexKeys = new long[tableSize];
+            indexSlots = new int[tableSize];
+            mask = tableSize - 1;
+            Arrays.fill(indexSlots, -1);
+            heap = new int[capacity];
+            heapIndex = new int[capacity];
+        }
+        
+        private void reset(long newEpoch) {
+            epoch = newEpoch;
+            size = 0;
+            Arrays.fill(indexSlots, -1);
+        }
+        
+        private void add(long id, double weight, QueryExecutionSummary summary) {
+            int position = find(id);
+            Counter counter;
+            if (position >= 0) {
+                counter = counters[position];
+            } else if (size < counters.length) {
+                position = size++;
+                counter = counters[position];
+                counter.start(id, 0);
+                insert(id, position);
+                siftUp(position, size - 1);
+            } else {
+                // Space-Saving: the newcomer replaces the lightest counter and inherits its weight
+                position = heap[0];
+                counter = counters[position];
+                remove(counter.id);
+                counter.start(id, counter.weight);
+                insert(id, position);
+            }
+            counter.add(weight, summary);
+            // Weights only grow, so the counter can only sink
+            siftDown(heapIndex[position]);
+        }
+        
+        private void siftUp(int position, int index) {
+            double weight = counters[position].weight;
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (counters[heap[parent]].weight <= weight) {
+                    break;
+                }
+                moveTo(heap[parent], index);
+                index = parent;
+            }
+            moveTo(position, index);
+        }
+        
+        private void siftDown(int index) {
+            int position = heap[index];
+            double weight = counters[position].weight;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && counters[heap[child + 1]].weight < counters[heap[child]].weight) {
+                    child++;
+                }
+                if (counters[heap[child]].weight >= weight) {
+                    break;
+                }
+                moveTo(heap[child], index);
+                index = child;
+            }
+            moveTo(position, index);
+        }
+        
+        private void moveTo(int position, int index) {
+            heap[index] = position;
+            heapIndex[position] = index;
+        }
+        
+        private int find(long id) {
+            for (int slot = hash(id) & mask; indexSlots[slot] >= 0; slot = (slot + 1) & mask) {
+                if (indexKeys[slot] == id) {
+                    return indexSlots[slot];
+                }
+            }
+            return -1;
+        }
+        
+        private void insert(long id, int position) {
+            int slot = hash(id) & mask;
+            while (indexSlots[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            indexKeys[slot] = id;
+            indexSlots[slot] = position;
+        }
+        
+        // Linear-probing delete: shift later entries of the probe run back into the hole
+        private void remove(long id) {
+            int slot = hash(id) & mask;
+            while (indexKeys[slot] != id || indexSlots[slot] < 0) {
+                slot = (slot + 1) & mask;
+            }
+            int hole = slot;
+            for (int next = (hole + 1) & mask; indexSlots[next] >= 0; next = (next + 1) & mask) {
+                int home = hash(indexKeys[next]) & mask;
+                // Move the entry unless its home lies cyclically in (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    indexKeys[hole] = indexKeys[next];
+                    indexSlots[hole] = indexSlots[next];
+                    hole = next;
+                }
+            }
+            indexSlots[hole] = -1;
+        }
+        
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+    
+    private static final class Counter {
+        private long id;
+        private String sampleQuery;
+        private double weight;
+        private double error;
+        private long count;
+        private double totalCost;
+        private double maxCost;
+        private long totalCardinality;
+        private long maxCardinality;
+        private long totalBytes;
+        private long maxBytes;
+        private long totalTime;
+        
+        private void start(long newId, double inheritedWeight) {
+            id = newId;
+            sampleQuery = null;
+            weight = inheritedWeight;
+            error = inheritedWeight;
+            count = 0;
+            totalCost = 0;
+            maxCost = 0;
+            totalCardinality = 0;
+            maxCardinality = 0;
+            totalBytes = 0;
+            maxBytes = 0;
+            totalTime = 0;
+        }
+        
+        private void add(double addedWeight, QueryExecutionSummary summary) {
+            weight += addedWeight;
+            count++;
+            totalCost += summary.getCost();
+            maxCost = Math.max(maxCost, summary.getCost());
+            totalCardinality += summary.getCardinality();
+            maxCardinality = Math.max(maxCardinality, summary.getCardinality());
+            totalBytes += summary.getBytes();
+            maxBytes = Math.max(maxBytes, summary.getBytes());
+            totalTime += summary.getTime();
+            if (sampleQuery == null) {
+                sampleQuery = summary.getOriginalQuery();
+            }
+        }
+        
+        private void merge(Counter other) {
+            id = other.id;
+            if (sampleQuery == null) {
+                sampleQuery = other.sampleQuery;
+            }
+            weight += other.weight;
+            error += other.error;
+            count += other.count;
+            totalCost += other.totalCost;
+            maxCost = Math.max(maxCost, other.maxCost);
+            totalCardinality += other.totalCardinality;
+            maxCardinality = Math.max(maxCardinality, other.maxCardinality);
+            totalBytes += other.totalBytes;
+            maxBytes = Math.max(maxBytes, other.maxBytes);
+            totalTime += other.totalTime;
+        }
+        
+        private StatementAggregate toAggregate() {
+            return new StatementAggregate(id, sampleQuery, weight, error, count, totalCost, maxCost,
+                    totalCardinality, maxCardinality, totalBytes, maxBytes, totalTime);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * One JSON object per report and line, appended through a FileChannel.
+ * Each batch is encoded into one buffer and written with a single call; the file
+ * rolls to {@code <path>.1} once it would grow past the configured size.
+ */
+public class JsonLinesFileSink extends AsyncQueryDebugSink {
+    
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+    
+    private final QueryDebugFormatter formatter;
+    private final Path path;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private StringBuilder buffer = new StringBuilder(16384);
+    private FileChannel channel;
+    private long fileSize;
+    
+    public JsonLinesFileSink(QueryDebugFormatter formatter, String path, QueryDebugProperties.Output settings) throws IOException {
+        super("file", settings);
+        this.formatter = formatter;
+        this.path = Paths.get(path).toAbsolutePath();
+        this.maxFileSize = Math.max(1, settings.getMaxFileSize().toBytes());
+        this.maxFiles = Math.max(1, settings.getMaxFiles());
+        
+        if (this.path.getParent() != null) {
+            Files.createDirectories(this.path.getParent());
+        }
+        open();
+        start();
+    }
+    
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+    
+    @Override
+    protected void writeBatch(List<QueryExecutionSummary> batch) throws IOException {
+        for (QueryExecutionSummary summary : batch) {
+            formatter.appendJson(buffer, summary);
+            buffer.append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toString().getBytes(StandardCharsets.UTF_8));
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new StringBuilder(16384);
+        } else {
+            buffer.setLength(0);
+        }
+        
+        if (fileSize > 0 && fileSize + bytes.remaining() > maxFileSize) {
+            roll();
+        }
+        while (bytes.hasRemaining()) {
+            fileSize += channel.write(bytes);
+        }
+    }
+    
+    // path.(n-1) -> path.n, ..., path -> path.1; the oldest file falls off the end
+    private void roll() throws IOException {
+        channel.close();
+        try {
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path source = rolledPath(i);
+                if (Files.exists(source)) {
+                    Files.move(source, rolledPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(path, rolledPath(1), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // A failed move leaves the file in place; keep appending to it and roll again with the next batch
+            open();
+        }
+    }
+    
+    private Path rolledPath(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+    
+    @Override
+    protected void closeOutput() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+    
+    public Path getPath() { return path; }
+}
\ No newline at end of file
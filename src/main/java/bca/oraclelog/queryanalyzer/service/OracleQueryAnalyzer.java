@@ -1,84 +1,266 @@
 package bca.oraclelog.queryanalyzer.service;
 
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.ExecutionPlanTree;
 import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import oracle.jdbc.OracleTypes;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 
+@Lazy
 @Service
 public class OracleQueryAnalyzer {
     
+    private static final String PLAN_COLUMNS =
+            "ID, PARENT_ID, OPERATION, OPTIONS, OBJECT_NAME, COST, CARDINALITY, BYTES, CPU_COST, IO_COST, TIME";
+    
+    // Whole plan tree in one query; the ID = 0 row also fills the summary
+    private static final String PLAN_QUERY = """
+            SELECT %s
+            FROM PLAN_TABLE
+            WHERE STATEMENT_ID = ?
+            ORDER BY ID
+            """.formatted(PLAN_COLUMNS);
+    
+    private static final String PLAN_CLEANUP = "DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = ?";
+    
+    // EXPLAIN, plan fetch and cleanup in one call; the cursor is read-consistent as of OPEN,
+    // so its rows are still returned after the DELETE
+    private static final String PLAN_BLOCK = """
+            DECLARE
+                v_statement_id VARCHAR2(128) := ?;
+            BEGIN
+                EXECUTE IMMEDIATE 'EXPLAIN PLAN SET STATEMENT_ID = ''' || v_statement_id || ''' FOR ' || ?;
+                OPEN ? FOR
+                    SELECT %s
+                    FROM PLAN_TABLE
+                    WHERE STATEMENT_ID = v_statement_id
+                    ORDER BY ID;
+                %s
+            END;
+            """;
+    
+    private final QueryDebugProperties.PlanRetrievalMode retrievalMode;
+    private final int cleanupBatchSize;
+    private final String planBlock;
+    private final QueryAnalyzerMetrics metrics;
+    
+    public OracleQueryAnalyzer(QueryDebugProperties properties, QueryAnalyzerMetrics metrics) {
+        this.metrics = metrics;
+        this.retrievalMode = properties.getPlan().getRetrievalMode();
+        this.cleanupBatchSize = Math.max(1, properties.getPlan().getCleanupBatchSize());
+        
+        // With batched cleanup the DELETE is left to the session instead of the block
+        String cleanup = cleanupBatchSize > 1 ? "NULL;" : "DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = v_statement_id;";
+        this.planBlock = PLAN_BLOCK.formatted(PLAN_COLUMNS, cleanup);
+    }
+    
     public QueryExecutionSummary analyzeQuery(Connection connection, String query) throws Exception {
+        try (AnalysisSession session = AnalysisSession.wrap(connection)) {
+            return analyzeQuery(session, query);
+        }
+    }
+    
+    public QueryExecutionSummary analyzeQuery(AnalysisSession session, String query) throws Exception {
+        return analyzeQuery(session, query, null);
+    }
+    
+    // Literals, where given, replace the placeholders so the optimizer sees actual values
+    public QueryExecutionSummary analyzeQuery(AnalysisSession session, String query, String[] bindLiterals) throws Exception {
         QueryExecutionSummary summary = new QueryExecutionSummary();
         summary.setOriginalQuery(query);
         
         long startTime = System.currentTimeMillis();
         String statementId = summary.getStatementId();
+        String explainableQuery = toExplainableSql(query, bindLiterals);
+        
+        try {
+            if (retrievalMode == QueryDebugProperties.PlanRetrievalMode.SINGLE_ROUND_TRIP) {
+                explainInSingleRoundTrip(session, statementId, explainableQuery, summary);
+            } else {
+                explainInSeparateCalls(session, statementId, explainableQuery, summary);
+            }
+        } catch (SQLException e) {
+            session.invalidateIfBroken(e);
+            throw e;
+        } finally {
+            summary.setAnalysisTimeMs(System.currentTimeMillis() - startTime);
+        }
         
+        return summary;
+    }
+    
+    private void explainInSeparateCalls(AnalysisSession session, String statementId, String query,
+                                        QueryExecutionSummary summary) throws Exception {
         try {
             // Execute EXPLAIN PLAN
+            long phaseStart = System.nanoTime();
             String explainQuery = String.format("EXPLAIN PLAN SET STATEMENT_ID = '%s' FOR %s", statementId, query);
+            session.statement().execute(explainQuery);
+            phaseStart = recordPhase(QueryAnalyzerMetrics.Phase.EXPLAIN, phaseStart);
             
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute(explainQuery);
-            }
-            
-            // Get parent execution plan details (ID = 0)
-            retrieveParentPlanDetails(connection, statementId, summary);
-            
+            // Get the plan tree and the parent node details (ID = 0)
+            retrievePlanDetails(session, statementId, summary);
+            recordPhase(QueryAnalyzerMetrics.Phase.FETCH, phaseStart);
+        
         } finally {
             // Clean up plan table
-            cleanupPlanTable(connection, statementId);
-            summary.setAnalysisTimeMs(System.currentTimeMillis() - startTime);
+            cleanupPlanTable(session, statementId);
         }
+    }
+    
+    private void explainInSingleRoundTrip(AnalysisSession session, String statementId, String query,
+                                          QueryExecutionSummary summary) throws Exception {
+        CallableStatement cstmt = session.prepareCall(planBlock);
+        cstmt.setString(1, statementId);
+        cstmt.setString(2, query);
+        cstmt.registerOutParameter(3, OracleTypes.CURSOR);
         
-        return summary;
+        try {
+            // EXPLAIN, cursor open and the unbatched DELETE all count as the EXPLAIN phase here
+            long phaseStart = System.nanoTime();
+            cstmt.execute();
+            phaseStart = recordPhase(QueryAnalyzerMetrics.Phase.EXPLAIN, phaseStart);
+            try (ResultSet rs = (ResultSet) cstmt.getObject(3)) {
+                readPlan(rs, summary);
+            }
+            recordPhase(QueryAnalyzerMetrics.Phase.FETCH, phaseStart);
+        } finally {
+            if (cleanupBatchSize > 1) {
+                cleanupPlanTable(session, statementId);
+            }
+        }
     }
     
-    private void retrieveParentPlanDetails(Connection connection, String statementId, QueryExecutionSummary summary) throws Exception {
-        String planQuery = """
-            SELECT COST, CARDINALITY, BYTES, CPU_COST, IO_COST, TIME
-            FROM PLAN_TABLE 
-            WHERE STATEMENT_ID = ? AND ID = 0
-            """;
+    private void retrievePlanDetails(AnalysisSession session, String statementId, QueryExecutionSummary summary) throws Exception {
+        PreparedStatement pstmt = session.prepare(PLAN_QUERY);
+        pstmt.setString(1, statementId);
         
-        try (PreparedStatement pstmt = connection.prepareStatement(planQuery)) {
-            pstmt.setString(1, statementId);
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    // Handle null values safely
-                    Object cost = rs.getObject("COST");
-                    summary.setCost(cost != null ? ((Number) cost).doubleValue() : 0.0);
-                    
-                    Object cardinality = rs.getObject("CARDINALITY");
-                    summary.setCardinality(cardinality != null ? ((Number) cardinality).longValue() : 0L);
-                    
-                    Object bytes = rs.getObject("BYTES");
-                    summary.setBytes(bytes != null ? ((Number) bytes).longValue() : 0L);
-                    
-                    Object cpuCost = rs.getObject("CPU_COST");
-                    summary.setCpuCost(cpuCost != null ? ((Number) cpuCost).doubleValue() : 0.0);
-                    
-                    Object ioCost = rs.getObject("IO_COST");
-                    summary.setIoCost(ioCost != null ? ((Number) ioCost).doubleValue() : 0.0);
-                    
-                    Object time = rs.getObject("TIME");
-                    summary.setTime(time != null ? ((Number) time).longValue() : 0L);
-                }
+        try (ResultSet rs = pstmt.executeQuery()) {
+            readPlan(rs, summary);
+        }
+    }
+    
+    private void readPlan(ResultSet rs, QueryExecutionSummary summary) throws SQLException {
+        ExecutionPlanTree.Builder tree = ExecutionPlanTree.builder();
+        
+        while (rs.next()) {
+            int id = rs.getInt("ID");
+            if (id == 0) {
+                readParentRow(rs, summary);
             }
+            
+            Object parentId = rs.getObject("PARENT_ID");
+            Object cost = rs.getObject("COST");
+            Object cardinality = rs.getObject("CARDINALITY");
+            Object bytes = rs.getObject("BYTES");
+            tree.addNode(id,
+                    parentId != null ? ((Number) parentId).intValue() : -1,
+                    rs.getString("OPERATION"),
+                    rs.getString("OPTIONS"),
+                    rs.getString("OBJECT_NAME"),
+                    cost != null ? ((Number) cost).doubleValue() : 0.0,
+                    cardinality != null ? ((Number) cardinality).longValue() : 0L,
+                    bytes != null ? ((Number) bytes).longValue() : 0L);
         }
+        
+        summary.setPlanTree(tree.build());
     }
     
-    private void cleanupPlanTable(Connection connection, String statementId) {
-        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = ?")) {
+    private void readParentRow(ResultSet rs, QueryExecutionSummary summary) throws SQLException {
+        // Handle null values safely
+        Object cost = rs.getObject("COST");
+        summary.setCost(cost != null ? ((Number) cost).doubleValue() : 0.0);
+        
+        Object cardinality = rs.getObject("CARDINALITY");
+        summary.setCardinality(cardinality != null ? ((Number) cardinality).longValue() : 0L);
+        
+        Object bytes = rs.getObject("BYTES");
+        summary.setBytes(bytes != null ? ((Number) bytes).longValue() : 0L);
+        
+        Object cpuCost = rs.getObject("CPU_COST");
+        summary.setCpuCost(cpuCost != null ? ((Number) cpuCost).doubleValue() : 0.0);
+        
+        Object ioCost = rs.getObject("IO_COST");
+        summary.setIoCost(ioCost != null ? ((Number) ioCost).doubleValue() : 0.0);
+        
+        Object time = rs.getObject("TIME");
+        summary.setTime(time != null ? ((Number) time).longValue() : 0L);
+    }
+    
+    private void cleanupPlanTable(AnalysisSession session, String statementId) {
+        long phaseStart = System.nanoTime();
+        try {
+            if (cleanupBatchSize > 1) {
+                session.deferCleanup(statementId, cleanupBatchSize);
+                return;
+            }
+            PreparedStatement pstmt = session.prepare(PLAN_CLEANUP);
             pstmt.setString(1, statementId);
             pstmt.execute();
         } catch (Exception e) {
             // Silently ignore cleanup errors
+        } finally {
+            recordPhase(QueryAnalyzerMetrics.Phase.CLEANUP, phaseStart);
+        }
+    }
+    
+    // Returns the end of the phase so it can start the next one
+    private long recordPhase(QueryAnalyzerMetrics.Phase phase, long phaseStart) {
+        long now = System.nanoTime();
+        metrics.recordPhase(phase, now - phaseStart);
+        return now;
+    }
+    
+    // JDBC '?' placeholders are not valid Oracle SQL; EXPLAIN PLAN accepts numbered binds without values
+    static String toExplainableSql(String query) {
+        return toExplainableSql(query, null);
+    }
+    
+    static String toExplainableSql(String query, String[] literals) {
+        if (query.indexOf('?') < 0) {
+            return query;
+        }
+        
+        StringBuilder sb = new StringBuilder(query.length() + 16);
+        int bindIndex = 0;
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            int end = i + 1;
+            if (c == '\'' || c == '"') {
+                end = query.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+            } else if (c == '-' && i + 1 < length && query.charAt(i + 1) == '-') {
+                end = query.indexOf('\n', i);
+                end = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+                end = query.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+            } else if (c == '?') {
+                String literal = literals != null && bindIndex < literals.length ? literals[bindIndex] : null;
+                bindIndex++;
+                if (literal != null && literal.startsWith("-")) {
+                    // After '-' a bare negative number would start a "--" comment
+                    sb.append('(').append(literal).append(')');
+                } else if (literal != null) {
+                    sb.append(literal);
+                } else {
+                    sb.append(':').append(bindIndex);
+                }
+                i++;
+                continue;
+            }
+            sb.append(query, i, end);
+            i = end;
         }
+        return sb.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,509 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.ExecutionPlanTree;
+import bca.oraclelog.queryanalyzer.model.PlanRegressionEvent;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of analyzed plans, one checksummed record per fingerprint and plan change.
+ * At startup the writer thread reads the file back, keeps the latest record per fingerprint
+ * and pre-warms the plan cache with the newest of them before taking new plans. A fresh plan
+ * whose shape or cost differs from the stored one raises a {@link PlanRegressionEvent}. The file
+ * is rewritten with only the live records once it holds too many superseded ones.
+ * Plans reach the writer through an unbounded queue: they arrive at EXPLAIN rate, and a dropped
+ * plan would leave a gap in the regression baseline.
+ */
+@Lazy
+@Service
+public class PlanStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PlanStore.class);
+    
+    private static final int MAGIC = 0x51415053; // "QAPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int BATCH_SIZE = 256;
+    private static final long POLL_MILLIS = 200;
+    
+    private final boolean enabled;
+    private final Path path;
+    private final boolean warmUp;
+    private final int maxEntries;
+    private final double costChangeThreshold;
+    private final long refreshMillis;
+    private final double compactionRatio;
+    private final int warmUpLimit;
+    private final QueryPlanCache planCache;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    // Written by the writer thread only
+    private final Map<Long, StoredPlan> index = new ConcurrentHashMap<>();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final ByteArrayOutputStream batchBuffer = new ByteArrayOutputStream(16384);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long recordsInFile;
+    
+    private final BlockingQueue<QueryExecutionSummary> queue = new LinkedBlockingQueue<>();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private Thread writer;
+    private volatile boolean running;
+    
+    public PlanStore(QueryDebugProperties properties, QueryPlanCache planCache, ApplicationEventPublisher eventPublisher) {
+        QueryDebugProperties.Store settings = properties.getStore();
+        this.enabled = settings.isEnabled();
+        this.path = Paths.get(settings.getPath()).toAbsolutePath();
+        this.warmUp = settings.isWarmUp();
+        this.maxEntries = Math.max(1, settings.getMaxEntries());
+        this.costChangeThreshold = settings.getCostChangeThreshold();
+        this.refreshMillis = settings.getRefreshInterval().toMillis();
+        this.compactionRatio = Math.max(1.0, settings.getCompactionRatio());
+        // Warming more plans than the cache holds would only evict the ones just loaded
+        this.warmUpLimit = Math.min(maxEntries, properties.getCache().getMaxSize());
+        this.planCache = planCache;
+        this.eventPublisher = eventPublisher;
+    }
+    
+    // The file is loaded and the cache warmed whenever analysis is switched on
+    public synchronized void open() {
+        if (enabled && writer == null) {
+            index.clear();
+            recordsInFile = 0;
+            running = true;
+            writer = new Thread(this::runWriter, "query-plan-store");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    // Hand a freshly analyzed plan to the store; cached copies are ignored
+    public void record(QueryExecutionSummary summary) {
+        if (enabled && running && summary.getFingerprint() != null && summary.getPlanTree() != null) {
+            queue.add(summary);
+        }
+    }
+    
+    private void runWriter() {
+        try {
+            openOutput();
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            queue.clear();
+            logger.warn("Cannot open plan store {}, plans will not be persisted: {}", path, e.getMessage());
+            return;
+        }
+        
+        List<QueryExecutionSummary> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueryExecutionSummary first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // close() does not interrupt, it clears running and lets the loop drain what is left
+                continue;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            
+            try {
+                writeBatch(batch);
+                written.add(batch.size());
+            } catch (IOException | RuntimeException e) {
+                failed.add(batch.size());
+                logger.warn("Failed to store {} plans in {}: {}", batch.size(), path, e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+    
+    private void openOutput() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        long validEnd = channel.size() >= HEADER_SIZE ? load() : 0;
+        if (validEnd < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(channel);
+            validEnd = HEADER_SIZE;
+        } else if (validEnd < channel.size()) {
+            // Torn or corrupt tail, most likely from a crash mid-write
+            logger.warn("Plan store {} truncated from {} to {} bytes after an unreadable record", path, channel.size(), validEnd);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        
+        if (warmUp && !index.isEmpty() && warmUpLimit > 0) {
+            List<StoredPlan> newest = new ArrayList<>(index.values());
+            newest.sort(Comparator.comparingLong(StoredPlan::recordedAt).reversed());
+            int warmed = 0;
+            int undecodable = 0;
+            // Oldest first, so the newest plans are the last to be evicted
+            for (int i = Math.min(newest.size(), warmUpLimit) - 1; i >= 0; i--) {
+                StoredPlan stored = newest.get(i);
+                try {
+                    planCache.put(stored.fingerprintId(), decode(stored.payload));
+                    warmed++;
+                } catch (IOException | RuntimeException e) {
+                    // Intact on disk but not a plan this version can read; it stays the regression baseline
+                    undecodable++;
+                }
+            }
+            if (undecodable > 0) {
+                logger.warn("Plan store {} has {} plans that cannot be decoded, they were not warmed", path, undecodable);
+            }
+            logger.info("Plan cache warmed with {} of {} plans from {}", warmed, newest.size(), path);
+        }
+    }
+    
+    // Reads every intact record; returns the offset just past the last one, or 0 for a foreign file
+    private long load() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 65536)) {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                logger.warn("Plan store {} has an unknown format and will be overwritten", path);
+                return 0;
+            }
+            
+            long offset = HEADER_SIZE;
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    data.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                
+                StoredPlan stored = new StoredPlan(payload);
+                index.put(stored.fingerprintId(), stored);
+                recordsInFile++;
+                offset += 8 + length;
+            }
+            return offset;
+        }
+    }
+    
+    private void writeBatch(List<QueryExecutionSummary> batch) throws IOException {
+        long now = System.currentTimeMillis();
+        batchBuffer.reset();
+        for (QueryExecutionSummary summary : batch) {
+            long fingerprintId = summary.getFingerprint().getId();
+            long planHash = summary.getPlanTree().getPlanHash();
+            StoredPlan previous = index.get(fingerprintId);
+            
+            if (previous != null) {
+                if (previous.planHash() != planHash) {
+                    raise(PlanRegressionEvent.Kind.PLAN_CHANGED, previous, summary, now);
+                } else if (Math.abs(summary.getCost() - previous.cost()) > costChangeThreshold * Math.max(previous.cost(), 1.0)) {
+                    raise(PlanRegressionEvent.Kind.COST_CHANGED, previous, summary, now);
+                } else if (now - previous.recordedAt() < refreshMillis) {
+                    // Unchanged and recently stored; nothing to write
+                    continue;
+                }
+            }
+            
+            byte[] payload = encode(summary, now);
+            writeRecord(batchBuffer, payload);
+            index.put(fingerprintId, new StoredPlan(payload));
+            recordsInFile++;
+        }
+        
+        if (batchBuffer.size() > 0) {
+            ByteBuffer bytes = ByteBuffer.wrap(batchBuffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        
+        if (index.size() > maxEntries || recordsInFile > Math.max(64, index.size() * compactionRatio)) {
+            compact();
+        }
+    }
+    
+    private void raise(PlanRegressionEvent.Kind kind, StoredPlan previous, QueryExecutionSummary summary, long now) {
+        PlanRegressionEvent event = new PlanRegressionEvent(kind, summary.getFingerprint(),
+                previous.planHash(), summary.getPlanTree().getPlanHash(), previous.cost(), summary.getCost(),
+                Instant.ofEpochMilli(previous.recordedAt()), Instant.ofEpochMilli(now));
+        logger.warn("Plan regression: {}", event);
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            logger.debug("Plan regression listener failed: {}", e.getMessage());
+        }
+    }
+    
+    // Rewrites the file with the newest maxEntries records and swaps it in atomically
+    private void compact() throws IOException {
+        List<StoredPlan> live = new ArrayList<>(index.values());
+        if (live.size() > maxEntries) {
+            live.sort(Comparator.comparingLong(StoredPlan::recordedAt).reversed());
+            for (StoredPlan dropped : live.subList(maxEntries, live.size())) {
+                index.remove(dropped.fingerprintId(), dropped);
+            }
+            live = new ArrayList<>(live.subList(0, maxEntries));
+        }
+        
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(65536);
+            for (StoredPlan stored : live) {
+                writeRecord(buffer, stored.payload);
+                if (buffer.size() >= 65536) {
+                    writeFully(out, buffer);
+                }
+            }
+            writeFully(out, buffer);
+            out.force(true);
+        }
+        
+        // Whatever happens to the move, the channel is reopened on the file now at the path
+        channel.close();
+        try {
+            try {
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            logger.debug("Plan store compacted from {} to {} records", recordsInFile, live.size());
+            recordsInFile = live.size();
+        } finally {
+            Files.deleteIfExists(compacted);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+    
+    private static void writeFully(FileChannel out, ByteArrayOutputStream buffer) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        buffer.reset();
+    }
+    
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+    
+    private void writeRecord(ByteArrayOutputStream out, byte[] payload) {
+        int checksum = checksum(payload);
+        out.write(payload.length >>> 24);
+        out.write(payload.length >>> 16);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+        out.write(checksum >>> 24);
+        out.write(checksum >>> 16);
+        out.write(checksum >>> 8);
+        out.write(checksum);
+        out.writeBytes(payload);
+    }
+    
+    private int checksum(byte[] payload) {
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    // Record layout: fixed-width key fields first so the index can read them without decoding the rest
+    private byte[] encode(QueryExecutionSummary summary, long recordedAt) throws IOException {
+        recordBuffer.reset();
+        DataOutputStream out = recordOut;
+        out.writeLong(summary.getFingerprint().getId());
+        out.writeLong(summary.getPlanTree().getPlanHash());
+        out.writeLong(recordedAt);
+        out.writeDouble(summary.getCost());
+        out.writeLong(summary.getCardinality());
+        out.writeLong(summary.getBytes());
+        out.writeDouble(summary.getCpuCost());
+        out.writeDouble(summary.getIoCost());
+        out.writeLong(summary.getTime());
+        writeString(out, summary.getFingerprint().getNormalized());
+        
+        ExecutionPlanTree tree = summary.getPlanTree();
+        out.writeInt(tree.size());
+        for (int i = 0; i < tree.size(); i++) {
+            out.writeInt(tree.getId(i));
+            out.writeInt(tree.getParentId(i));
+            writeString(out, tree.getOperation(i));
+            writeString(out, tree.getOptions(i));
+            writeString(out, tree.getObjectName(i));
+            out.writeDouble(tree.getCost(i));
+            out.writeLong(tree.getCardinality(i));
+            out.writeLong(tree.getBytes(i));
+        }
+        out.flush();
+        return recordBuffer.toByteArray();
+    }
+    
+    private static QueryExecutionSummary decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long fingerprintId = in.readLong();
+        in.readLong(); // plan hash, recomputed from the tree
+        in.readLong(); // recorded at
+        
+        QueryExecutionSummary summary = new QueryExecutionSummary();
+        summary.setCost(in.readDouble());
+        summary.setCardinality(in.readLong());
+        summary.setBytes(in.readLong());
+        summary.setCpuCost(in.readDouble());
+        summary.setIoCost(in.readDouble());
+        summary.setTime(in.readLong());
+        summary.setFingerprint(SqlFingerprint.restore(readString(in), fingerprintId));
+        
+        int size = in.readInt();
+        ExecutionPlanTree.Builder tree = ExecutionPlanTree.builder();
+        for (int i = 0; i < size; i++) {
+            tree.addNode(in.readInt(), in.readInt(), readString(in), readString(in), readString(in),
+                    in.readDouble(), in.readLong(), in.readLong());
+        }
+        summary.setPlanTree(tree.build());
+        return summary;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    // Plans still queued are written before the file is closed
+    @PreDestroy
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = writer;
+            running = false;
+        }
+        if (thread == null) {
+            return;
+        }
+        
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            // Left in place so a later open() does not start a second writer on the same file
+            logger.warn("Plan store writer did not finish, {} plans not stored", queue.size());
+            return;
+        }
+        
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to close plan store {}: {}", path, e.getMessage());
+        }
+        synchronized (this) {
+            writer = null;
+        }
+    }
+    
+    public int getStoredPlanCount() { return index.size(); }
+    
+    public long getWrittenCount() { return written.sum(); }
+    
+    public long getFailedCount() { return failed.sum(); }
+    
+    public int getPendingCount() { return queue.size(); }
+    
+    public Path getPath() { return path; }
+    
+    // Latest record of one fingerprint; the key fields are read straight from the encoded payload
+    private static final class StoredPlan {
+        private final byte[] payload;
+        private final ByteBuffer view;
+        
+        private StoredPlan(byte[] payload) {
+            this.payload = payload;
+            this.view = ByteBuffer.wrap(payload);
+        }
+        
+        long fingerprintId() { return view.getLong(0); }
+        
+        long planHash() { return view.getLong(8); }
+        
+        long recordedAt() { return view.getLong(16); }
+        
+        double cost() { return view.getDouble(24); }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs query analysis off the application thread. Tasks go into a bounded queue
+ * drained by a small set of workers (virtual threads when the JVM supports them),
+ * and the configured overflow policy decides what happens when the queue is full.
+ */
+@Service
+public class QueryAnalysisPipeline {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QueryAnalysisPipeline.class);
+    
+    private final boolean enabled;
+    private final QueryDebugProperties.OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int workerCount;
+    private final BlockingQueue<Runnable> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    
+    private volatile boolean running;
+    
+    public QueryAnalysisPipeline(QueryDebugProperties properties) {
+        QueryDebugProperties.Async async = properties.getAsync();
+        this.enabled = async.isEnabled();
+        this.overflowPolicy = async.getOverflowPolicy();
+        this.blockTimeoutNanos = async.getBlockTimeout().toNanos();
+        this.workerCount = Math.max(1, async.getWorkers());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, async.getQueueCapacity()));
+    }
+    
+    // Workers run only while analysis is switched on
+    public synchronized void start() {
+        if (!enabled || !workers.isEmpty()) {
+            return;
+        }
+        running = true;
+        ThreadFactory threadFactory = createThreadFactory();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = threadFactory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+        logger.info("Query analysis pipeline started with {} workers, queue capacity {}, overflow policy {}",
+                workerCount, queue.remainingCapacity(), overflowPolicy);
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    public boolean submit(Runnable task) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+        
+        boolean accepted;
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!queue.offer(task)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                accepted = true;
+                break;
+            case BLOCK:
+                try {
+                    accepted = queue.offer(task, blockTimeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                accepted = queue.offer(task);
+                break;
+        }
+        
+        if (accepted) {
+            submitted.increment();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+    
+    private void runWorker() {
+        while (running || !queue.isEmpty()) {
+            Runnable task;
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+            if (task == null) {
+                continue;
+            }
+            
+            // Tasks handle and count their own failures; this only keeps the worker alive
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.debug("Failed to debug query: {}", e.getMessage());
+            }
+            completed.increment();
+        }
+    }
+    
+    // Lets the workers finish what is queued, so a later start() begins with an empty pipeline
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        workers.clear();
+        
+        int abandoned = queue.size();
+        queue.clear();
+        if (abandoned > 0) {
+            dropped.add(abandoned);
+            logger.info("Query analysis pipeline stopped with {} pending analyses discarded", abandoned);
+        }
+    }
+    
+    // Virtual threads on Java 21+, a fixed set of daemon platform threads on Java 17
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "query-analysis-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, "query-analysis-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+    
+    public int getQueueDepth() { return queue.size(); }
+    
+    public int getQueueCapacity() { return queue.size() + queue.remainingCapacity(); }
+    
+    public long getSubmittedCount() { return submitted.sum(); }
+    
+    public long getDroppedCount() { return dropped.sum(); }
+    
+    public long getCompletedCount() { return completed.sum(); }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.LatencyHistogram;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Publishes QueryAnalyzerMetrics and the pipeline, pool and output gauges to Micrometer
+public class QueryAnalyzerMeterBinder implements MeterBinder {
+    
+    private static final String PREFIX = "oracle.query.analyzer";
+    
+    private final QueryAnalyzerMetrics metrics;
+    private final QueryAnalysisPipeline pipeline;
+    private final QueryDebugOutput output;
+    private final AnalysisCircuitBreaker circuitBreaker;
+    private final ObjectProvider<AnalysisConnectionPool> connectionPool;
+    
+    public QueryAnalyzerMeterBinder(QueryAnalyzerMetrics metrics, QueryAnalysisPipeline pipeline, QueryDebugOutput output,
+                                    AnalysisCircuitBreaker circuitBreaker, ObjectProvider<AnalysisConnectionPool> connectionPool) {
+        this.metrics = metrics;
+        this.pipeline = pipeline;
+        this.output = output;
+        this.circuitBreaker = circuitBreaker;
+        this.connectionPool = connectionPool;
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(PREFIX + ".queries.intercepted", metrics, QueryAnalyzerMetrics::getInterceptedCount)
+                .description("Analyzable statements seen by the interceptor")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".queries.analyzed", metrics, QueryAnalyzerMetrics::getAnalyzedCount)
+                .description("Statements explained against the database")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".cache.hits", metrics, QueryAnalyzerMetrics::getCacheHitCount)
+                .description("Reports served from a cached plan")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".explain.failures", metrics, QueryAnalyzerMetrics::getExplainFailureCount)
+                .description("EXPLAIN PLAN attempts that failed")
+                .register(registry);
+        for (QueryAnalyzerMetrics.SkipReason reason : QueryAnalyzerMetrics.SkipReason.values()) {
+            FunctionCounter.builder(PREFIX + ".queries.skipped", metrics, m -> m.getSkippedCount(reason))
+                    .description("Statements not analyzed")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        
+        for (QueryAnalyzerMetrics.Phase phase : QueryAnalyzerMetrics.Phase.values()) {
+            FunctionTimer.builder(PREFIX + ".analysis", metrics.getPhase(phase),
+                            LatencyHistogram::getCount, LatencyHistogram::getTotalMicros, TimeUnit.MICROSECONDS)
+                    .description("Time spent per analysis phase")
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        
+        Gauge.builder(PREFIX + ".queue.depth", pipeline, QueryAnalysisPipeline::getQueueDepth)
+                .description("Analyses waiting for a pipeline worker")
+                .register(registry);
+        Gauge.builder(PREFIX + ".pool.active", this, binder -> binder.poolValue(true))
+                .description("Analysis connections in use")
+                .register(registry);
+        Gauge.builder(PREFIX + ".pool.idle", this, binder -> binder.poolValue(false))
+                .description("Open analysis connections not in use")
+                .register(registry);
+        Gauge.builder(PREFIX + ".circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Analysis circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".output.dropped", output, QueryDebugOutput::getDroppedCount)
+                .description("Reports dropped because a sink fell behind")
+                .register(registry);
+    }
+    
+    private double poolValue(boolean active) {
+        AnalysisConnectionPool pool = connectionPool.getIfAvailable();
+        if (pool == null) {
+            return 0;
+        }
+        return active ? pool.getActiveCount() : pool.getIdleCount();
+    }
+}
\ No newline at end of file
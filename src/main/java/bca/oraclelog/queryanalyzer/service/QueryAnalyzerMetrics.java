@@ -0,0 +1,78 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.LatencyHistogram;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the analyzer itself costs: how many statements it saw, what it did with them
+ * and how long each phase of an analysis took. Exported through Micrometer or JMX.
+ */
+@Service
+public class QueryAnalyzerMetrics {
+    
+    public enum Phase {
+        ACQUIRE,
+        EXPLAIN,
+        FETCH,
+        CLEANUP,
+        TOTAL
+    }
+    
+    public enum SkipReason {
+        SAMPLED_OUT,
+        EXPLAIN_BUDGET,
+        NO_CONNECTION,
+        QUEUE_FULL,
+        CIRCUIT_OPEN
+    }
+    
+    private final LongAdder intercepted = new LongAdder();
+    private final LongAdder analyzed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder explainFailures = new LongAdder();
+    private final LongAdder[] skipped = new LongAdder[SkipReason.values().length];
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    
+    public QueryAnalyzerMetrics() {
+        for (int i = 0; i < skipped.length; i++) {
+            skipped[i] = new LongAdder();
+        }
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+    
+    public void recordIntercepted() { intercepted.increment(); }
+    
+    public void recordAnalyzed() { analyzed.increment(); }
+    
+    public void recordCacheHit() { cacheHits.increment(); }
+    
+    public void recordExplainFailure() { explainFailures.increment(); }
+    
+    public void recordSkipped(SkipReason reason) { skipped[reason.ordinal()].increment(); }
+    
+    public void recordPhase(Phase phase, long elapsedNanos) { phases[phase.ordinal()].recordNanos(elapsedNanos); }
+    
+    public long getInterceptedCount() { return intercepted.sum(); }
+    
+    public long getAnalyzedCount() { return analyzed.sum(); }
+    
+    public long getCacheHitCount() { return cacheHits.sum(); }
+    
+    public long getExplainFailureCount() { return explainFailures.sum(); }
+    
+    public long getSkippedCount(SkipReason reason) { return skipped[reason.ordinal()].sum(); }
+    
+    public long getSkippedCount() {
+        long total = 0;
+        for (LongAdder adder : skipped) {
+            total += adder.sum();
+        }
+        return total;
+    }
+    
+    public LatencyHistogram getPhase(Phase phase) { return phases[phase.ordinal()]; }
+}
\ No newline at end of file
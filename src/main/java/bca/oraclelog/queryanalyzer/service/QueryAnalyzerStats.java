@@ -0,0 +1,108 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMetrics.Phase;
+import bca.oraclelog.queryanalyzer.service.QueryAnalyzerMetrics.SkipReason;
+import org.springframework.beans.factory.ObjectProvider;
+
+// Plain JMX view of QueryAnalyzerMetrics for deployments without Micrometer
+public class QueryAnalyzerStats implements QueryAnalyzerStatsMBean {
+    
+    private final QueryAnalyzerMetrics metrics;
+    private final QueryAnalysisPipeline pipeline;
+    private final QueryDebugOutput output;
+    private final AnalysisCircuitBreaker circuitBreaker;
+    private final ObjectProvider<AnalysisConnectionPool> connectionPool;
+    
+    public QueryAnalyzerStats(QueryAnalyzerMetrics metrics, QueryAnalysisPipeline pipeline, QueryDebugOutput output,
+                              AnalysisCircuitBreaker circuitBreaker, ObjectProvider<AnalysisConnectionPool> connectionPool) {
+        this.metrics = metrics;
+        this.pipeline = pipeline;
+        this.output = output;
+        this.circuitBreaker = circuitBreaker;
+        this.connectionPool = connectionPool;
+    }
+    
+    @Override
+    public long getInterceptedCount() { return metrics.getInterceptedCount(); }
+    
+    @Override
+    public long getAnalyzedCount() { return metrics.getAnalyzedCount(); }
+    
+    @Override
+    public long getCacheHitCount() { return metrics.getCacheHitCount(); }
+    
+    @Override
+    public long getExplainFailureCount() { return metrics.getExplainFailureCount(); }
+    
+    @Override
+    public long getSkippedCount() { return metrics.getSkippedCount(); }
+    
+    @Override
+    public long getSkippedSampledOutCount() { return metrics.getSkippedCount(SkipReason.SAMPLED_OUT); }
+    
+    @Override
+    public long getSkippedExplainBudgetCount() { return metrics.getSkippedCount(SkipReason.EXPLAIN_BUDGET); }
+    
+    @Override
+    public long getSkippedNoConnectionCount() { return metrics.getSkippedCount(SkipReason.NO_CONNECTION); }
+    
+    @Override
+    public long getSkippedQueueFullCount() { return metrics.getSkippedCount(SkipReason.QUEUE_FULL); }
+    
+    @Override
+    public long getSkippedCircuitOpenCount() { return metrics.getSkippedCount(SkipReason.CIRCUIT_OPEN); }
+    
+    @Override
+    public String getCircuitState() { return circuitBreaker.getState().name(); }
+    
+    @Override
+    public double getAcquireMeanMicros() { return metrics.getPhase(Phase.ACQUIRE).getMeanMicros(); }
+    
+    @Override
+    public long getAcquireP99Micros() { return metrics.getPhase(Phase.ACQUIRE).getPercentileMicros(99); }
+    
+    @Override
+    public double getExplainMeanMicros() { return metrics.getPhase(Phase.EXPLAIN).getMeanMicros(); }
+    
+    @Override
+    public long getExplainP99Micros() { return metrics.getPhase(Phase.EXPLAIN).getPercentileMicros(99); }
+    
+    @Override
+    public double getFetchMeanMicros() { return metrics.getPhase(Phase.FETCH).getMeanMicros(); }
+    
+    @Override
+    public long getFetchP99Micros() { return metrics.getPhase(Phase.FETCH).getPercentileMicros(99); }
+    
+    @Override
+    public double getCleanupMeanMicros() { return metrics.getPhase(Phase.CLEANUP).getMeanMicros(); }
+    
+    @Override
+    public long getCleanupP99Micros() { return metrics.getPhase(Phase.CLEANUP).getPercentileMicros(99); }
+    
+    @Override
+    public double getAnalysisMeanMicros() { return metrics.getPhase(Phase.TOTAL).getMeanMicros(); }
+    
+    @Override
+    public long getAnalysisP99Micros() { return metrics.getPhase(Phase.TOTAL).getPercentileMicros(99); }
+    
+    @Override
+    public long getAnalysisMaxMicros() { return metrics.getPhase(Phase.TOTAL).getMaxMicros(); }
+    
+    @Override
+    public int getQueueDepth() { return pipeline.getQueueDepth(); }
+    
+    @Override
+    public int getPoolActiveCount() {
+        AnalysisConnectionPool pool = connectionPool.getIfAvailable();
+        return pool != null ? pool.getActiveCount() : 0;
+    }
+    
+    @Override
+    public int getPoolIdleCount() {
+        AnalysisConnectionPool pool = connectionPool.getIfAvailable();
+        return pool != null ? pool.getIdleCount() : 0;
+    }
+    
+    @Override
+    public long getOutputDroppedCount() { return output.getDroppedCount(); }
+}
\ No newline at end of file
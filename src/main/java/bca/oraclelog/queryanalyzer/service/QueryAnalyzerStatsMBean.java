@@ -0,0 +1,57 @@
+package bca.oraclelog.queryanalyzer.service;
+
+// Management interface of QueryAnalyzerStats; times are in microseconds
+public interface QueryAnalyzerStatsMBean {
+    
+    long getInterceptedCount();
+    
+    long getAnalyzedCount();
+    
+    long getCacheHitCount();
+    
+    long getExplainFailureCount();
+    
+    long getSkippedCount();
+    
+    long getSkippedSampledOutCount();
+    
+    long getSkippedExplainBudgetCount();
+    
+    long getSkippedNoConnectionCount();
+    
+    long getSkippedQueueFullCount();
+    
+    long getSkippedCircuitOpenCount();
+    
+    String getCircuitState();
+    
+    double getAcquireMeanMicros();
+    
+    long getAcquireP99Micros();
+    
+    double getExplainMeanMicros();
+    
+    long getExplainP99Micros();
+    
+    double getFetchMeanMicros();
+    
+    long getFetchP99Micros();
+    
+    double getCleanupMeanMicros();
+    
+    long getCleanupP99Micros();
+    
+    double getAnalysisMeanMicros();
+    
+    long getAnalysisP99Micros();
+    
+    long getAnalysisMaxMicros();
+    
+    int getQueueDepth();
+    
+    int getPoolActiveCount();
+    
+    int getPoolIdleCount();
+    
+    long getOutputDroppedCount();
+}
\ No newline at end of file
@@ -1,111 +1,741 @@
 package bca.oraclelog.queryanalyzer.service;
 
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CallSiteSnapshot;
+import bca.oraclelog.queryanalyzer.model.ExecutionPlanTree;
+import bca.oraclelog.queryanalyzer.model.FingerprintStatistics;
+import bca.oraclelog.queryanalyzer.model.LatencySnapshot;
 import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.StatementAggregate;
+import bca.oraclelog.queryanalyzer.model.WorkloadStatement;
 import org.springframework.stereotype.Service;
 
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Service
 public class QueryDebugFormatter {
     
     private static final String SEPARATOR = "=".repeat(100);
-    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final String LINE = "-".repeat(60);
+    private static final String WIDE_LINE = "-".repeat(100);
+    private static final String[] BYTE_UNITS = {"B", "KB", "MB", "GB", "TB"};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    // Reports are written into a per-thread buffer that is reused across queries
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(BUFFER_SIZE));
     
     public String formatQueryDebug(QueryExecutionSummary summary) {
-        StringBuilder sb = new StringBuilder();
-        
+        StringBuilder sb = acquireBuffer();
+        appendQueryDebug(sb, summary);
+        return releaseBuffer(sb);
+    }
+    
+    public void appendQueryDebug(StringBuilder sb, QueryExecutionSummary summary) {
         // Header
-        sb.append("\n").append(SEPARATOR).append("\n");
-        sb.append("🔍 ORACLE QUERY DEBUG - ").append(summary.getTimestamp().format(TIMESTAMP_FORMAT)).append("\n");
-        sb.append("📋 Statement ID: ").append(summary.getStatementId()).append("\n");
-        sb.append("⏱️  Analysis Time: ").append(summary.getAnalysisTimeMs()).append(" ms\n");
-        sb.append(SEPARATOR).append("\n");
+        sb.append('\n').append(SEPARATOR).append('\n');
+        sb.append("🔍 ORACLE QUERY DEBUG - ");
+        appendTimestamp(sb, summary.getTimestamp());
+        sb.append('\n');
+        sb.append("📋 Statement ID: ").append(summary.getStatementId()).append('\n');
+        sb.append("⏱️  Analysis Time: ").append(summary.getAnalysisTimeMs()).append(" ms");
+        if (summary.isFromCache()) {
+            sb.append(" (cached plan)");
+        }
+        sb.append('\n');
+        if (summary.getFingerprint() != null) {
+            sb.append("🧬 Fingerprint:  ");
+            appendHex(sb, summary.getFingerprint().getId());
+            sb.append('\n');
+        }
+        if (summary.getBindBucket() != null) {
+            sb.append("🎯 Bind Bucket:  ").append(summary.getBindBucket()).append('\n');
+        }
+        sb.append(SEPARATOR).append('\n');
         
         // Query (if enabled)
         if (summary.getOriginalQuery() != null) {
             sb.append("📝 SQL QUERY:\n");
-            sb.append(formatQuery(summary.getOriginalQuery())).append("\n\n");
+            appendQuery(sb, summary.getOriginalQuery());
+            sb.append("\n\n");
         }
         
         // Execution Plan Summary (ID=0 only)
         sb.append("📊 EXECUTION PLAN SUMMARY (Parent Node):\n");
-        sb.append("-".repeat(60)).append("\n");
-        sb.append(String.format("💰 Total Cost:      %,.0f\n", summary.getCost()));
-        sb.append(String.format("📈 Cardinality:     %,d rows\n", summary.getCardinality()));
-        sb.append(String.format("💾 Bytes:           %,d bytes (%s)\n", summary.getBytes(), formatBytes(summary.getBytes())));
-        sb.append(String.format("🖥️  CPU Cost:        %,.0f\n", summary.getCpuCost()));
-        sb.append(String.format("💿 I/O Cost:        %,.0f\n", summary.getIoCost()));
-        sb.append(String.format("⏰ Estimated Time:  %,d microseconds\n", summary.getTime()));
+        sb.append(LINE).append('\n');
+        sb.append("💰 Total Cost:      ");
+        appendGrouped(sb, summary.getCost());
+        sb.append('\n');
+        sb.append("📈 Cardinality:     ");
+        appendGrouped(sb, summary.getCardinality());
+        sb.append(" rows\n");
+        sb.append("💾 Bytes:           ");
+        appendGrouped(sb, summary.getBytes());
+        sb.append(" bytes (");
+        appendBytes(sb, summary.getBytes());
+        sb.append(")\n");
+        sb.append("🖥️  CPU Cost:        ");
+        appendGrouped(sb, summary.getCpuCost());
+        sb.append('\n');
+        sb.append("💿 I/O Cost:        ");
+        appendGrouped(sb, summary.getIoCost());
+        sb.append('\n');
+        sb.append("⏰ Estimated Time:  ");
+        appendGrouped(sb, summary.getTime());
+        sb.append(" seconds\n");
+        
+        // Full plan tree (if captured)
+        if (summary.getPlanTree() != null && summary.getPlanTree().size() > 0) {
+            sb.append('\n');
+            appendPlanTree(sb, summary.getPlanTree());
+        }
         
         // Performance Assessment
-        sb.append("\n").append(generatePerformanceAssessment(summary)).append("\n");
+        sb.append('\n');
+        appendPerformanceAssessment(sb, summary);
+        sb.append('\n');
         
         // Stack Trace (if available)
         if (summary.getStackTrace() != null && !summary.getStackTrace().isEmpty()) {
             sb.append("📍 CALL STACK:\n");
-            sb.append("-".repeat(60)).append("\n");
-            sb.append(summary.getStackTrace()).append("\n");
+            sb.append(LINE).append('\n');
+            sb.append(summary.getStackTrace()).append('\n');
+        }
+        
+        sb.append(SEPARATOR).append('\n');
+    }
+    
+    // Single-line JSON form of the report, for machine consumption
+    public void appendJson(StringBuilder sb, QueryExecutionSummary summary) {
+        sb.append("{\"timestamp\":\"").append(summary.getTimestamp()).append('"');
+        sb.append(",\"statementId\":");
+        appendJsonString(sb, summary.getStatementId());
+        if (summary.getFingerprint() != null) {
+            sb.append(",\"fingerprint\":\"");
+            appendHex(sb, summary.getFingerprint().getId());
+            sb.append('"');
+        }
+        if (summary.getBindBucket() != null) {
+            sb.append(",\"bindBucket\":");
+            appendJsonString(sb, summary.getBindBucket());
+        }
+        sb.append(",\"fromCache\":").append(summary.isFromCache());
+        sb.append(",\"analysisTimeMs\":").append(summary.getAnalysisTimeMs());
+        sb.append(",\"cost\":").append(summary.getCost());
+        sb.append(",\"cardinality\":").append(summary.getCardinality());
+        sb.append(",\"bytes\":").append(summary.getBytes());
+        sb.append(",\"cpuCost\":").append(summary.getCpuCost());
+        sb.append(",\"ioCost\":").append(summary.getIoCost());
+        sb.append(",\"timeSeconds\":").append(summary.getTime());
+        if (summary.getOriginalQuery() != null) {
+            sb.append(",\"query\":");
+            appendJsonString(sb, summary.getOriginalQuery());
+        }
+        
+        ExecutionPlanTree tree = summary.getPlanTree();
+        if (tree != null && tree.size() > 0) {
+            sb.append(",\"plan\":[");
+            for (int i = 0; i < tree.size(); i++) {
+                sb.append(i == 0 ? "{" : ",{");
+                sb.append("\"id\":").append(tree.getId(i));
+                sb.append(",\"parentId\":").append(tree.getParentId(i));
+                sb.append(",\"operation\":");
+                appendJsonString(sb, tree.getOperation(i));
+                sb.append(",\"options\":");
+                appendJsonString(sb, tree.getOptions(i));
+                sb.append(",\"object\":");
+                appendJsonString(sb, tree.getObjectName(i));
+                sb.append(",\"cost\":").append(tree.getCost(i));
+                sb.append(",\"cardinality\":").append(tree.getCardinality(i));
+                sb.append(",\"bytes\":").append(tree.getBytes(i));
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+        
+        if (summary.getStackTrace() != null && !summary.getStackTrace().isEmpty()) {
+            sb.append(",\"stackTrace\":");
+            appendJsonString(sb, summary.getStackTrace());
+        }
+        sb.append('}');
+    }
+    
+    static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+    
+    public String formatLatencyReport(List<LatencySnapshot> snapshots, long untracked) {
+        StringBuilder sb = acquireBuffer();
+        sb.append('\n').append(SEPARATOR).append('\n');
+        sb.append("⏱️  OBSERVED QUERY LATENCY (ms)\n");
+        sb.append(SEPARATOR).append('\n');
+        sb.append("FINGERPRINT           EXECS    FAILS      P50      P95      P99      MAX  ESTIMATED\n");
+        sb.append(WIDE_LINE).append('\n');
+        
+        for (LatencySnapshot snapshot : snapshots) {
+            appendHex(sb, snapshot.getFingerprintId());
+            
+            int mark = sb.length();
+            appendGrouped(sb, snapshot.getExecutionCount());
+            padLeft(sb, mark, 10);
+            
+            mark = sb.length();
+            appendGrouped(sb, snapshot.getFailureCount());
+            padLeft(sb, mark, 9);
+            
+            appendMillis(sb, snapshot.getP50Micros());
+            appendMillis(sb, snapshot.getP95Micros());
+            appendMillis(sb, snapshot.getP99Micros());
+            appendMillis(sb, snapshot.getMaxMicros());
+            
+            mark = sb.length();
+            if (snapshot.getEstimatedMicros() < 0) {
+                sb.append('-');
+            } else {
+                appendFixed1(sb, snapshot.getEstimatedMicros() / 1000.0);
+            }
+            padLeft(sb, mark, 11);
+            sb.append('\n');
+            
+            if (snapshot.getSampleQuery() != null) {
+                sb.append("    ");
+                appendQuery(sb, snapshot.getSampleQuery(), 96);
+                sb.append('\n');
+            }
+        }
+        
+        if (untracked > 0) {
+            sb.append(WIDE_LINE).append('\n');
+            sb.append("Executions of untracked fingerprints: ");
+            appendGrouped(sb, untracked);
+            sb.append('\n');
+        }
+        sb.append(SEPARATOR).append('\n');
+        return releaseBuffer(sb);
+    }
+    
+    public String formatCallSiteReport(List<CallSiteSnapshot> snapshots, long untracked) {
+        StringBuilder sb = acquireBuffer();
+        sb.append('\n').append(SEPARATOR).append('\n');
+        sb.append("📍 QUERY COST BY CALL SITE\n");
+        sb.append(SEPARATOR).append('\n');
+        sb.append("  # FINGERPRINT           EXECS     TOTAL COST   AVG COST  TOTAL MS    P95 MS\n");
+        sb.append(WIDE_LINE).append('\n');
+        
+        int rank = 1;
+        for (CallSiteSnapshot snapshot : snapshots) {
+            int mark = sb.length();
+            sb.append(rank++);
+            padLeft(sb, mark, 3);
+            sb.append(' ');
+            appendHex(sb, snapshot.getFingerprintId());
+            
+            mark = sb.length();
+            appendGrouped(sb, snapshot.getExecutionCount());
+            padLeft(sb, mark, 10);
+            
+            mark = sb.length();
+            appendGrouped(sb, snapshot.getTotalCost());
+            padLeft(sb, mark, 15);
+            
+            mark = sb.length();
+            if (snapshot.getCostedCount() == 0) {
+                sb.append('-');
+            } else {
+                appendFixed1(sb, snapshot.getAverageCost());
+            }
+            padLeft(sb, mark, 11);
+            
+            mark = sb.length();
+            appendFixed1(sb, snapshot.getTotalMicros() / 1000.0);
+            padLeft(sb, mark, 10);
+            appendMillis(sb, snapshot.getP95Micros());
+            sb.append('\n');
+            
+            sb.append(snapshot.getCallSite().getFrame());
+            if (snapshot.getSampleQuery() != null) {
+                sb.append("    ");
+                appendQuery(sb, snapshot.getSampleQuery(), 96);
+                sb.append('\n');
+            }
+        }
+        
+        if (untracked > 0) {
+            sb.append(WIDE_LINE).append('\n');
+            sb.append("Executions of untracked call sites: ");
+            appendGrouped(sb, untracked);
+            sb.append('\n');
+        }
+        sb.append(SEPARATOR).append('\n');
+        return releaseBuffer(sb);
+    }
+    
+    public String formatTopStatements(List<StatementAggregate> statements, QueryDebugProperties.RankBy rankBy, Duration window) {
+        StringBuilder sb = acquireBuffer();
+        sb.append('\n').append(SEPARATOR).append('\n');
+        sb.append("🏆 TOP ").append(statements.size()).append(" STATEMENTS BY ").append(rankBy)
+                .append(" - LAST ").append(window.toMinutes()).append(" MINUTES\n");
+        sb.append(SEPARATOR).append('\n');
+        sb.append("  #  FINGERPRINT           EXECS   TOTAL COST     MAX COST     AVG ROWS    MAX BYTES   EST TIME (s)\n");
+        sb.append(WIDE_LINE).append('\n');
+        
+        int rank = 0;
+        for (StatementAggregate statement : statements) {
+            int mark = sb.length();
+            sb.append(++rank);
+            padLeft(sb, mark, 3);
+            sb.append("  ");
+            appendHex(sb, statement.getFingerprintId());
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getCount());
+            padLeft(sb, mark, 8);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getTotalCost());
+            padLeft(sb, mark, 13);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getMaxCost());
+            padLeft(sb, mark, 13);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getCount() > 0 ? statement.getTotalCardinality() / statement.getCount() : 0);
+            padLeft(sb, mark, 13);
+            
+            mark = sb.length();
+            appendBytes(sb, statement.getMaxBytes());
+            padLeft(sb, mark, 13);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getTotalTime());
+            padLeft(sb, mark, 15);
+            sb.append('\n');
+            
+            if (statement.getError() > 0) {
+                sb.append("     ranking ").append(rankBy).append(" may be overstated by up to ");
+                appendGrouped(sb, statement.getError());
+                sb.append('\n');
+            }
+            if (statement.getSampleQuery() != null) {
+                sb.append("     ");
+                appendQuery(sb, statement.getSampleQuery(), 95);
+                sb.append('\n');
+            }
+        }
+        sb.append(SEPARATOR).append('\n');
+        return releaseBuffer(sb);
+    }
+    
+    public String formatWorkloadReport(List<WorkloadStatement> statements, QueryDebugProperties.RankBy rankBy, String input,
+                                       long statementCount, long distinctCount, long analyzedCount, long failedCount) {
+        StringBuilder sb = acquireBuffer();
+        sb.append(SEPARATOR).append('\n');
+        sb.append("📦 ORACLE WORKLOAD ANALYSIS - ");
+        appendTimestamp(sb, LocalDateTime.now());
+        sb.append('\n');
+        sb.append("📂 Input:        ").append(input).append('\n');
+        sb.append("🔢 Statements:   ");
+        appendGrouped(sb, statementCount);
+        sb.append(" (");
+        appendGrouped(sb, distinctCount);
+        sb.append(" distinct, ");
+        appendGrouped(sb, analyzedCount);
+        sb.append(" analyzed, ");
+        appendGrouped(sb, failedCount);
+        sb.append(" failed)\n");
+        sb.append(SEPARATOR).append('\n');
+        sb.append("🏆 TOP ").append(statements.size()).append(" STATEMENTS BY ").append(rankBy).append('\n');
+        sb.append("     #  FINGERPRINT           EXECS         COST    TOTAL COST         ROWS        BYTES   EST TIME (s)\n");
+        sb.append(WIDE_LINE).append('\n');
+        
+        int rank = 0;
+        for (WorkloadStatement statement : statements) {
+            int mark = sb.length();
+            sb.append(++rank);
+            padLeft(sb, mark, 6);
+            sb.append("  ");
+            appendHex(sb, statement.getFingerprintId());
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getExecutions());
+            padLeft(sb, mark, 8);
+            
+            if (statement.isFailed()) {
+                sb.append("   EXPLAIN failed: ");
+                appendQuery(sb, statement.getError(), 60);
+            } else {
+                mark = sb.length();
+                appendGrouped(sb, statement.getCost());
+                padLeft(sb, mark, 13);
+                
+                mark = sb.length();
+                appendGrouped(sb, statement.getCost() * statement.getExecutions());
+                padLeft(sb, mark, 14);
+                
+                mark = sb.length();
+                appendGrouped(sb, statement.getCardinality());
+                padLeft(sb, mark, 13);
+                
+                mark = sb.length();
+                appendBytes(sb, statement.getBytes());
+                padLeft(sb, mark, 13);
+                
+                mark = sb.length();
+                appendGrouped(sb, statement.getTime());
+                padLeft(sb, mark, 15);
+            }
+            sb.append('\n');
+            sb.append("        ");
+            appendQuery(sb, statement.getNormalizedSql(), 92);
+            sb.append('\n');
         }
+        sb.append(SEPARATOR).append('\n');
+        return releaseBuffer(sb);
+    }
+    
+    public String formatFleetReport(List<FingerprintStatistics> statements, QueryDebugProperties.RankBy rankBy,
+                                    int snapshotCount, long instanceCount, long fingerprintCount) {
+        StringBuilder sb = acquireBuffer();
+        sb.append(SEPARATOR).append('\n');
+        sb.append("🌐 ORACLE QUERY FLEET REPORT - ");
+        appendTimestamp(sb, LocalDateTime.now());
+        sb.append('\n');
+        sb.append("📂 Snapshots:    ");
+        appendGrouped(sb, snapshotCount);
+        sb.append(" (");
+        appendGrouped(sb, instanceCount);
+        sb.append(" instances, ");
+        appendGrouped(sb, fingerprintCount);
+        sb.append(" distinct statements)\n");
+        sb.append(SEPARATOR).append('\n');
+        sb.append("🏆 TOP ").append(statements.size()).append(" STATEMENTS BY ").append(rankBy).append('\n');
+        sb.append("     #  FINGERPRINT        EXECS    FAILS  P50 (ms)      P95      P99      MAX    AVG COST    TOTAL COST  INST\n");
+        sb.append(WIDE_LINE).append('\n');
         
-        sb.append(SEPARATOR).append("\n");
+        int rank = 0;
+        for (FingerprintStatistics statement : statements) {
+            int mark = sb.length();
+            sb.append(++rank);
+            padLeft(sb, mark, 6);
+            sb.append("  ");
+            appendHex(sb, statement.getFingerprintId());
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getExecutionCount());
+            padLeft(sb, mark, 8);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getFailureCount());
+            padLeft(sb, mark, 9);
+            
+            mark = sb.length();
+            appendFixed1(sb, statement.getPercentileMicros(50) / 1000.0);
+            padLeft(sb, mark, 10);
+            appendMillis(sb, statement.getPercentileMicros(95));
+            appendMillis(sb, statement.getPercentileMicros(99));
+            appendMillis(sb, statement.getMaxMicros());
+            
+            mark = sb.length();
+            if (statement.getCostedExecutions() > 0) {
+                appendGrouped(sb, statement.getAverageCost());
+            } else {
+                sb.append('-');
+            }
+            padLeft(sb, mark, 12);
+            
+            mark = sb.length();
+            if (statement.getCostedExecutions() > 0) {
+                appendGrouped(sb, statement.getTotalCost());
+            } else {
+                sb.append('-');
+            }
+            padLeft(sb, mark, 14);
+            
+            mark = sb.length();
+            appendGrouped(sb, statement.getInstanceCount());
+            padLeft(sb, mark, 6);
+            sb.append('\n');
+            
+            if (statement.getSampleQuery() != null) {
+                sb.append("        ");
+                appendQuery(sb, statement.getSampleQuery(), 92);
+                sb.append('\n');
+            }
+        }
+        sb.append(SEPARATOR).append('\n');
+        return releaseBuffer(sb);
+    }
+    
+    private static void appendMillis(StringBuilder sb, long micros) {
+        int mark = sb.length();
+        appendFixed1(sb, micros / 1000.0);
+        padLeft(sb, mark, 9);
+    }
+    
+    public String formatPlanTree(ExecutionPlanTree tree) {
+        StringBuilder sb = acquireBuffer();
+        appendPlanTree(sb, tree);
+        return releaseBuffer(sb);
+    }
+    
+    private void appendPlanTree(StringBuilder sb, ExecutionPlanTree tree) {
+        sb.append("🌳 EXECUTION PLAN TREE:\n");
+        sb.append(WIDE_LINE).append('\n');
+        sb.append("  ID  OPERATION                                                      COST         ROWS      BYTES\n");
         
-        return sb.toString();
+        int mostExpensive = tree.getMostExpensiveNode();
+        for (int i = 0; i < tree.size(); i++) {
+            int mark = sb.length();
+            sb.append(tree.getId(i));
+            padLeft(sb, mark, 4);
+            sb.append("  ");
+            
+            mark = sb.length();
+            for (int depth = tree.getDepth(i); depth > 0; depth--) {
+                sb.append("  ");
+            }
+            sb.append(tree.getOperation(i));
+            if (tree.getOptions(i) != null) {
+                sb.append(' ').append(tree.getOptions(i));
+            }
+            if (tree.getObjectName(i) != null) {
+                sb.append(' ').append(tree.getObjectName(i));
+            }
+            padRight(sb, mark, 56);
+            
+            sb.append(' ');
+            mark = sb.length();
+            appendGrouped(sb, tree.getCost(i));
+            padLeft(sb, mark, 10);
+            
+            sb.append(' ');
+            mark = sb.length();
+            appendGrouped(sb, tree.getCardinality(i));
+            padLeft(sb, mark, 12);
+            
+            sb.append(' ');
+            mark = sb.length();
+            appendBytes(sb, tree.getBytes(i));
+            padLeft(sb, mark, 10);
+            
+            if (i == mostExpensive && tree.size() > 1) {
+                sb.append("  🔥 most expensive (self cost ");
+                appendGrouped(sb, tree.getSelfCost(i));
+                sb.append(')');
+            }
+            sb.append('\n');
+        }
     }
     
-    private String formatQuery(String query) {
-        return query.trim()
-                   .replaceAll("(?i)\\b(SELECT|FROM|WHERE|ORDER BY|GROUP BY|HAVING|JOIN|LEFT JOIN|RIGHT JOIN|INNER JOIN)\\b", "\n$1")
-                   .replaceAll("\\s+", " ")
-                   .trim();
+    // Collapses whitespace runs to a single space and trims, without regex or copies
+    private void appendQuery(StringBuilder sb, String query) {
+        appendQuery(sb, query, Integer.MAX_VALUE);
+    }
+    
+    // Whitespace runs collapse to one space; output stops after maxLength characters
+    private void appendQuery(StringBuilder sb, String query, int maxLength) {
+        int mark = sb.length();
+        boolean pendingSpace = false;
+        boolean started = false;
+        for (int i = 0; i < query.length() && sb.length() - mark < maxLength; i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = started;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+                started = true;
+            }
+        }
     }
     
-    private String formatBytes(long bytes) {
-        if (bytes == 0) return "0 B";
+    private void appendBytes(StringBuilder sb, long bytes) {
+        if (bytes == 0) {
+            sb.append("0 B");
+            return;
+        }
         
-        String[] units = {"B", "KB", "MB", "GB", "TB"};
-        int digitGroups = (int) (Math.log10(bytes) / Math.log10(1024));
+        int unit = 0;
+        double value = bytes;
+        while (value >= 1024 && unit < BYTE_UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
         
-        return String.format("%.1f %s", 
-            bytes / Math.pow(1024, digitGroups), 
-            units[digitGroups]);
+        appendFixed1(sb, value);
+        sb.append(' ').append(BYTE_UNITS[unit]);
     }
     
-    private String generatePerformanceAssessment(QueryExecutionSummary summary) {
-        StringBuilder assessment = new StringBuilder();
-        assessment.append("🎯 PERFORMANCE ASSESSMENT:\n");
-        assessment.append("-".repeat(60)).append("\n");
+    private void appendPerformanceAssessment(StringBuilder sb, QueryExecutionSummary summary) {
+        sb.append("🎯 PERFORMANCE ASSESSMENT:\n");
+        sb.append(LINE).append('\n');
         
         // Cost assessment
         if (summary.getCost() > 10000) {
-            assessment.append("🔴 HIGH COST: Query cost is very high (").append(String.format("%.0f", summary.getCost())).append(")\n");
-            assessment.append("   → Consider optimizing with indexes or query rewrite\n");
+            sb.append("🔴 HIGH COST: Query cost is very high (").append(Math.round(summary.getCost())).append(")\n");
+            sb.append("   → Consider optimizing with indexes or query rewrite\n");
         } else if (summary.getCost() > 1000) {
-            assessment.append("🟡 MODERATE COST: Query cost is moderate (").append(String.format("%.0f", summary.getCost())).append(")\n");
-            assessment.append("   → Monitor performance in production\n");
+            sb.append("🟡 MODERATE COST: Query cost is moderate (").append(Math.round(summary.getCost())).append(")\n");
+            sb.append("   → Monitor performance in production\n");
         } else {
-            assessment.append("🟢 LOW COST: Query cost is acceptable (").append(String.format("%.0f", summary.getCost())).append(")\n");
+            sb.append("🟢 LOW COST: Query cost is acceptable (").append(Math.round(summary.getCost())).append(")\n");
         }
         
         // Cardinality assessment
         if (summary.getCardinality() > 1000000) {
-            assessment.append("🔴 HIGH CARDINALITY: Processing ").append(String.format("%,d", summary.getCardinality())).append(" rows\n");
-            assessment.append("   → Consider adding WHERE clauses to reduce result set\n");
+            sb.append("🔴 HIGH CARDINALITY: Processing ");
+            appendGrouped(sb, summary.getCardinality());
+            sb.append(" rows\n");
+            sb.append("   → Consider adding WHERE clauses to reduce result set\n");
         } else if (summary.getCardinality() > 10000) {
-            assessment.append("🟡 MODERATE CARDINALITY: Processing ").append(String.format("%,d", summary.getCardinality())).append(" rows\n");
+            sb.append("🟡 MODERATE CARDINALITY: Processing ");
+            appendGrouped(sb, summary.getCardinality());
+            sb.append(" rows\n");
         }
         
         // I/O vs CPU ratio
         if (summary.getIoCost() > 0 && summary.getCpuCost() > 0) {
             double ioRatio = summary.getIoCost() / (summary.getIoCost() + summary.getCpuCost());
             if (ioRatio > 0.8) {
-                assessment.append("💿 I/O INTENSIVE: Query is I/O bound (").append(String.format("%.1f%%", ioRatio * 100)).append(" I/O)\n");
-                assessment.append("   → Consider adding indexes to reduce I/O\n");
+                sb.append("💿 I/O INTENSIVE: Query is I/O bound (");
+                appendFixed1(sb, ioRatio * 100);
+                sb.append("% I/O)\n");
+                sb.append("   → Consider adding indexes to reduce I/O\n");
             } else if (ioRatio < 0.2) {
-                assessment.append("🖥️  CPU INTENSIVE: Query is CPU bound (").append(String.format("%.1f%%", (1-ioRatio) * 100)).append(" CPU)\n");
-                assessment.append("   → Consider optimizing complex calculations\n");
+                sb.append("🖥️  CPU INTENSIVE: Query is CPU bound (");
+                appendFixed1(sb, (1 - ioRatio) * 100);
+                sb.append("% CPU)\n");
+                sb.append("   → Consider optimizing complex calculations\n");
             }
         }
+    }
+    
+    static StringBuilder acquireBuffer() {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        return sb;
+    }
+    
+    static String releaseBuffer(StringBuilder sb) {
+        String result = sb.toString();
+        // Do not pin an oversized buffer to the thread after an unusually large report
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.set(new StringBuilder(BUFFER_SIZE));
+        }
+        return result;
+    }
+    
+    static void appendGrouped(StringBuilder sb, double value) {
+        appendGrouped(sb, Math.round(value));
+    }
+    
+    // Same output as %,d for the default locale grouping of three digits
+    static void appendGrouped(StringBuilder sb, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                sb.append(value);
+                return;
+            }
+            sb.append('-');
+            value = -value;
+        }
+        
+        long divisor = 1;
+        while (value / divisor >= 1000) {
+            divisor *= 1000;
+        }
         
-        return assessment.toString();
+        sb.append(value / divisor);
+        while (divisor > 1) {
+            value %= divisor;
+            divisor /= 1000;
+            long group = value / divisor;
+            sb.append(',');
+            if (group < 100) sb.append('0');
+            if (group < 10) sb.append('0');
+            sb.append(group);
+        }
+    }
+    
+    static void appendFixed1(StringBuilder sb, double value) {
+        long tenths = Math.round(value * 10);
+        if (tenths < 0) {
+            sb.append('-');
+            tenths = -tenths;
+        }
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+    
+    static void appendHex(StringBuilder sb, long value) {
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            sb.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+    
+    private static void appendTimestamp(StringBuilder sb, LocalDateTime time) {
+        sb.append(time.getYear()).append('-');
+        appendPadded(sb, time.getMonthValue(), 2);
+        sb.append('-');
+        appendPadded(sb, time.getDayOfMonth(), 2);
+        sb.append(' ');
+        appendPadded(sb, time.getHour(), 2);
+        sb.append(':');
+        appendPadded(sb, time.getMinute(), 2);
+        sb.append(':');
+        appendPadded(sb, time.getSecond(), 2);
+        sb.append('.');
+        appendPadded(sb, time.getNano() / 1_000_000, 3);
+    }
+    
+    private static void appendPadded(StringBuilder sb, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
+    }
+    
+    static void padLeft(StringBuilder sb, int mark, int width) {
+        int missing = width - (sb.length() - mark);
+        for (int i = 0; i < missing; i++) {
+            sb.insert(mark, ' ');
+        }
+    }
+    
+    static void padRight(StringBuilder sb, int mark, int width) {
+        int missing = width - (sb.length() - mark);
+        for (int i = 0; i < missing; i++) {
+            sb.append(' ');
+        }
     }
 }
\ No newline at end of file
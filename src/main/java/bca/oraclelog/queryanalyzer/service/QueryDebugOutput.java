@@ -0,0 +1,95 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans query debug reports out to the configured sinks:
+ * logToConsole prints the readable report, logToFile appends JSON lines to logFilePath.
+ */
+@Service
+public class QueryDebugOutput {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QueryDebugOutput.class);
+    
+    private final List<QueryDebugSink> sinks = new CopyOnWriteArrayList<>();
+    private final QueryDebugProperties properties;
+    private final QueryDebugFormatter formatter;
+    private boolean opened;
+    
+    public QueryDebugOutput(QueryDebugProperties properties, QueryDebugFormatter formatter) {
+        this.properties = properties;
+        this.formatter = formatter;
+    }
+    
+    // The configured sinks and their writer threads are created whenever analysis is switched on
+    public synchronized void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        
+        QueryDebugProperties.Output settings = properties.getOutput();
+        if (properties.isLogToConsole()) {
+            sinks.add(new ConsoleQueryDebugSink(formatter, settings));
+        }
+        if (properties.isLogToFile()) {
+            try {
+                JsonLinesFileSink fileSink = new JsonLinesFileSink(formatter, properties.getLogFilePath(), settings);
+                sinks.add(fileSink);
+                logger.info("Writing query debug reports to {}", fileSink.getPath());
+            } catch (IOException e) {
+                logger.warn("Cannot open query debug log file {}: {}", properties.getLogFilePath(), e.getMessage());
+            }
+        }
+    }
+    
+    // Register an additional sink, e.g. one forwarding reports to a monitoring system; close() removes it
+    public void addSink(QueryDebugSink sink) {
+        sinks.add(sink);
+    }
+    
+    public void publish(QueryExecutionSummary summary) {
+        for (QueryDebugSink sink : sinks) {
+            sink.publish(summary);
+        }
+    }
+    
+    public boolean hasSinks() { return !sinks.isEmpty(); }
+    
+    public List<QueryDebugSink> getSinks() { return sinks; }
+    
+    public long getWrittenCount() {
+        long total = 0;
+        for (QueryDebugSink sink : sinks) {
+            total += sink.getWrittenCount();
+        }
+        return total;
+    }
+    
+    public long getDroppedCount() {
+        long total = 0;
+        for (QueryDebugSink sink : sinks) {
+            total += sink.getDroppedCount();
+        }
+        return total;
+    }
+    
+    // Called when analysis is switched off; the writer threads end and the log file is closed
+    @PreDestroy
+    public synchronized void close() {
+        for (QueryDebugSink sink : sinks) {
+            sink.close();
+        }
+        sinks.clear();
+        opened = false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+
+/**
+ * Destination for query debug reports. Publishing must not block the caller;
+ * a sink that cannot keep up drops the report and counts it instead.
+ */
+public interface QueryDebugSink extends AutoCloseable {
+    
+    boolean publish(QueryExecutionSummary summary);
+    
+    long getWrittenCount();
+    
+    long getDroppedCount();
+    
+    @Override
+    void close();
+}
\ No newline at end of file
@@ -0,0 +1,232 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks a statement against cost and cardinality limits before it runs. The check only
+ * reads the plan cache, so it never waits on the database; statements whose plan is not
+ * known yet are let through. Over the limit a statement is logged, held to a few concurrent
+ * executions, or refused, depending on the mode configured globally or for its fingerprint.
+ */
+@Lazy
+@Service
+public class QueryGuardrail {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QueryGuardrail.class);
+    
+    private final boolean enabled;
+    private final boolean includeQueryText;
+    private final QueryPlanCache planCache;
+    private final Limits defaults;
+    // Per-statement overrides sorted by fingerprint, searched without boxing the id
+    private final long[] overrideIds;
+    private final Limits[] overrides;
+    private final long throttleTimeoutNanos;
+    private final long warnIntervalNanos;
+    private final FingerprintTable<StatementState> states;
+    private volatile StatementState overflow;
+    
+    private final LongAdder warned = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    
+    public QueryGuardrail(QueryDebugProperties properties, QueryPlanCache planCache) {
+        QueryDebugProperties.Guardrail settings = properties.getGuardrail();
+        this.enabled = settings.isEnabled();
+        this.includeQueryText = properties.isIncludeQueryText();
+        this.planCache = planCache;
+        this.defaults = new Limits(settings.getMode(), settings.getMaxCost(), settings.getMaxCardinality(),
+                settings.getMaxConcurrent());
+        this.throttleTimeoutNanos = settings.getThrottleTimeout().toNanos();
+        this.warnIntervalNanos = settings.getWarnInterval().toNanos();
+        this.states = new FingerprintTable<>(settings.getMaxTrackedStatements());
+        this.overflow = new StatementState(defaults.maxConcurrent);
+        
+        TreeMap<Long, Limits> sorted = new TreeMap<>();
+        for (Map.Entry<String, QueryDebugProperties.Limit> entry : settings.getStatements().entrySet()) {
+            sorted.put(parseFingerprint(entry.getKey()), defaults.override(entry.getValue()));
+        }
+        this.overrideIds = new long[sorted.size()];
+        this.overrides = new Limits[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Long, Limits> entry : sorted.entrySet()) {
+            overrideIds[i] = entry.getKey();
+            overrides[i++] = entry.getValue();
+        }
+    }
+    
+    private static long parseFingerprint(String key) {
+        try {
+            return Long.parseUnsignedLong(key.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "oracle.query.debug.guardrail.statements keys must be hexadecimal fingerprints, got: " + key, e);
+        }
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    /**
+     * Admits one execution of a statement. Returns the permit to hand back to
+     * {@link #release(Semaphore)} once the statement has run, or {@code null} when none was taken.
+     * The statement text rules out a plan cached for another statement with a colliding
+     * fingerprint id, and is logged with warnings when query text is included.
+     *
+     * @throws QueryRejectedException when the statement must not run
+     */
+    public Semaphore admit(long fingerprintId, long cacheKey, String query) throws QueryRejectedException {
+        // The plan of the statement's bind bucket where there is one, else of the statement itself
+        QueryExecutionSummary plan = planCache.peek(cacheKey);
+        if (plan == null && cacheKey != fingerprintId) {
+            plan = planCache.peek(fingerprintId);
+        }
+        if (plan == null) {
+            return null;
+        }
+        
+        Limits limits = limitsOf(fingerprintId);
+        double cost = plan.getCost();
+        long cardinality = plan.getCardinality();
+        if (!limits.isExceededBy(cost, cardinality)) {
+            return null;
+        }
+        // Only checked before acting on the plan, so statements under the limit pay nothing for it
+        if (!QueryPlanCache.isPlanOf(plan, query)) {
+            return null;
+        }
+        
+        switch (limits.mode) {
+            case WARN:
+                warn(fingerprintId, limits, cost, cardinality, includeQueryText ? query : null);
+                return null;
+            case THROTTLE:
+                return throttle(fingerprintId, limits, cost, cardinality);
+            default:
+                rejected.increment();
+                throw new QueryRejectedException(QueryRejectedException.Reason.OVER_LIMIT, fingerprintId, cost,
+                        cardinality, "Statement " + Long.toHexString(fingerprintId) + " rejected: plan cost "
+                        + cost + ", cardinality " + cardinality + " (limits: " + limits + ")");
+        }
+    }
+    
+    public void release(Semaphore permit) {
+        permit.release();
+    }
+    
+    // Fresh semaphores for every statement; permits still held against the old ones are simply dropped
+    public void reset() {
+        states.clear();
+        overflow = new StatementState(defaults.maxConcurrent);
+    }
+    
+    private Limits limitsOf(long fingerprintId) {
+        if (overrideIds.length == 0) {
+            return defaults;
+        }
+        int index = Arrays.binarySearch(overrideIds, fingerprintId);
+        return index >= 0 ? overrides[index] : defaults;
+    }
+    
+    private StatementState stateOf(long fingerprintId, Limits limits) {
+        StatementState state = states.get(fingerprintId);
+        if (state == null) {
+            state = states.getOrCreate(fingerprintId, id -> new StatementState(limits.maxConcurrent));
+        }
+        return state != null ? state : overflow;
+    }
+    
+    private void warn(long fingerprintId, Limits limits, double cost, long cardinality, String query) {
+        warned.increment();
+        StatementState state = stateOf(fingerprintId, limits);
+        long now = System.nanoTime();
+        long last = state.lastWarnedNanos.get();
+        if ((last != 0 && now - last < warnIntervalNanos) || !state.lastWarnedNanos.compareAndSet(last, now)) {
+            return;
+        }
+        logger.warn("Statement {} is over the guardrail: plan cost {}, cardinality {} (limits: {}){}",
+                Long.toHexString(fingerprintId), cost, cardinality, limits, query != null ? "\n    " + query : "");
+    }
+    
+    private Semaphore throttle(long fingerprintId, Limits limits, double cost, long cardinality)
+            throws QueryRejectedException {
+        Semaphore permits = stateOf(fingerprintId, limits).permits;
+        if (permits.tryAcquire()) {
+            return permits;
+        }
+        
+        // Only executions of this statement wait here; everything else keeps running
+        throttled.increment();
+        try {
+            if (permits.tryAcquire(throttleTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                return permits;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        rejected.increment();
+        throw new QueryRejectedException(QueryRejectedException.Reason.THROTTLED, fingerprintId, cost, cardinality,
+                "Statement " + Long.toHexString(fingerprintId) + " rejected: " + limits.maxConcurrent
+                + " executions already running and none finished within the throttle timeout");
+    }
+    
+    public long getWarnedCount() { return warned.sum(); }
+    
+    public long getThrottledCount() { return throttled.sum(); }
+    
+    public long getRejectedCount() { return rejected.sum(); }
+    
+    private static final class Limits {
+        private final QueryDebugProperties.GuardrailMode mode;
+        private final double maxCost;
+        private final long maxCardinality;
+        private final int maxConcurrent;
+        
+        private Limits(QueryDebugProperties.GuardrailMode mode, double maxCost, long maxCardinality, int maxConcurrent) {
+            this.mode = mode;
+            this.maxCost = maxCost;
+            this.maxCardinality = maxCardinality;
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+        }
+        
+        private Limits override(QueryDebugProperties.Limit limit) {
+            return new Limits(
+                    limit.getMode() != null ? limit.getMode() : mode,
+                    limit.getMaxCost() != null ? limit.getMaxCost() : maxCost,
+                    limit.getMaxCardinality() != null ? limit.getMaxCardinality() : maxCardinality,
+                    limit.getMaxConcurrent() != null ? limit.getMaxConcurrent() : maxConcurrent);
+        }
+        
+        private boolean isExceededBy(double cost, long cardinality) {
+            return (maxCost > 0 && cost > maxCost) || (maxCardinality > 0 && cardinality > maxCardinality);
+        }
+        
+        @Override
+        public String toString() {
+            return "max cost " + (maxCost > 0 ? String.valueOf(maxCost) : "-")
+                    + ", max cardinality " + (maxCardinality > 0 ? String.valueOf(maxCardinality) : "-");
+        }
+    }
+    
+    private static final class StatementState {
+        private final Semaphore permits;
+        private final AtomicLong lastWarnedNanos = new AtomicLong();
+        
+        private StatementState(int maxConcurrent) {
+            this.permits = new Semaphore(maxConcurrent);
+        }
+    }
+}
\ No newline at end of file
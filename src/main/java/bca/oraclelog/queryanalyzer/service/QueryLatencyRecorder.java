@@ -0,0 +1,181 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.LatencyHistogram;
+import bca.oraclelog.queryanalyzer.model.LatencySnapshot;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Observed execution latency per SQL fingerprint, recorded from afterQuery.
+ * Each fingerprint gets a fixed-size histogram; once the configured number of
+ * fingerprints is tracked, further ones are only counted as untracked.
+ * Tracked fingerprints are kept for the life of the application: the histograms
+ * and the statistics snapshots built from them cover everything since startup,
+ * so evicting an idle statement would lose its history. A growing untracked
+ * count is the sign that max-fingerprints is too small.
+ */
+@Service
+public class QueryLatencyRecorder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QueryLatencyRecorder.class);
+    
+    private final boolean enabled;
+    private final int reportTopN;
+    private final FingerprintTable<FingerprintLatency> latencies;
+    private final QueryPlanCache planCache;
+    private final QueryDebugFormatter formatter;
+    private final LongAdder untracked = new LongAdder();
+    // Read and written by the scheduler thread only
+    private long reportedCount;
+    
+    public QueryLatencyRecorder(QueryDebugProperties properties, QueryPlanCache planCache, QueryDebugFormatter formatter) {
+        QueryDebugProperties.Latency latency = properties.getLatency();
+        this.enabled = latency.isEnabled();
+        this.reportTopN = latency.getReportTopN();
+        this.latencies = new FingerprintTable<>(latency.getMaxFingerprints());
+        this.planCache = planCache;
+        this.formatter = formatter;
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    // The plan the execution was checked against, null when none was cached
+    public void record(long fingerprintId, String query, long elapsedNanos, boolean success, QueryExecutionSummary plan) {
+        // Look up first: the factory captures the query, so only a new fingerprint pays for the lambda
+        FingerprintLatency latency = latencies.get(fingerprintId);
+        if (latency == null) {
+            latency = latencies.getOrCreate(fingerprintId, id -> new FingerprintLatency(query));
+            if (latency == null) {
+                untracked.increment();
+                return;
+            }
+        }
+        
+        latency.histogram.recordNanos(elapsedNanos);
+        if (success) {
+            latency.successes.increment();
+        } else {
+            latency.failures.increment();
+        }
+        if (plan != null) {
+            latency.recordCost(plan.getCost(), plan.getCardinality());
+        }
+    }
+    
+    public FingerprintLatency get(long fingerprintId) {
+        return latencies.get(fingerprintId);
+    }
+    
+    public void forEach(FingerprintTable.EntryConsumer<FingerprintLatency> action) {
+        latencies.forEach(action);
+    }
+    
+    // Slowest fingerprints first, by p99
+    public List<LatencySnapshot> snapshot() {
+        List<LatencySnapshot> snapshots = new ArrayList<>();
+        latencies.forEach((fingerprintId, latency) -> {
+            LatencyHistogram histogram = latency.histogram;
+            QueryExecutionSummary plan = planCache.peek(fingerprintId);
+            // PLAN_TABLE.TIME is the optimizer's elapsed-time estimate in seconds
+            long estimatedMicros = plan != null ? plan.getTime() * 1_000_000L : -1;
+            snapshots.add(new LatencySnapshot(fingerprintId, latency.sampleQuery,
+                    latency.successes.sum(), latency.failures.sum(),
+                    histogram.getPercentileMicros(50), histogram.getPercentileMicros(95),
+                    histogram.getPercentileMicros(99), histogram.getMaxMicros(), histogram.getMeanMicros(),
+                    estimatedMicros));
+        });
+        snapshots.sort(Comparator.comparingLong(LatencySnapshot::getP99Micros).reversed());
+        return snapshots;
+    }
+    
+    // Executions recorded since startup, untracked ones included; counted on demand, not per execution
+    public long getRecordedCount() {
+        long[] total = {untracked.sum()};
+        latencies.forEach((fingerprintId, latency) -> total[0] += latency.successes.sum() + latency.failures.sum());
+        return total[0];
+    }
+    
+    // Skipped while nothing has been recorded since the last report, e.g. while analysis is switched off
+    @Scheduled(fixedDelayString = "${oracle.query.debug.latency.report-interval:PT5M}",
+               initialDelayString = "${oracle.query.debug.latency.report-interval:PT5M}")
+    public void reportLatencies() {
+        if (!enabled || latencies.size() == 0) {
+            return;
+        }
+        long recorded = getRecordedCount();
+        if (recorded == reportedCount) {
+            return;
+        }
+        reportedCount = recorded;
+        
+        List<LatencySnapshot> snapshots = snapshot();
+        if (snapshots.size() > reportTopN) {
+            snapshots = snapshots.subList(0, reportTopN);
+        }
+        logger.info(formatter.formatLatencyReport(snapshots, untracked.sum()));
+    }
+    
+    public int getTrackedFingerprintCount() { return latencies.size(); }
+    
+    public long getUntrackedCount() { return untracked.sum(); }
+    
+    public static final class FingerprintLatency {
+        private final String sampleQuery;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder costed = new LongAdder();
+        private final DoubleAdder totalCost = new DoubleAdder();
+        // Only written when an execution widens them, so the common case is two volatile reads
+        private volatile double minCost = Double.POSITIVE_INFINITY;
+        private volatile double maxCost = Double.NEGATIVE_INFINITY;
+        private volatile long maxCardinality;
+        
+        private FingerprintLatency(String sampleQuery) {
+            this.sampleQuery = sampleQuery;
+        }
+        
+        private void recordCost(double cost, long cardinality) {
+            costed.increment();
+            totalCost.add(cost);
+            if (cost < minCost || cost > maxCost || cardinality > maxCardinality) {
+                widenBounds(cost, cardinality);
+            }
+        }
+        
+        private synchronized void widenBounds(double cost, long cardinality) {
+            minCost = Math.min(minCost, cost);
+            maxCost = Math.max(maxCost, cost);
+            maxCardinality = Math.max(maxCardinality, cardinality);
+        }
+        
+        public String getSampleQuery() { return sampleQuery; }
+        
+        public LatencyHistogram getHistogram() { return histogram; }
+        
+        public long getSuccessCount() { return successes.sum(); }
+        
+        public long getFailureCount() { return failures.sum(); }
+        
+        // Executions that ran with a cached plan, and the sum of that plan's cost over them
+        public long getCostedCount() { return costed.sum(); }
+        
+        public double getTotalCost() { return totalCost.sum(); }
+        
+        public double getMinCost() { return costed.sum() > 0 ? minCost : Double.NaN; }
+        
+        public double getMaxCost() { return costed.sum() > 0 ? maxCost : Double.NaN; }
+        
+        public long getMaxCardinality() { return maxCardinality; }
+    }
+}
\ No newline at end of file
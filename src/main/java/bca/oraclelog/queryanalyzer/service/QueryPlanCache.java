@@ -0,0 +1,223 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of EXPLAIN PLAN results keyed by SQL fingerprint. Lookups given the
+ * statement text also compare its normalized form, so two statements whose 64-bit
+ * fingerprint ids collide never share a plan.
+ * Entries expire after the configured TTL and are removed once found expired. Past the
+ * maximum size, entries are evicted in CLOCK order: an entry read since it last reached
+ * the head of the queue gets a second chance, so hot statements outlive cold ones.
+ */
+@Service
+public class QueryPlanCache {
+    
+    // Keys compare by fingerprint id only, so a per-thread probe key makes lookups allocation-free
+    private final Map<FingerprintKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<FingerprintKey> probe = ThreadLocal.withInitial(() -> new FingerprintKey(0));
+    private final Queue<Entry> evictionOrder = new ConcurrentLinkedQueue<>();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    // Queue nodes of entries removed outside eviction, swept once they outnumber live entries
+    private final AtomicInteger deadNodes = new AtomicInteger();
+    
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlNanos;
+    
+    public QueryPlanCache(QueryDebugProperties properties) {
+        QueryDebugProperties.Cache cache = properties.getCache();
+        this.enabled = cache.isEnabled() && cache.getMaxSize() > 0;
+        this.maxSize = cache.getMaxSize();
+        this.ttlNanos = cache.getTtl().toNanos();
+    }
+    
+    public QueryExecutionSummary get(SqlFingerprint fingerprint) {
+        return get(fingerprint.getId());
+    }
+    
+    public QueryExecutionSummary get(long fingerprintId) {
+        return get(fingerprintId, null);
+    }
+    
+    // A plan cached for another statement with the same id is a miss; without the text the id alone decides
+    public QueryExecutionSummary get(long cacheKey, String sql) {
+        if (!enabled) {
+            return null;
+        }
+        
+        Entry entry = find(cacheKey);
+        if (entry == null || !isPlanOf(entry.summary, sql)) {
+            misses.increment();
+            return null;
+        }
+        
+        hits.increment();
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.summary;
+    }
+    
+    // Lookup for reporting; does not count towards hits and misses
+    public QueryExecutionSummary peek(long fingerprintId) {
+        if (!enabled) {
+            return null;
+        }
+        
+        Entry entry = find(fingerprintId);
+        return entry != null ? entry.summary : null;
+    }
+    
+    // True unless the plan was analyzed for a statement that normalizes differently from sql
+    public static boolean isPlanOf(QueryExecutionSummary summary, String sql) {
+        SqlFingerprint fingerprint = summary.getFingerprint();
+        return sql == null || fingerprint == null || fingerprint.matches(sql);
+    }
+    
+    private Entry find(long cacheKey) {
+        FingerprintKey key = probe.get();
+        key.id = cacheKey;
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.nanoTime())) {
+            expire(entry);
+            return null;
+        }
+        return entry;
+    }
+    
+    public void put(SqlFingerprint fingerprint, QueryExecutionSummary summary) {
+        put(fingerprint.getId(), summary);
+    }
+    
+    public void put(long fingerprintId, QueryExecutionSummary summary) {
+        if (!enabled) {
+            return;
+        }
+        
+        long expiresAt = System.nanoTime() + ttlNanos;
+        FingerprintKey key = new FingerprintKey(fingerprintId);
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            // Refresh in place so the eviction queue keeps exactly one node per entry
+            existing.refresh(summary, expiresAt);
+            return;
+        }
+        
+        Entry entry = new Entry(key, summary, expiresAt);
+        existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            existing.refresh(summary, expiresAt);
+            return;
+        }
+        
+        evictionOrder.add(entry);
+        evictOverflow();
+    }
+    
+    private void evictOverflow() {
+        long now = System.nanoTime();
+        // Every live entry is passed over at most once before its flag is cleared
+        int secondChances = entries.size();
+        while (entries.size() > maxSize) {
+            Entry eldest = evictionOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (entries.get(eldest.key) != eldest) {
+                deadNodes.decrementAndGet();
+                continue;
+            }
+            if (eldest.isExpired(now)) {
+                if (entries.remove(eldest.key, eldest)) {
+                    expirations.increment();
+                }
+                continue;
+            }
+            if (eldest.referenced && secondChances-- > 0) {
+                eldest.referenced = false;
+                evictionOrder.add(eldest);
+                continue;
+            }
+            if (entries.remove(eldest.key, eldest)) {
+                evictions.increment();
+            }
+        }
+    }
+    
+    private void expire(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            expirations.increment();
+            if (deadNodes.incrementAndGet() > Math.max(entries.size(), 64)) {
+                sweepDeadNodes();
+            }
+        }
+    }
+    
+    private synchronized void sweepDeadNodes() {
+        int swept = 0;
+        for (Iterator<Entry> it = evictionOrder.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entries.get(entry.key) != entry) {
+                it.remove();
+                swept++;
+            }
+        }
+        deadNodes.addAndGet(-swept);
+    }
+    
+    public void clear() {
+        entries.clear();
+        evictionOrder.clear();
+        deadNodes.set(0);
+    }
+    
+    public int size() { return entries.size(); }
+    
+    public long getHitCount() { return hits.sum(); }
+    
+    public long getMissCount() { return misses.sum(); }
+    
+    // Entries removed to stay within the maximum size
+    public long getEvictionCount() { return evictions.sum(); }
+    
+    public long getExpirationCount() { return expirations.sum(); }
+    
+    private static final class Entry {
+        private final FingerprintKey key;
+        private volatile QueryExecutionSummary summary;
+        private volatile long expiresAtNanos;
+        // Set on a hit, cleared when the entry is given a second chance
+        private volatile boolean referenced;
+        
+        private Entry(FingerprintKey key, QueryExecutionSummary summary, long expiresAtNanos) {
+            this.key = key;
+            this.summary = summary;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+        
+        private void refresh(QueryExecutionSummary summary, long expiresAtNanos) {
+            this.summary = summary;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+        
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+}
\ No newline at end of file
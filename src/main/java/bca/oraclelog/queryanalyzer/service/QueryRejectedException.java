@@ -0,0 +1,43 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import java.sql.SQLNonTransientException;
+
+/**
+ * Thrown from the JDBC call of a statement the guardrail refused to run, either because its
+ * plan is over the configured limits in REJECT mode or because no THROTTLE permit became free
+ * in time. The statement never reached the database. It is an {@link java.sql.SQLException},
+ * so callers handle it like any other failed statement; retrying without a change does not help.
+ */
+public class QueryRejectedException extends SQLNonTransientException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    // Class 54, program limit exceeded
+    public static final String SQL_STATE = "54000";
+    
+    public enum Reason {
+        OVER_LIMIT,
+        THROTTLED
+    }
+    
+    private final Reason reason;
+    private final long fingerprintId;
+    private final double cost;
+    private final long cardinality;
+    
+    public QueryRejectedException(Reason reason, long fingerprintId, double cost, long cardinality, String message) {
+        super(message, SQL_STATE);
+        this.reason = reason;
+        this.fingerprintId = fingerprintId;
+        this.cost = cost;
+        this.cardinality = cardinality;
+    }
+    
+    public Reason getReason() { return reason; }
+    
+    public long getFingerprintId() { return fingerprintId; }
+    
+    public double getCost() { return cost; }
+    
+    public long getCardinality() { return cardinality; }
+}
\ No newline at end of file
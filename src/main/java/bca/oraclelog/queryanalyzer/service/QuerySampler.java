@@ -0,0 +1,161 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which statements get analyzed. Combines a global sampling rate, a per-fingerprint
+ * "first N then 1-in-M" policy and an instance-wide EXPLAIN budget, and halves the effective
+ * rate step by step while analyses are slow, failing or starved of connections.
+ * All decisions use atomics only, so request threads never block on each other here.
+ */
+@Lazy
+@Service
+public class QuerySampler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(QuerySampler.class);
+    
+    private static final int MAX_BACKOFF_LEVEL = 10;
+    
+    private final double rate;
+    private final int firstPerFingerprint;
+    private final int thenOneIn;
+    private final AtomicLongArray fingerprintCounts;
+    private final int slotMask;
+    
+    // Token bucket kept as a theoretical arrival time (GCRA); one CAS per permit
+    private final long explainIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong nextExplainNanos = new AtomicLong(System.nanoTime());
+    
+    private final boolean adaptive;
+    private final long slowAnalysisNanos;
+    private final long recoveryIntervalNanos;
+    private final AtomicInteger backoffLevel = new AtomicInteger();
+    private final AtomicLong lastBackoffChange = new AtomicLong(System.nanoTime());
+    
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder explainsDenied = new LongAdder();
+    
+    public QuerySampler(QueryDebugProperties properties) {
+        QueryDebugProperties.Sampling sampling = properties.getSampling();
+        this.rate = Math.max(0.0, Math.min(1.0, sampling.getRate()));
+        this.firstPerFingerprint = Math.max(0, sampling.getFirstPerFingerprint());
+        this.thenOneIn = Math.max(1, sampling.getThenOneIn());
+        
+        // Fixed number of counter slots indexed by fingerprint id; collisions only merge counts
+        int slots = Integer.highestOneBit(Math.max(1, sampling.getFingerprintSlots() - 1) << 1);
+        this.fingerprintCounts = firstPerFingerprint > 0 ? new AtomicLongArray(slots) : null;
+        this.slotMask = slots - 1;
+        
+        double perSecond = sampling.getMaxExplainsPerSecond();
+        this.explainIntervalNanos = perSecond > 0 ? (long) (1_000_000_000L / perSecond) : 0;
+        this.burstToleranceNanos = explainIntervalNanos * (Math.max(1, sampling.getExplainBurst()) - 1);
+        
+        this.adaptive = sampling.isAdaptive();
+        this.slowAnalysisNanos = sampling.getSlowAnalysisThreshold().toNanos();
+        this.recoveryIntervalNanos = sampling.getRecoveryInterval().toNanos();
+    }
+    
+    public boolean shouldSample(long fingerprintId) {
+        boolean sample = rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+        
+        if (sample && fingerprintCounts != null) {
+            int slot = (int) (fingerprintId ^ (fingerprintId >>> 32)) & slotMask;
+            long seen = fingerprintCounts.incrementAndGet(slot);
+            sample = seen <= firstPerFingerprint || (seen - firstPerFingerprint) % thenOneIn == 0;
+        }
+        
+        int level = backoffLevel.get();
+        if (sample && level > 0) {
+            sample = (ThreadLocalRandom.current().nextInt() & ((1 << level) - 1)) == 0;
+        }
+        
+        if (sample) {
+            sampled.increment();
+        } else {
+            sampledOut.increment();
+        }
+        return sample;
+    }
+    
+    // Permit for one EXPLAIN round trip against the instance-wide budget
+    public boolean tryAcquireExplain() {
+        if (explainIntervalNanos == 0) {
+            return true;
+        }
+        
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = nextExplainNanos.get();
+            long start = arrival - now > 0 ? arrival : now;
+            if (start - now > burstToleranceNanos) {
+                explainsDenied.increment();
+                return false;
+            }
+            if (nextExplainNanos.compareAndSet(arrival, start + explainIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+    
+    public void recordAnalysis(long elapsedNanos, boolean success) {
+        if (!adaptive) {
+            return;
+        }
+        if (!success || elapsedNanos > slowAnalysisNanos) {
+            backOff();
+        } else {
+            recover();
+        }
+    }
+    
+    // The analysis pool or queue had no room; the database side is not keeping up
+    public void recordSaturation() {
+        if (adaptive) {
+            backOff();
+        }
+    }
+    
+    private void backOff() {
+        // At most one step per tenth of the recovery interval so a burst does not go straight to the floor
+        if (changeLevel(recoveryIntervalNanos / 10, 1)) {
+            logger.debug("Query sampling backed off to 1/{} of the configured rate", 1 << backoffLevel.get());
+        }
+    }
+    
+    private void recover() {
+        if (backoffLevel.get() > 0 && changeLevel(recoveryIntervalNanos, -1)) {
+            logger.debug("Query sampling recovered to 1/{} of the configured rate", 1 << backoffLevel.get());
+        }
+    }
+    
+    private boolean changeLevel(long minIntervalNanos, int delta) {
+        long now = System.nanoTime();
+        long last = lastBackoffChange.get();
+        if (now - last < minIntervalNanos || !lastBackoffChange.compareAndSet(last, now)) {
+            return false;
+        }
+        int level = backoffLevel.get();
+        int updated = Math.max(0, Math.min(MAX_BACKOFF_LEVEL, level + delta));
+        return updated != level && backoffLevel.compareAndSet(level, updated);
+    }
+    
+    public int getBackoffLevel() { return backoffLevel.get(); }
+    
+    public long getSampledCount() { return sampled.sum(); }
+    
+    public long getSampledOutCount() { return sampledOut.sum(); }
+    
+    public long getExplainsDeniedCount() { return explainsDenied.sum(); }
+}
\ No newline at end of file
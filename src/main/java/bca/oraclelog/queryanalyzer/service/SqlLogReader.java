@@ -0,0 +1,237 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams statements out of a captured SQL log one at a time, holding only the current
+ * statement in memory. The reader tracks the byte offset just past the last statement it
+ * returned, so a later run can reopen the file at that offset and carry on from there.
+ * Plain statements end at a semicolon closing a line outside any literal or comment;
+ * PL/SQL blocks and stored program units end only at a line holding a lone slash.
+ */
+public class SqlLogReader implements AutoCloseable {
+    
+    private final FileChannel channel;
+    private final QueryDebugProperties.BatchInputFormat format;
+    private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+    private final StringBuilder statement = new StringBuilder();
+    private byte[] line = new byte[1024];
+    private long position;
+    private long offset;
+    private char closingQuote;
+    private boolean alternativeQuote;
+    private boolean inComment;
+    
+    public SqlLogReader(Path path, QueryDebugProperties.BatchInputFormat format, long startOffset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.format = format;
+        channel.position(startOffset);
+        this.position = startOffset;
+        this.offset = startOffset;
+        buffer.flip();
+    }
+    
+    // Offset just past the last statement returned by next()
+    public long getOffset() { return offset; }
+    
+    public String next() throws IOException {
+        return format == QueryDebugProperties.BatchInputFormat.JSON_LINES ? nextJsonQuery() : nextSqlStatement();
+    }
+    
+    private String nextSqlStatement() throws IOException {
+        statement.setLength(0);
+        closingQuote = 0;
+        inComment = false;
+        // Decided at the first candidate terminator, by which point the leading keywords are in
+        Boolean plsqlBlock = null;
+        String text;
+        while ((text = readLine()) != null) {
+            String trimmed = text.strip();
+            if (statement.length() == 0 && (trimmed.isEmpty() || trimmed.startsWith("--") || trimmed.equals("/"))) {
+                offset = position;
+                continue;
+            }
+            if (trimmed.equals("/") && closingQuote == 0 && !inComment) {
+                offset = position;
+                return statement.toString().strip();
+            }
+            
+            int start = statement.length();
+            statement.append(text);
+            int terminator = terminatorIn(text);
+            if (terminator >= 0 && plsqlBlock == null) {
+                plsqlBlock = SqlStatementClassifier.isPlsqlBlock(statement.toString());
+            }
+            if (terminator >= 0 && !plsqlBlock) {
+                statement.setLength(start + terminator);
+                offset = position;
+                return statement.toString().strip();
+            }
+            statement.append('\n');
+        }
+        
+        // Last statement without a terminator
+        String last = statement.toString().strip();
+        if (last.isEmpty()) {
+            return null;
+        }
+        offset = position;
+        return last;
+    }
+    
+    // Index of a semicolon that closes the line outside literals and comments, or -1.
+    // Quote and block comment state carries over to the next line of the statement.
+    private int terminatorIn(String text) {
+        int terminator = -1;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            char next = i + 1 < length ? text.charAt(i + 1) : 0;
+            if (inComment) {
+                if (c == '*' && next == '/') {
+                    inComment = false;
+                    i++;
+                }
+            } else if (closingQuote != 0) {
+                if (c == closingQuote && (!alternativeQuote || next == '\'')) {
+                    closingQuote = 0;
+                    if (alternativeQuote) {
+                        i++;
+                    }
+                }
+            } else if (c == '-' && next == '-') {
+                break;
+            } else if (c == '/' && next == '*') {
+                inComment = true;
+                i++;
+            } else if ((c == 'q' || c == 'Q') && next == '\'' && i + 2 < length) {
+                // q'[...]' literal, closed by the matching delimiter followed by a quote
+                closingQuote = closingDelimiter(text.charAt(i + 2));
+                alternativeQuote = true;
+                terminator = -1;
+                i += 2;
+            } else if (c == '\'' || c == '"') {
+                closingQuote = c;
+                alternativeQuote = false;
+                terminator = -1;
+            } else if (c == ';') {
+                terminator = i;
+            } else if (!Character.isWhitespace(c)) {
+                terminator = -1;
+            }
+        }
+        return terminator;
+    }
+    
+    private static char closingDelimiter(char open) {
+        switch (open) {
+            case '[': return ']';
+            case '{': return '}';
+            case '(': return ')';
+            case '<': return '>';
+            default: return open;
+        }
+    }
+    
+    private String nextJsonQuery() throws IOException {
+        String text;
+        while ((text = readLine()) != null) {
+            offset = position;
+            String query = jsonStringField(text, "query");
+            if (query != null && !query.isBlank()) {
+                return query;
+            }
+        }
+        return null;
+    }
+    
+    // Lines are split on raw bytes so position always matches the file offset, whatever the encoding
+    private String readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    if (length == 0) {
+                        return null;
+                    }
+                    break;
+                }
+                continue;
+            }
+            
+            byte b = buffer.get();
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = b;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    // Value of a top-level string field of a one-line JSON object; null when absent
+    static String jsonStringField(String json, String name) {
+        int key = json.indexOf("\"" + name + "\":");
+        if (key < 0) {
+            return null;
+        }
+        int i = key + name.length() + 3;
+        while (i < json.length() && json.charAt(i) == ' ') {
+            i++;
+        }
+        if (i >= json.length() || json.charAt(i) != '"') {
+            return null;
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for (i++; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\' || i + 1 >= json.length()) {
+                sb.append(c);
+                continue;
+            }
+            char escaped = json.charAt(++i);
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 < json.length()) {
+                        sb.append((char) Integer.parseInt(json, i + 1, i + 5, 16));
+                        i += 4;
+                    }
+                    break;
+                default: sb.append(escaped);
+            }
+        }
+        // Unterminated string
+        return null;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.SqlCommandType;
+
+/**
+ * Classifies a statement by its leading keyword in a single pass over the original text.
+ * Leading whitespace, comments, hints and opening parentheses are skipped, and keywords
+ * are matched in place, so classification never copies the SQL string.
+ */
+public final class SqlStatementClassifier {
+    
+    private SqlStatementClassifier() {
+    }
+    
+    public static boolean isAnalyzable(String sql) {
+        return classify(sql).isExplainable();
+    }
+    
+    public static SqlCommandType classify(String sql) {
+        if (sql == null) {
+            return SqlCommandType.OTHER;
+        }
+        
+        int start = skipToFirstToken(sql);
+        if (start < 0) {
+            return SqlCommandType.OTHER;
+        }
+        
+        if (keywordAt(sql, start, "SELECT") || keywordAt(sql, start, "WITH")) {
+            return SqlCommandType.SELECT;
+        }
+        if (keywordAt(sql, start, "INSERT")) {
+            return SqlCommandType.INSERT;
+        }
+        if (keywordAt(sql, start, "UPDATE")) {
+            return SqlCommandType.UPDATE;
+        }
+        if (keywordAt(sql, start, "DELETE")) {
+            return SqlCommandType.DELETE;
+        }
+        if (keywordAt(sql, start, "MERGE")) {
+            return SqlCommandType.MERGE;
+        }
+        return SqlCommandType.OTHER;
+    }
+    
+    /**
+     * True for an anonymous block or a stored program unit. Their bodies hold semicolons of
+     * their own, so in a script they end only at a line holding a lone slash.
+     */
+    public static boolean isPlsqlBlock(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        
+        int i = skipToFirstToken(sql);
+        if (i < 0) {
+            return false;
+        }
+        if (keywordAt(sql, i, "BEGIN") || keywordAt(sql, i, "DECLARE")) {
+            return true;
+        }
+        if (!keywordAt(sql, i, "CREATE")) {
+            return false;
+        }
+        
+        i = skipWhitespace(sql, i + "CREATE".length());
+        if (keywordAt(sql, i, "OR")) {
+            i = skipWhitespace(sql, i + "OR".length());
+            if (!keywordAt(sql, i, "REPLACE")) {
+                return false;
+            }
+            i = skipWhitespace(sql, i + "REPLACE".length());
+        }
+        if (keywordAt(sql, i, "EDITIONABLE")) {
+            i = skipWhitespace(sql, i + "EDITIONABLE".length());
+        } else if (keywordAt(sql, i, "NONEDITIONABLE")) {
+            i = skipWhitespace(sql, i + "NONEDITIONABLE".length());
+        }
+        return keywordAt(sql, i, "PROCEDURE") || keywordAt(sql, i, "FUNCTION") || keywordAt(sql, i, "PACKAGE")
+                || keywordAt(sql, i, "TRIGGER") || keywordAt(sql, i, "TYPE");
+    }
+    
+    private static int skipWhitespace(String sql, int i) {
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static int skipToFirstToken(String sql) {
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end + 2;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static boolean keywordAt(String sql, int offset, String keyword) {
+        int end = offset + keyword.length();
+        if (!sql.regionMatches(true, offset, keyword, 0, keyword.length())) {
+            return false;
+        }
+        return end == sql.length() || !isIdentifierPart(sql.charAt(end));
+    }
+    
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+    }
+}
\ No newline at end of file
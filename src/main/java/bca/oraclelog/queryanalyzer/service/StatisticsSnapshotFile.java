@@ -0,0 +1,284 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.FingerprintStatistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed snapshot of per-fingerprint statistics. A header (magic, format version,
+ * instance id, instance count, creation time) is followed by records in ascending fingerprint
+ * order and a trailer holding the record count. The order lets any number of snapshots be
+ * merged in one streaming pass. Counts are varints and only non-empty histogram buckets are stored.
+ */
+public final class StatisticsSnapshotFile {
+    
+    public static final String EXTENSION = ".qstats";
+    
+    private static final int MAGIC = 0x4F515353; // "OQSS"
+    private static final int VERSION = 1;
+    private static final int RECORD = 1;
+    private static final int END = 0;
+    private static final int FLAG_COST = 1;
+    private static final int FLAG_QUERY = 2;
+    
+    private StatisticsSnapshotFile() {
+    }
+    
+    public static Writer create(Path path, String instanceId, long instanceCount, long createdAt) throws IOException {
+        return new Writer(path, instanceId, instanceCount, createdAt);
+    }
+    
+    public static Reader open(Path path) throws IOException {
+        return new Reader(path);
+    }
+    
+    /**
+     * Writes to a temporary file next to the target; {@link #finish()} moves it into place,
+     * so readers only ever see complete snapshots.
+     */
+    public static final class Writer implements AutoCloseable {
+        
+        private final Path path;
+        private final Path temporary;
+        private final DataOutputStream out;
+        private long records;
+        private long lastFingerprintId;
+        private boolean finished;
+        
+        private Writer(Path path, String instanceId, long instanceCount, long createdAt) throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temporary), 8192)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeUTF(instanceId);
+            writeVarLong(out, instanceCount);
+            out.writeLong(createdAt);
+        }
+        
+        public void write(FingerprintStatistics statistics) throws IOException {
+            long fingerprintId = statistics.getFingerprintId();
+            if (records > 0 && fingerprintId <= lastFingerprintId) {
+                throw new IllegalArgumentException("Snapshot records must be in ascending fingerprint order");
+            }
+            lastFingerprintId = fingerprintId;
+            records++;
+            
+            out.writeByte(RECORD);
+            out.writeLong(fingerprintId);
+            int flags = (statistics.getCostedExecutions() > 0 ? FLAG_COST : 0)
+                    | (statistics.getSampleQuery() != null ? FLAG_QUERY : 0);
+            out.writeByte(flags);
+            writeVarLong(out, statistics.getInstanceCount());
+            writeVarLong(out, statistics.getSuccessCount());
+            writeVarLong(out, statistics.getFailureCount());
+            writeVarLong(out, statistics.getTotalMicros());
+            writeVarLong(out, statistics.getMaxMicros());
+            
+            // Non-empty buckets as (gap from the previous one, count)
+            long[] counts = statistics.getLatencyCounts();
+            int nonEmpty = 0;
+            for (long count : counts) {
+                if (count != 0) {
+                    nonEmpty++;
+                }
+            }
+            writeVarLong(out, nonEmpty);
+            int previous = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    writeVarLong(out, i - previous);
+                    writeVarLong(out, counts[i]);
+                    previous = i;
+                }
+            }
+            
+            if ((flags & FLAG_COST) != 0) {
+                writeVarLong(out, statistics.getCostedExecutions());
+                out.writeDouble(statistics.getTotalCost());
+                out.writeDouble(statistics.getMinCost());
+                out.writeDouble(statistics.getMaxCost());
+                writeVarLong(out, statistics.getMaxCardinality());
+            }
+            if ((flags & FLAG_QUERY) != 0) {
+                byte[] query = statistics.getSampleQuery().getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, query.length);
+                out.write(query);
+            }
+        }
+        
+        public void finish() throws IOException {
+            out.writeByte(END);
+            out.writeLong(records);
+            out.close();
+            finished = true;
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        
+        public long getRecordCount() { return records; }
+        
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+    
+    /**
+     * Streams the records of one snapshot. {@link #current()} is overwritten by every
+     * {@link #next()}, so a merge holds one record per open snapshot.
+     */
+    public static final class Reader implements AutoCloseable {
+        
+        private final Path path;
+        private final DataInputStream in;
+        private final String instanceId;
+        private final long instanceCount;
+        private final long createdAt;
+        private final FingerprintStatistics current = new FingerprintStatistics();
+        private long records;
+        private boolean exhausted;
+        
+        private Reader(Path path) throws IOException {
+            this.path = path;
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path), 8192)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path + " is not a statistics snapshot");
+                }
+                int version = in.readUnsignedShort();
+                if (version > VERSION) {
+                    throw new IOException(path + " has snapshot format version " + version
+                            + ", this build reads up to " + VERSION);
+                }
+                this.instanceId = in.readUTF();
+                this.instanceCount = readVarLong(in);
+                this.createdAt = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        
+        public boolean next() throws IOException {
+            if (exhausted) {
+                return false;
+            }
+            try {
+                int type = in.readUnsignedByte();
+                if (type == END) {
+                    if (in.readLong() != records) {
+                        throw new IOException(path + " is truncated: record count does not match");
+                    }
+                    exhausted = true;
+                    return false;
+                }
+                if (type != RECORD) {
+                    throw new IOException(path + " is corrupt: unknown record type " + type);
+                }
+                
+                long fingerprintId = in.readLong();
+                if (records > 0 && fingerprintId <= current.getFingerprintId()) {
+                    throw new IOException(path + " is corrupt: records are not in fingerprint order");
+                }
+                readRecord(fingerprintId);
+                records++;
+                return true;
+            } catch (EOFException e) {
+                throw new IOException(path + " is truncated", e);
+            }
+        }
+        
+        private void readRecord(long fingerprintId) throws IOException {
+            current.reset(fingerprintId);
+            int flags = in.readUnsignedByte();
+            current.setInstanceCount(readVarLong(in));
+            current.setSuccessCount(readVarLong(in));
+            current.setFailureCount(readVarLong(in));
+            current.setTotalMicros(readVarLong(in));
+            current.setMaxMicros(readVarLong(in));
+            
+            long[] counts = current.getLatencyCounts();
+            long nonEmpty = readVarLong(in);
+            int index = -1;
+            for (long i = 0; i < nonEmpty; i++) {
+                index += (int) readVarLong(in);
+                if (index < 0 || index >= counts.length) {
+                    throw new IOException(path + " is corrupt: histogram bucket out of range");
+                }
+                counts[index] = readVarLong(in);
+            }
+            
+            if ((flags & FLAG_COST) != 0) {
+                current.setCostedExecutions(readVarLong(in));
+                current.setTotalCost(in.readDouble());
+                current.setMinCost(in.readDouble());
+                current.setMaxCost(in.readDouble());
+                current.setMaxCardinality(readVarLong(in));
+            }
+            if ((flags & FLAG_QUERY) != 0) {
+                byte[] query = new byte[(int) readVarLong(in)];
+                in.readFully(query);
+                current.setSampleQuery(new String(query, StandardCharsets.UTF_8));
+            }
+        }
+        
+        public FingerprintStatistics current() { return current; }
+        
+        public Path getPath() { return path; }
+        
+        public String getInstanceId() { return instanceId; }
+        
+        public long getInstanceCount() { return instanceCount; }
+        
+        public long getCreatedAt() { return createdAt; }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    // Unsigned LEB128; every value written here is non-negative
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
\ No newline at end of file
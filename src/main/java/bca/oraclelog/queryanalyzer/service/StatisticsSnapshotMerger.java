@@ -0,0 +1,160 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.FingerprintStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Combines statistics snapshots of any number of instances into one fleet-wide report.
+ * Snapshots are sorted by fingerprint, so they are merged in a single streaming pass holding
+ * one record per input plus the reported statements. The merged result can be written as a
+ * snapshot again, which lets fleets be merged in stages with the same outcome.
+ */
+public class StatisticsSnapshotMerger {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsSnapshotMerger.class);
+    
+    private static final String MERGED_INSTANCE_ID = "merged";
+    
+    private final QueryDebugProperties.Snapshots settings;
+    private final QueryDebugFormatter formatter;
+    
+    public StatisticsSnapshotMerger(QueryDebugProperties.Snapshots settings, QueryDebugFormatter formatter) {
+        this.settings = settings;
+        this.formatter = formatter;
+    }
+    
+    public void run() throws IOException {
+        List<Path> inputs = expandInputs(settings.getMergeInputs());
+        if (inputs.isEmpty()) {
+            throw new IOException("No statistics snapshots found in " + settings.getMergeInputs());
+        }
+        Path report = Paths.get(settings.getMergeReport()).toAbsolutePath();
+        Path output = settings.getMergeOutput() != null ? Paths.get(settings.getMergeOutput()).toAbsolutePath() : null;
+        
+        QueryDebugProperties.RankBy rankBy = settings.getRankBy();
+        Comparator<FingerprintStatistics> order = Comparator.comparingDouble(statistics -> weight(statistics, rankBy));
+        int limit = settings.getReportTopN() > 0 ? settings.getReportTopN() : Integer.MAX_VALUE;
+        PriorityQueue<FingerprintStatistics> top = new PriorityQueue<>(order);
+        
+        List<StatisticsSnapshotFile.Reader> readers = new ArrayList<>(inputs.size());
+        StatisticsSnapshotFile.Writer writer = null;
+        long instanceCount = 0;
+        long fingerprintCount = 0;
+        try {
+            for (Path input : inputs) {
+                StatisticsSnapshotFile.Reader reader = StatisticsSnapshotFile.open(input);
+                readers.add(reader);
+                instanceCount += reader.getInstanceCount();
+            }
+            if (output != null) {
+                writer = StatisticsSnapshotFile.create(output, MERGED_INSTANCE_ID, instanceCount, System.currentTimeMillis());
+            }
+            
+            // Readers ordered by their current fingerprint; equal fingerprints come off the heap together
+            PriorityQueue<StatisticsSnapshotFile.Reader> pending = new PriorityQueue<>(Math.max(1, readers.size()),
+                    Comparator.comparingLong(reader -> reader.current().getFingerprintId()));
+            for (StatisticsSnapshotFile.Reader reader : readers) {
+                if (reader.next()) {
+                    pending.add(reader);
+                }
+            }
+            
+            FingerprintStatistics merged = new FingerprintStatistics();
+            while (!pending.isEmpty()) {
+                StatisticsSnapshotFile.Reader reader = pending.poll();
+                long fingerprintId = reader.current().getFingerprintId();
+                merged.reset(fingerprintId);
+                while (true) {
+                    merged.merge(reader.current());
+                    if (reader.next()) {
+                        pending.add(reader);
+                    }
+                    if (pending.isEmpty() || pending.peek().current().getFingerprintId() != fingerprintId) {
+                        break;
+                    }
+                    reader = pending.poll();
+                }
+                
+                fingerprintCount++;
+                if (writer != null) {
+                    writer.write(merged);
+                }
+                // Copy only what enters the heap; the accumulator is reused for the next fingerprint
+                if (top.size() < limit || order.compare(merged, top.peek()) > 0) {
+                    top.add(merged.copy());
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            
+            if (writer != null) {
+                writer.finish();
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            for (StatisticsSnapshotFile.Reader reader : readers) {
+                reader.close();
+            }
+        }
+        
+        List<FingerprintStatistics> ranked = new ArrayList<>(top);
+        ranked.sort(order.reversed());
+        String text = formatter.formatFleetReport(ranked, rankBy, inputs.size(), instanceCount, fingerprintCount);
+        Files.writeString(report, text, StandardCharsets.UTF_8);
+        logger.info("Merged {} snapshots from {} instances: {} fingerprints; report written to {}",
+                inputs.size(), instanceCount, fingerprintCount, report);
+        if (output != null) {
+            logger.info("Merged snapshot written to {}", output);
+        }
+    }
+    
+    // Directories contribute every snapshot file they contain, in name order
+    // A file named twice, directly or through its directory, would count its executions twice
+    private static List<Path> expandInputs(List<String> inputs) throws IOException {
+        Set<Path> paths = new LinkedHashSet<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input.trim()).toAbsolutePath().normalize();
+            if (!Files.isDirectory(path)) {
+                paths.add(path);
+                continue;
+            }
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(file -> file.getFileName().toString().endsWith(StatisticsSnapshotFile.EXTENSION))
+                        .map(Path::normalize)
+                        .sorted()
+                        .forEach(paths::add);
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+    
+    private static double weight(FingerprintStatistics statistics, QueryDebugProperties.RankBy rankBy) {
+        switch (rankBy) {
+            case COUNT:
+                return statistics.getExecutionCount();
+            case COST:
+                return statistics.getTotalCost();
+            case TIME:
+            default:
+                return statistics.getTotalMicros();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.FingerprintStatistics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes this instance's per-fingerprint statistics to {@code <directory>/<instance>.qstats}.
+ * Each snapshot holds everything recorded since startup and replaces the previous one,
+ * so merging the latest file of every instance counts each execution once.
+ */
+@Service
+public class StatisticsSnapshotWriter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsSnapshotWriter.class);
+    
+    private final boolean enabled;
+    private final String instanceId;
+    private final Path path;
+    private final QueryLatencyRecorder latencyRecorder;
+    private long writtenCount = -1;
+    
+    public StatisticsSnapshotWriter(QueryDebugProperties properties, QueryLatencyRecorder latencyRecorder) {
+        QueryDebugProperties.Snapshots settings = properties.getSnapshots();
+        this.enabled = settings.isEnabled();
+        this.instanceId = settings.getInstanceId() != null ? settings.getInstanceId() : defaultInstanceId();
+        this.path = Paths.get(settings.getDirectory())
+                .resolve(instanceId.replaceAll("[^A-Za-z0-9._-]", "_") + StatisticsSnapshotFile.EXTENSION)
+                .toAbsolutePath();
+        this.latencyRecorder = latencyRecorder;
+        if (enabled && !latencyRecorder.isEnabled()) {
+            logger.warn("Statistics snapshots are enabled but latency recording is not; snapshots will be empty");
+        }
+    }
+    
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+    
+    @Scheduled(fixedDelayString = "${oracle.query.debug.snapshots.write-interval:PT5M}",
+               initialDelayString = "${oracle.query.debug.snapshots.write-interval:PT5M}")
+    public void writeSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        
+        try {
+            write();
+        } catch (IOException e) {
+            logger.warn("Failed to write statistics snapshot {}: {}", path, e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void close() {
+        writeSnapshot();
+    }
+    
+    private synchronized void write() throws IOException {
+        // The previous snapshot is still current, e.g. while analysis is switched off
+        long recorded = latencyRecorder.getRecordedCount();
+        if (recorded == writtenCount) {
+            return;
+        }
+        
+        // Costs were accumulated per execution from the plan of its bind bucket, so no plan is looked up here
+        List<FingerprintStatistics> statistics = new ArrayList<>();
+        latencyRecorder.forEach((fingerprintId, latency) -> statistics.add(FingerprintStatistics.of(
+                fingerprintId, latency.getSampleQuery(), latency.getSuccessCount(), latency.getFailureCount(),
+                latency.getHistogram(), latency.getCostedCount(), latency.getTotalCost(), latency.getMinCost(),
+                latency.getMaxCost(), latency.getMaxCardinality())));
+        statistics.sort(Comparator.comparingLong(FingerprintStatistics::getFingerprintId));
+        
+        try (StatisticsSnapshotFile.Writer writer =
+                     StatisticsSnapshotFile.create(path, instanceId, 1, System.currentTimeMillis())) {
+            for (FingerprintStatistics entry : statistics) {
+                writer.write(entry);
+            }
+            writer.finish();
+        }
+        writtenCount = recorded;
+        logger.debug("Wrote statistics of {} fingerprints to {}", statistics.size(), path);
+    }
+    
+    public String getInstanceId() { return instanceId; }
+    
+    public Path getPath() { return path; }
+}
\ No newline at end of file
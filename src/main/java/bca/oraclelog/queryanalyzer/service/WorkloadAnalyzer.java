@@ -0,0 +1,474 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import bca.oraclelog.queryanalyzer.model.WorkloadStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline EXPLAIN of a captured workload. The SQL log is streamed, statements are counted
+ * per fingerprint and the first occurrence of each shape is analyzed, a chunk at a time,
+ * on a fixed set of worker threads sharing a bounded connection pool. Results are appended
+ * to a tab-separated file as chunks complete; at checkpoints the input offset, results
+ * length and execution counts are saved so an interrupted run resumes where it stopped.
+ * The sorted report is written from the results file at the end.
+ */
+public class WorkloadAnalyzer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadAnalyzer.class);
+    
+    private static final int CHECKPOINT_MAGIC = 0x51414357; // "QACW"
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final String RESULTS_HEADER =
+            "# fingerprint\tplan\tcost\tcardinality\tbytes\tcpu_cost\tio_cost\ttime\terror\tstatement\n";
+    
+    private final QueryDebugProperties.Batch settings;
+    private final OracleQueryAnalyzer queryAnalyzer;
+    private final AnalysisConnectionPool connectionPool;
+    private final QueryDebugFormatter formatter;
+    private final Path input;
+    private final Path report;
+    private final Path checkpoint;
+    private final Path results;
+    
+    // Execution count per fingerprint; a fingerprint is analyzed when it is first counted
+    private final LongCountMap executions = new LongCountMap();
+    private long statementsRead;
+    private long analyzed;
+    private long failed;
+    
+    public WorkloadAnalyzer(QueryDebugProperties.Batch settings, OracleQueryAnalyzer queryAnalyzer,
+                            AnalysisConnectionPool connectionPool, QueryDebugFormatter formatter) {
+        this.settings = settings;
+        this.queryAnalyzer = queryAnalyzer;
+        this.connectionPool = connectionPool;
+        this.formatter = formatter;
+        this.input = Paths.get(settings.getInput()).toAbsolutePath();
+        this.report = Paths.get(settings.getReport()).toAbsolutePath();
+        this.checkpoint = Paths.get(settings.getCheckpoint()).toAbsolutePath();
+        this.results = report.resolveSibling(report.getFileName() + ".results.tsv");
+    }
+    
+    public void run() throws IOException, InterruptedException {
+        long startOffset = restoreCheckpoint();
+        int parallelism = Math.max(1, settings.getParallelism());
+        int chunkSize = Math.max(1, settings.getChunkSize());
+        long checkpointIntervalNanos = settings.getCheckpointInterval().toNanos();
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "query-workload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        try (SqlLogReader reader = new SqlLogReader(input, settings.getFormat(), startOffset);
+             FileChannel out = FileChannel.open(results, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.position(out.size());
+            if (out.size() == 0) {
+                write(out, RESULTS_HEADER);
+            }
+            
+            List<String> chunk = new ArrayList<>(chunkSize);
+            long lastCheckpoint = System.nanoTime();
+            String sql;
+            while ((sql = reader.next()) != null) {
+                if (!SqlStatementClassifier.isAnalyzable(sql)) {
+                    continue;
+                }
+                statementsRead++;
+                if (executions.increment(SqlFingerprint.idOf(sql)) == 1) {
+                    chunk.add(sql);
+                }
+                
+                if (chunk.size() >= chunkSize) {
+                    analyzeChunk(chunk, executor, out);
+                    chunk.clear();
+                    // Everything read so far is analyzed and on disk, so this is a consistent resume point
+                    if (System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos) {
+                        writeCheckpoint(reader.getOffset(), out.size());
+                        lastCheckpoint = System.nanoTime();
+                        logger.info("Workload analysis: {} statements read, {} distinct, {} analyzed, {} failed",
+                                statementsRead, executions.size(), analyzed, failed);
+                    }
+                }
+            }
+            analyzeChunk(chunk, executor, out);
+            writeCheckpoint(reader.getOffset(), out.size());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        writeReport();
+        Files.deleteIfExists(checkpoint);
+        logger.info("Workload analysis finished: {} statements, {} distinct, {} analyzed, {} failed; report written to {}",
+                statementsRead, executions.size(), analyzed, failed, report);
+    }
+    
+    private void analyzeChunk(List<String> chunk, ExecutorService executor, FileChannel out)
+            throws IOException, InterruptedException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        
+        List<Future<WorkloadStatement>> futures = new ArrayList<>(chunk.size());
+        for (String sql : chunk) {
+            futures.add(executor.submit(() -> analyze(sql)));
+        }
+        
+        StringBuilder sb = new StringBuilder(chunk.size() * 256);
+        for (Future<WorkloadStatement> future : futures) {
+            WorkloadStatement statement;
+            try {
+                statement = future.get();
+            } catch (ExecutionException e) {
+                // Only a lost connection escapes analyze(); the chunk is redone on resume
+                for (Future<WorkloadStatement> pending : futures) {
+                    pending.cancel(true);
+                }
+                throw new IOException("Analysis connection failed, rerun to resume from the last checkpoint: "
+                        + e.getCause().getMessage(), e.getCause());
+            }
+            
+            if (statement.isFailed()) {
+                failed++;
+            } else {
+                analyzed++;
+            }
+            appendResult(sb, statement);
+        }
+        write(out, sb);
+        out.force(false);
+    }
+    
+    private WorkloadStatement analyze(String sql) throws SQLException {
+        SqlFingerprint fingerprint = SqlFingerprint.of(sql);
+        try (AnalysisSession session = connectionPool.acquire()) {
+            if (session == null) {
+                return WorkloadStatement.failed(fingerprint, "no analysis connection available");
+            }
+            
+            QueryExecutionSummary summary;
+            try {
+                summary = queryAnalyzer.analyzeQuery(session, sql);
+            } catch (SQLException e) {
+                if (session.isBroken()) {
+                    throw e;
+                }
+                return WorkloadStatement.failed(fingerprint, e.getMessage());
+            } catch (Exception e) {
+                return WorkloadStatement.failed(fingerprint, e.getMessage());
+            }
+            
+            return new WorkloadStatement(fingerprint.getId(), fingerprint.getNormalized(),
+                    summary.getPlanTree() != null ? summary.getPlanTree().getPlanHash() : 0,
+                    summary.getCost(), summary.getCardinality(), summary.getBytes(),
+                    summary.getCpuCost(), summary.getIoCost(), summary.getTime(), null);
+        }
+    }
+    
+    private static void appendResult(StringBuilder sb, WorkloadStatement statement) {
+        sb.append(Long.toHexString(statement.getFingerprintId())).append('\t')
+                .append(Long.toHexString(statement.getPlanHash())).append('\t')
+                .append(statement.getCost()).append('\t')
+                .append(statement.getCardinality()).append('\t')
+                .append(statement.getBytes()).append('\t')
+                .append(statement.getCpuCost()).append('\t')
+                .append(statement.getIoCost()).append('\t')
+                .append(statement.getTime()).append('\t');
+        appendEscaped(sb, statement.getError());
+        sb.append('\t');
+        appendEscaped(sb, statement.getNormalizedSql());
+        sb.append('\n');
+    }
+    
+    private static WorkloadStatement parseResult(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 10) {
+            return null;
+        }
+        return new WorkloadStatement(Long.parseUnsignedLong(fields[0], 16), unescape(fields[9]),
+                Long.parseUnsignedLong(fields[1], 16), Double.parseDouble(fields[2]), Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]), Double.parseDouble(fields[5]), Double.parseDouble(fields[6]),
+                Long.parseLong(fields[7]), fields[8].isEmpty() ? null : unescape(fields[8]));
+    }
+    
+    private static void appendEscaped(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+    
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char escaped = value.charAt(++i);
+            sb.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+        }
+        return sb.toString();
+    }
+    
+    private static void write(FileChannel out, CharSequence text) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+    
+    // Returns the input offset to start from; results beyond the checkpoint are discarded
+    private long restoreCheckpoint() throws IOException {
+        if (!Files.exists(checkpoint)) {
+            Files.deleteIfExists(results);
+            return 0;
+        }
+        
+        long offset;
+        long resultsLength;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION
+                    || !in.readUTF().equals(input.toString())) {
+                logger.warn("Checkpoint {} belongs to another run; starting over", checkpoint);
+                Files.deleteIfExists(results);
+                return 0;
+            }
+            offset = in.readLong();
+            resultsLength = in.readLong();
+            statementsRead = in.readLong();
+            analyzed = in.readLong();
+            failed = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                executions.put(in.readLong(), in.readLong());
+            }
+        }
+        
+        if (offset > Files.size(input) || !Files.exists(results) || Files.size(results) < resultsLength) {
+            logger.warn("Checkpoint {} does not match the input or results file; starting over", checkpoint);
+            executions.clear();
+            statementsRead = analyzed = failed = 0;
+            Files.deleteIfExists(results);
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(results, StandardOpenOption.WRITE)) {
+            channel.truncate(resultsLength);
+        }
+        logger.info("Resuming workload analysis of {} at byte {} with {} statements already analyzed",
+                input, offset, analyzed + failed);
+        return offset;
+    }
+    
+    private void writeCheckpoint(long offset, long resultsLength) throws IOException {
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeUTF(input.toString());
+            out.writeLong(offset);
+            out.writeLong(resultsLength);
+            out.writeLong(statementsRead);
+            out.writeLong(analyzed);
+            out.writeLong(failed);
+            executions.writeTo(out);
+        }
+        try {
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private void writeReport() throws IOException {
+        QueryDebugProperties.RankBy rankBy = settings.getRankBy();
+        Comparator<WorkloadStatement> order = Comparator.comparingDouble(statement -> weight(statement, rankBy));
+        int limit = settings.getReportTopN() > 0 ? settings.getReportTopN() : Integer.MAX_VALUE;
+        
+        // Bounded min-heap, so only the reported statements are held in memory
+        PriorityQueue<WorkloadStatement> top = new PriorityQueue<>(order);
+        try (BufferedReader in = Files.newBufferedReader(results, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Workload report interrupted");
+                }
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                WorkloadStatement statement = parseResult(line);
+                if (statement == null) {
+                    continue;
+                }
+                statement.setExecutions(executions.get(statement.getFingerprintId()));
+                top.add(statement);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+        
+        List<WorkloadStatement> ranked = new ArrayList<>(top);
+        ranked.sort(order.reversed());
+        String text = formatter.formatWorkloadReport(ranked, rankBy, input.toString(),
+                statementsRead, executions.size(), analyzed, failed);
+        Files.writeString(report, text, StandardCharsets.UTF_8);
+    }
+    
+    private static double weight(WorkloadStatement statement, QueryDebugProperties.RankBy rankBy) {
+        switch (rankBy) {
+            case COUNT:
+                return statement.getExecutions();
+            case TIME:
+                return (double) statement.getTime() * statement.getExecutions();
+            case COST:
+            default:
+                return statement.getCost() * statement.getExecutions();
+        }
+    }
+    
+    /**
+     * Open-addressing map from fingerprint id to count. Hundreds of thousands of distinct
+     * statements cost two long arrays instead of a boxed entry each.
+     */
+    static final class LongCountMap {
+        
+        private long[] keys = new long[1024];
+        private long[] counts = new long[1024];
+        private int size;
+        // Zero marks an empty slot, so the zero key is counted on the side
+        private long zeroCount;
+        
+        long increment(long key) {
+            if (key == 0) {
+                return ++zeroCount;
+            }
+            int slot = find(key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                size++;
+                if (size * 4 > keys.length * 3) {
+                    grow();
+                    slot = find(key);
+                }
+            }
+            return ++counts[slot];
+        }
+        
+        void put(long key, long count) {
+            if (key == 0) {
+                zeroCount = count;
+                return;
+            }
+            int slot = find(key);
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                size++;
+                if (size * 4 > keys.length * 3) {
+                    grow();
+                    slot = find(key);
+                }
+            }
+            counts[slot] = count;
+        }
+        
+        long get(long key) {
+            if (key == 0) {
+                return zeroCount;
+            }
+            int slot = find(key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+        
+        int size() {
+            return size + (zeroCount > 0 ? 1 : 0);
+        }
+        
+        void clear() {
+            keys = new long[1024];
+            counts = new long[1024];
+            size = 0;
+            zeroCount = 0;
+        }
+        
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size());
+            if (zeroCount > 0) {
+                out.writeLong(0);
+                out.writeLong(zeroCount);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    out.writeLong(keys[i]);
+                    out.writeLong(counts[i]);
+                }
+            }
+        }
+        
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+        
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
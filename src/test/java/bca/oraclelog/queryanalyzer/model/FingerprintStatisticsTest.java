@@ -0,0 +1,93 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintStatisticsTest {
+    
+    @Test
+    void mergesToTheSameResultWhateverTheGrouping() {
+        FingerprintStatistics a = instance(1, 5, 120, 3, 40.0, 10.0, 12.0, 500);
+        FingerprintStatistics b = instance(20, 0, 3_000, 0, 0, Double.NaN, Double.NaN, 0);
+        FingerprintStatistics c = instance(7, 2, 45_000, 9, 63.0, 6.0, 8.0, 9_000);
+        
+        FingerprintStatistics left = a.copy();
+        left.merge(b);
+        left.merge(c);
+        
+        FingerprintStatistics bc = b.copy();
+        bc.merge(c);
+        FingerprintStatistics right = a.copy();
+        right.merge(bc);
+        
+        FingerprintStatistics reversed = c.copy();
+        reversed.merge(b);
+        reversed.merge(a);
+        
+        assertSameStatistics(left, right);
+        assertSameStatistics(left, reversed);
+        assertEquals(3, left.getInstanceCount());
+        assertEquals(35, left.getExecutionCount());
+        assertEquals(12, left.getCostedExecutions());
+        assertEquals(103.0, left.getTotalCost());
+        assertEquals(6.0, left.getMinCost());
+        assertEquals(12.0, left.getMaxCost());
+        assertEquals(9_000, left.getMaxCardinality());
+    }
+    
+    @Test
+    void keepsCostsUnknownUntilAnInstanceReportsOne() {
+        FingerprintStatistics merged = instance(3, 0, 100, 0, 0, Double.NaN, Double.NaN, 0);
+        merged.merge(instance(4, 0, 100, 0, 0, Double.NaN, Double.NaN, 0));
+        assertTrue(Double.isNaN(merged.getMinCost()));
+        assertEquals(0, merged.getAverageCost());
+        
+        merged.merge(instance(2, 0, 100, 2, 30.0, 15.0, 15.0, 1));
+        assertEquals(15.0, merged.getMinCost());
+        assertEquals(15.0, merged.getMaxCost());
+        assertEquals(15.0, merged.getAverageCost());
+    }
+    
+    @Test
+    void takesPercentilesFromTheMergedHistogram() {
+        FingerprintStatistics fast = instance(99, 0, 100, 0, 0, Double.NaN, Double.NaN, 0);
+        FingerprintStatistics slow = instance(1, 0, 1_000_000, 0, 0, Double.NaN, Double.NaN, 0);
+        fast.merge(slow);
+        
+        // Within the histogram's 1/32 relative bucket width of the fast executions
+        long median = fast.getPercentileMicros(50);
+        assertTrue(median >= 100 && median <= 100 + 100 / 32, "p50 " + median);
+        assertEquals(1_000_000, fast.getPercentileMicros(100));
+    }
+    
+    // One instance that ran the statement successes + failures times, each taking the given micros
+    private static FingerprintStatistics instance(long successes, long failures, long micros, long costed,
+                                                  double totalCost, double minCost, double maxCost,
+                                                  long maxCardinality) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 0; i < successes + failures; i++) {
+            histogram.recordMicros(micros);
+        }
+        return FingerprintStatistics.of(42, "select 1 from dual", successes, failures, histogram, costed, totalCost,
+                minCost, maxCost, maxCardinality);
+    }
+    
+    private static void assertSameStatistics(FingerprintStatistics expected, FingerprintStatistics actual) {
+        assertEquals(expected.getFingerprintId(), actual.getFingerprintId());
+        assertEquals(expected.getSampleQuery(), actual.getSampleQuery());
+        assertEquals(expected.getInstanceCount(), actual.getInstanceCount());
+        assertEquals(expected.getSuccessCount(), actual.getSuccessCount());
+        assertEquals(expected.getFailureCount(), actual.getFailureCount());
+        assertArrayEquals(expected.getLatencyCounts(), actual.getLatencyCounts());
+        assertEquals(expected.getTotalMicros(), actual.getTotalMicros());
+        assertEquals(expected.getMaxMicros(), actual.getMaxMicros());
+        assertEquals(expected.getCostedExecutions(), actual.getCostedExecutions());
+        assertEquals(expected.getTotalCost(), actual.getTotalCost());
+        assertEquals(expected.getMinCost(), actual.getMinCost());
+        assertEquals(expected.getMaxCost(), actual.getMaxCost());
+        assertEquals(expected.getMaxCardinality(), actual.getMaxCardinality());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    
+    @Test
+    void bucketsTileTheTrackableRangeWithoutGaps() {
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.bucketUpperBound(0));
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.bucketUpperBound(i - 1) + 1;
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertTrue(upper >= lower, "bucket " + i);
+            assertEquals(i, LatencyHistogram.bucketIndex(lower), "lowest value of bucket " + i);
+            assertEquals(i, LatencyHistogram.bucketIndex(upper), "highest value of bucket " + i);
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MICROS,
+                LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+    
+    @Test
+    void keepsEveryValueWithinAThirtySecondOfItsBucketBound() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (32 + random.nextInt(32));
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(upper >= value && upper - value <= value / 32, "value " + value + ", bound " + upper);
+        }
+    }
+    
+    @Test
+    void clampsOutOfRangeValuesAndReportsPercentilesWithinTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+        for (int i = 0; i < 98; i++) {
+            histogram.recordMicros(1_000);
+        }
+        
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getCountAt(0));
+        assertEquals(1, histogram.getCountAt(LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MICROS, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(1));
+        long median = histogram.getPercentileMicros(50);
+        assertTrue(median >= 1_000 && median <= 1_000 + 1_000 / 32, "p50 " + median);
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MICROS, histogram.getPercentileMicros(100));
+        
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(histogram);
+        merged.add(histogram);
+        assertEquals(200, merged.getCount());
+        assertEquals(2 * histogram.getTotalMicros(), merged.getTotalMicros());
+        assertEquals(histogram.getMaxMicros(), merged.getMaxMicros());
+    }
+}
\ No newline at end of file
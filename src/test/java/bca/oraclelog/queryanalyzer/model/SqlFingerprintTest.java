@@ -0,0 +1,65 @@
+package bca.oraclelog.queryanalyzer.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlFingerprintTest {
+    
+    @Test
+    void replacesStringAndNumericLiterals() {
+        assertEquals("SELECT * FROM T WHERE NAME = ? AND ID = ? AND RATE > ? AND X < ?",
+                normalize("select * from t where name = 'O''Brien' and id = 42 and rate > 1.5e-3 and x < .5"));
+        // Digits inside identifiers and bind placeholders are not literals
+        assertEquals("SELECT COL_2, T1.A FROM T1 WHERE B = :P1",
+                normalize("select col_2, t1.a from t1 where b = :p1"));
+    }
+    
+    @Test
+    void dropsCommentsButKeepsHints() {
+        assertEquals("SELECT /*+ INDEX(T T_IDX) */ A FROM T",
+                normalize("select /*+ index(t  t_idx) */ a -- trailing\n from /* plain */ t"));
+        assertEquals(SqlFingerprint.idOf("select a from t"), SqlFingerprint.idOf("/* caller */ select a from t"));
+    }
+    
+    @Test
+    void collapsesWhitespaceAndCaseOutsideQuotedIdentifiers() {
+        assertEquals("SELECT \"MixedCase\" FROM T", normalize("  SELECT\t\"MixedCase\"\n\n  from   t  "));
+        assertNotEquals(SqlFingerprint.idOf("select \"a\" from t"), SqlFingerprint.idOf("select \"A\" from t"));
+    }
+    
+    @Test
+    void inListsOfTheSameLengthShareAFingerprint() {
+        assertEquals("SELECT * FROM T WHERE ID IN (?, ?, ?)", normalize("select * from t where id in (1, 2, 3)"));
+        assertEquals(SqlFingerprint.idOf("select * from t where id in (1, 2, 3)"),
+                SqlFingerprint.idOf("select * from t where id in ('a', 'b', 7)"));
+        // Each length is its own statement shape, as it is for the optimizer
+        assertNotEquals(SqlFingerprint.idOf("select * from t where id in (1, 2)"),
+                SqlFingerprint.idOf("select * from t where id in (1, 2, 3)"));
+    }
+    
+    @Test
+    void idOfMatchesTheIdOfTheNormalizedFingerprint() {
+        String sql = "select /*+ full(t) */ a, 'x' from t where b = 10 -- note";
+        assertEquals(SqlFingerprint.of(sql).getId(), SqlFingerprint.idOf(sql));
+        assertEquals(16, SqlFingerprint.of(sql).getIdHex().length());
+    }
+    
+    @Test
+    void matchesComparesTheNormalizedText() {
+        SqlFingerprint fingerprint = SqlFingerprint.of("select a from t where id = 1");
+        assertTrue(fingerprint.matches("SELECT a\n  FROM t WHERE id = 99"));
+        assertFalse(fingerprint.matches("select b from t where id = 1"));
+        assertFalse(fingerprint.matches("select a from t where id = 1 and x = 2"));
+        assertFalse(fingerprint.matches("select a from t"));
+        // A colliding id alone is not enough
+        assertFalse(SqlFingerprint.restore("SELECT B FROM T", fingerprint.getId()).matches("select a from t"));
+    }
+    
+    private static String normalize(String sql) {
+        return SqlFingerprint.of(sql).getNormalized();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CircuitStateChange.State;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisCircuitBreakerTest {
+    
+    // Windows only roll when the test rolls them, and an open circuit may probe at the next roll
+    private static AnalysisCircuitBreaker breaker() {
+        QueryDebugProperties properties = new QueryDebugProperties();
+        QueryDebugProperties.CircuitBreaker settings = properties.getCircuitBreaker();
+        settings.setEnabled(true);
+        settings.setWindow(Duration.ofHours(1));
+        settings.setOpenDuration(Duration.ZERO);
+        settings.setMaxAnalysisTimePerSecond(Duration.ZERO);
+        settings.setMinimumAnalyses(5);
+        settings.setHalfOpenProbes(3);
+        settings.setRampSteps(2);
+        return new AnalysisCircuitBreaker(properties);
+    }
+    
+    @Test
+    void opensOnTheErrorRateOnlyOnceEnoughAnalysesRan() {
+        AnalysisCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.recordAnalysis(1_000, false);
+        }
+        breaker.rollWindow();
+        assertEquals(State.CLOSED, breaker.getState());
+        
+        for (int i = 0; i < 5; i++) {
+            breaker.recordAnalysis(1_000, i == 0);
+        }
+        breaker.rollWindow();
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allowAnalysis());
+    }
+    
+    @Test
+    void reopensOnASingleFailedProbe() {
+        AnalysisCircuitBreaker breaker = openedBreaker();
+        breaker.rollWindow();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        
+        assertTrue(breaker.allowAnalysis());
+        breaker.recordAnalysis(1_000, false);
+        breaker.rollWindow();
+        assertEquals(State.OPEN, breaker.getState());
+    }
+    
+    @Test
+    void closesOnlyOnceEveryProbeSucceededAndThenRampsUp() {
+        AnalysisCircuitBreaker breaker = openedBreaker();
+        breaker.rollWindow();
+        
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowAnalysis());
+        }
+        assertFalse(breaker.allowAnalysis());
+        
+        // Probes finishing over several windows keep the circuit half-open until the last one
+        breaker.recordAnalysis(1_000, true);
+        breaker.rollWindow();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.rollWindow();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.recordAnalysis(1_000, true);
+        breaker.recordAnalysis(1_000, true);
+        breaker.rollWindow();
+        assertEquals(State.CLOSED, breaker.getState());
+        
+        assertEquals(1, admittedOutOf(breaker, 4));
+        breaker.rollWindow();
+        assertEquals(2, admittedOutOf(breaker, 4));
+        breaker.rollWindow();
+        assertEquals(4, admittedOutOf(breaker, 4));
+    }
+    
+    @Test
+    void judgesOverheadOnlyWithEnoughApplicationTraffic() {
+        AnalysisCircuitBreaker breaker = breaker();
+        // Analysis far over 10% of query time, but too few queries in the window
+        for (int i = 0; i < 10; i++) {
+            breaker.recordQueryTime(1_000_000);
+            breaker.recordAnalysis(10_000_000, true);
+        }
+        breaker.rollWindow();
+        assertEquals(State.CLOSED, breaker.getState());
+        
+        for (int i = 0; i < 200; i++) {
+            breaker.recordQueryTime(10_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            breaker.recordAnalysis(30_000_000, true);
+        }
+        breaker.rollWindow();
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(State.OPEN, breaker.getHistory().get(0).getTo());
+    }
+    
+    private static AnalysisCircuitBreaker openedBreaker() {
+        AnalysisCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 5; i++) {
+            breaker.recordAnalysis(1_000, false);
+        }
+        breaker.rollWindow();
+        assertEquals(State.OPEN, breaker.getState());
+        return breaker;
+    }
+    
+    private static int admittedOutOf(AnalysisCircuitBreaker breaker, int attempts) {
+        int admitted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (breaker.allowAnalysis()) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+}
\ No newline at end of file
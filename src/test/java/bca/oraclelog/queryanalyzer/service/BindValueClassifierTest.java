@@ -0,0 +1,134 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.BindBucket;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BindValueClassifierTest {
+    
+    private final QueryDebugProperties.Binds settings = new QueryDebugProperties().getBinds();
+    
+    @Test
+    void writesStringsAsQuotedLiteralsWithDoubledQuotes() {
+        assertEquals("'O''Brien'", BindValueClassifier.toLiteral("O'Brien", 100));
+        assertEquals("''''", BindValueClassifier.toLiteral("'", 100));
+        assertEquals("'x'", BindValueClassifier.toLiteral('x', 100));
+        // Too long to be worth a literal; the parameter stays a placeholder
+        assertNull(BindValueClassifier.toLiteral("abcdef", 5));
+    }
+    
+    @Test
+    void writesNumbersInPlainNotation() {
+        assertEquals("42", BindValueClassifier.toLiteral(42, 100));
+        assertEquals("-7", BindValueClassifier.toLiteral(-7L, 100));
+        assertEquals("1000", BindValueClassifier.toLiteral(new BigDecimal("1E+3"), 100));
+        assertEquals("0.00000015", BindValueClassifier.toLiteral(1.5e-7, 100));
+        assertEquals("-2.5", BindValueClassifier.toLiteral(-2.5f, 100));
+        assertEquals("1", BindValueClassifier.toLiteral(true, 100));
+        assertEquals("0", BindValueClassifier.toLiteral(false, 100));
+        assertNull(BindValueClassifier.toLiteral(Double.NaN, 100));
+        assertNull(BindValueClassifier.toLiteral(Double.NEGATIVE_INFINITY, 100));
+    }
+    
+    @Test
+    void writesDatesAndTimestampsAsAnsiLiterals() {
+        assertEquals("TIMESTAMP '2024-01-02 03:04:05.5'",
+                BindValueClassifier.toLiteral(Timestamp.valueOf("2024-01-02 03:04:05.5"), 100));
+        assertEquals("TIMESTAMP '2024-01-02 03:04:05.0'",
+                BindValueClassifier.toLiteral(LocalDateTime.of(2024, 1, 2, 3, 4, 5), 100));
+        assertEquals("DATE '2024-01-02'", BindValueClassifier.toLiteral(java.sql.Date.valueOf("2024-01-02"), 100));
+        assertEquals("DATE '2024-01-02'", BindValueClassifier.toLiteral(LocalDate.of(2024, 1, 2), 100));
+        Date date = Timestamp.valueOf("2024-01-02 03:04:05");
+        assertEquals("TIMESTAMP '2024-01-02 03:04:05.0'",
+                BindValueClassifier.toLiteral(new Date(date.getTime()), 100));
+    }
+    
+    @Test
+    void leavesNullsAndUnsupportedTypesAsPlaceholders() {
+        assertNull(BindValueClassifier.toLiteral(null, 100));
+        assertNull(BindValueClassifier.toLiteral(Time.valueOf("03:04:05"), 100));
+        assertNull(BindValueClassifier.toLiteral(new byte[] {1, 2}, 100));
+    }
+    
+    @Test
+    void bucketsByMagnitudeLengthWildcardsAndAge() {
+        Instant threeDaysAgo = Instant.now().minus(Duration.ofDays(3));
+        BindBucket bucket = classify(set(1, 150), set(2, "%smith"), set(3, "A"), set(4, threeDaysAgo), set(5, -0.5));
+        
+        assertEquals(":1=num:1e2, :2=str:%4-7, :3=str:=" + Integer.toHexString("A".hashCode())
+                + ", :4=time:week, :5=num:-1e-1", bucket.getLabel());
+        assertArrayEquals(new String[] {"150", "'%smith'", "'A'", null, "-0.5"}, bucket.getLiterals());
+        
+        // Same classes, other values: same bucket
+        assertEquals(bucket.getId(), classify(set(1, 999), set(2, "%jones"), set(3, "A"),
+                set(4, threeDaysAgo.minusSeconds(60)), set(5, -0.9)).getId());
+        // A different magnitude or short code: another bucket
+        assertNotEquals(bucket.getId(), classify(set(1, 15), set(2, "%smith"), set(3, "A"),
+                set(4, threeDaysAgo), set(5, -0.5)).getId());
+        assertNotEquals(bucket.getId(), classify(set(1, 150), set(2, "%smith"), set(3, "B"),
+                set(4, threeDaysAgo), set(5, -0.5)).getId());
+    }
+    
+    @Test
+    void givesNoBucketWithoutBindsOrWithANullAmongThem() {
+        assertNull(BindValueClassifier.classify(null, settings));
+        assertNull(BindValueClassifier.classify(new ArrayList<>(), settings));
+        assertNull(classify(set(1, 150), setNull(2)));
+        assertNull(classify(set(1, 150), set(2, null)));
+    }
+    
+    @Test
+    void onlyClassifiesTheLeadingParameters() {
+        settings.setMaxParameters(1);
+        
+        BindBucket bucket = classify(set(1, 150), set(2, "ignored"));
+        assertEquals(":1=num:1e2", bucket.getLabel());
+        assertArrayEquals(new String[] {"150"}, bucket.getLiterals());
+    }
+    
+    @SafeVarargs
+    private BindBucket classify(List<ParameterSetOperation>... parameterSets) {
+        List<ParameterSetOperation> parameters = new ArrayList<>();
+        for (List<ParameterSetOperation> set : parameterSets) {
+            parameters.addAll(set);
+        }
+        List<List<ParameterSetOperation>> parametersList = new ArrayList<>();
+        parametersList.add(parameters);
+        return BindValueClassifier.classify(parametersList, settings);
+    }
+    
+    private static List<ParameterSetOperation> set(int position, Object value) {
+        return List.of(operation("setObject", new Class<?>[] {int.class, Object.class}, position, value));
+    }
+    
+    private static List<ParameterSetOperation> setNull(int position) {
+        return List.of(operation("setNull", new Class<?>[] {int.class, int.class}, position, Types.VARCHAR));
+    }
+    
+    private static ParameterSetOperation operation(String name, Class<?>[] types, Object... args) {
+        try {
+            return new ParameterSetOperation(PreparedStatement.class.getMethod(name, types), args);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.CallSite;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallSiteResolverTest {
+    
+    private final QueryDebugProperties properties = new QueryDebugProperties();
+    private final QueryDebugProperties.CallSites settings = properties.getCallSites();
+    
+    CallSiteResolverTest() {
+        // This class stands in for the application, so the analyzer packages must not cover it
+        settings.setAnalyzerPackages(List.of());
+        settings.getFrameworkPackages().add(Framework.class.getName());
+    }
+    
+    @Test
+    void resolvesTheCallingApplicationMethod() {
+        CallSite callSite = new CallSiteResolver(properties).resolve();
+        
+        assertNotNull(callSite);
+        assertEquals(CallSiteResolverTest.class.getName(), callSite.getClassName());
+        assertEquals("resolvesTheCallingApplicationMethod", callSite.getMethodName());
+        assertEquals("CallSiteResolverTest.java", callSite.getFileName());
+        assertTrue(callSite.getLineNumber() > 0);
+    }
+    
+    @Test
+    void looksPastProxiesLambdasAndFrameworkFrames() {
+        CallSiteResolver resolver = new CallSiteResolver(properties);
+        
+        CallSite callSite = Framework.callThroughProxy(resolver);
+        
+        assertNotNull(callSite);
+        assertEquals(CallSiteResolverTest.class.getName(), callSite.getClassName());
+        assertEquals("looksPastProxiesLambdasAndFrameworkFrames", callSite.getMethodName());
+    }
+    
+    @Test
+    void internsEachFrameOnce() {
+        CallSiteResolver resolver = new CallSiteResolver(properties);
+        
+        CallSite[] resolved = new CallSite[2];
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = resolver.resolve();
+        }
+        CallSite elsewhere = resolver.resolve();
+        
+        assertSame(resolved[0], resolved[1]);
+        assertNotSame(resolved[0], elsewhere);
+        assertTrue(elsewhere.getLineNumber() > resolved[0].getLineNumber());
+        assertEquals(2, resolver.getCallSiteCount());
+    }
+    
+    @Test
+    void stopsAddingCallSitesAtTheLimit() {
+        settings.setMaxCallSites(1);
+        CallSiteResolver resolver = new CallSiteResolver(properties);
+        
+        CallSite first = resolver.resolve();
+        CallSite second = resolver.resolve();
+        
+        assertNotNull(first);
+        assertNull(second);
+        assertEquals(1, resolver.getCallSiteCount());
+        assertEquals(1, resolver.getUnresolvedCount());
+    }
+    
+    @Test
+    void returnsNullWhenEveryFrameIsFrameworkCode() {
+        settings.getFrameworkPackages().add("");
+        CallSiteResolver resolver = new CallSiteResolver(properties);
+        
+        assertNull(resolver.resolve());
+        assertEquals(1, resolver.getUnresolvedCount());
+    }
+    
+    // Stands in for a framework: a JDK proxy whose handler calls into the resolver from a lambda
+    static final class Framework {
+        
+        @SuppressWarnings("unchecked")
+        static CallSite callThroughProxy(CallSiteResolver resolver) {
+            Supplier<CallSite> lookup = resolver::resolve;
+            Supplier<CallSite> proxy = (Supplier<CallSite>) Proxy.newProxyInstance(Framework.class.getClassLoader(),
+                    new Class<?>[] {Supplier.class}, (target, method, args) -> lookup.get());
+            return proxy.get();
+        }
+    }
+}
\ No newline at end of file
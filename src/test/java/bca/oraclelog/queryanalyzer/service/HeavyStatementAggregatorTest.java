@@ -0,0 +1,122 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import bca.oraclelog.queryanalyzer.model.StatementAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyStatementAggregatorTest {
+    
+    private static final int CAPACITY = 20;
+    
+    // One bucket spanning the whole test, so no rollover interferes
+    private static HeavyStatementAggregator aggregator(QueryDebugProperties.RankBy rankBy) {
+        QueryDebugProperties properties = new QueryDebugProperties();
+        QueryDebugProperties.TopStatements settings = properties.getTopStatements();
+        settings.setEnabled(true);
+        settings.setRankBy(rankBy);
+        settings.setCapacity(CAPACITY);
+        settings.setBuckets(1);
+        settings.setBucketDuration(Duration.ofDays(3650));
+        return new HeavyStatementAggregator(properties, new QueryDebugFormatter());
+    }
+    
+    private static QueryExecutionSummary summary(long fingerprintId, double cost) {
+        QueryExecutionSummary summary = new QueryExecutionSummary();
+        summary.setFingerprint(SqlFingerprint.restore("select " + fingerprintId, fingerprintId));
+        summary.setCost(cost);
+        return summary;
+    }
+    
+    @Test
+    void countsExactlyWhileUnderCapacity() {
+        HeavyStatementAggregator aggregator = aggregator(QueryDebugProperties.RankBy.COUNT);
+        for (long id = 1; id <= CAPACITY; id++) {
+            for (int i = 0; i < id; i++) {
+                aggregator.record(summary(id, 1));
+            }
+        }
+        
+        List<StatementAggregate> top = aggregator.topStatements(CAPACITY);
+        assertEquals(CAPACITY, top.size());
+        for (int rank = 0; rank < top.size(); rank++) {
+            StatementAggregate statement = top.get(rank);
+            assertEquals(CAPACITY - rank, statement.getFingerprintId());
+            assertEquals(statement.getFingerprintId(), statement.getCount());
+            assertEquals(0, statement.getError());
+        }
+    }
+    
+    @Test
+    void keepsSpaceSavingBoundsUnderChurn() {
+        HeavyStatementAggregator aggregator = aggregator(QueryDebugProperties.RankBy.COUNT);
+        Map<Long, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        int total = 50_000;
+        for (int i = 0; i < total; i++) {
+            // A few heavy statements in a long tail of one-off shapes
+            long id = random.nextInt(4) == 0 ? 1 + random.nextInt(5) : 1000 + random.nextInt(100_000);
+            exact.merge(id, 1L, Long::sum);
+            aggregator.record(summary(id, 1));
+        }
+        
+        List<StatementAggregate> top = aggregator.topStatements(CAPACITY);
+        Map<Long, StatementAggregate> tracked = new HashMap<>();
+        for (StatementAggregate statement : top) {
+            tracked.put(statement.getFingerprintId(), statement);
+            long count = exact.get(statement.getFingerprintId());
+            // The estimate never undercounts and overcounts by at most the inherited error
+            assertTrue(statement.getWeight() >= count);
+            assertTrue(statement.getWeight() - statement.getError() <= count);
+            assertTrue(statement.getError() <= (double) total / CAPACITY);
+        }
+        // Every statement above N / capacity is guaranteed to be tracked
+        for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+            if (entry.getValue() > total / CAPACITY) {
+                assertTrue(tracked.containsKey(entry.getKey()), "missing heavy statement " + entry.getKey());
+            }
+        }
+        for (long id = 1; id <= 5; id++) {
+            assertTrue(tracked.containsKey(id));
+        }
+    }
+    
+    @Test
+    void weightedReplacementEvictsTheLightestCounter() {
+        HeavyStatementAggregator aggregator = aggregator(QueryDebugProperties.RankBy.COST);
+        for (long id = 1; id <= CAPACITY; id++) {
+            aggregator.record(summary(id, id * 10));
+        }
+        // Statement 1 (weight 10) is the lightest; the newcomer inherits its weight as error
+        aggregator.record(summary(500, 1));
+        
+        Map<Long, StatementAggregate> tracked = new HashMap<>();
+        for (StatementAggregate statement : aggregator.topStatements(CAPACITY)) {
+            tracked.put(statement.getFingerprintId(), statement);
+        }
+        assertEquals(CAPACITY, tracked.size());
+        assertTrue(!tracked.containsKey(1L));
+        assertEquals(11, tracked.get(500L).getWeight());
+        assertEquals(10, tracked.get(500L).getError());
+        
+        // The newcomer is now the lightest and is the next to go
+        aggregator.record(summary(501, 1));
+        tracked.clear();
+        for (StatementAggregate statement : aggregator.topStatements(CAPACITY)) {
+            tracked.put(statement.getFingerprintId(), statement);
+        }
+        assertTrue(!tracked.containsKey(500L));
+        assertTrue(tracked.containsKey(2L));
+        assertEquals(12, tracked.get(501L).getWeight());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class OracleQueryAnalyzerTest {
+    
+    @Test
+    void numbersJdbcPlaceholders() {
+        assertEquals("select * from t where a = :1 and b in (:2, :3)",
+                OracleQueryAnalyzer.toExplainableSql("select * from t where a = ? and b in (?, ?)"));
+        String noBinds = "select 1 from dual";
+        assertSame(noBinds, OracleQueryAnalyzer.toExplainableSql(noBinds));
+    }
+    
+    @Test
+    void leavesQuestionMarksInLiteralsIdentifiersAndCommentsAlone() {
+        assertEquals("select 'why?', \"odd?col\" from t /* really? */ where a = :1 -- ok?\n and b = :2",
+                OracleQueryAnalyzer.toExplainableSql(
+                        "select 'why?', \"odd?col\" from t /* really? */ where a = ? -- ok?\n and b = ?"));
+        assertEquals("select 'it''s?' from t where a = :1",
+                OracleQueryAnalyzer.toExplainableSql("select 'it''s?' from t where a = ?"));
+    }
+    
+    @Test
+    void substitutesBindLiteralsAndKeepsPlaceholdersForTheRest() {
+        String[] literals = {"'O''Brien'", null, "DATE '2024-01-02'"};
+        assertEquals("select * from t where name = 'O''Brien' and id = :2 and day = DATE '2024-01-02' and x = :4",
+                OracleQueryAnalyzer.toExplainableSql(
+                        "select * from t where name = ? and id = ? and day = ? and x = ?", literals));
+    }
+    
+    @Test
+    void parenthesizesNegativeLiteralsSoTheyCannotStartAComment() {
+        assertEquals("select a -(-5) from t where b = (-0.5)",
+                OracleQueryAnalyzer.toExplainableSql("select a -? from t where b = ?", new String[] {"-5", "-0.5"}));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.ExecutionPlanTree;
+import bca.oraclelog.queryanalyzer.model.PlanRegressionEvent;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanStoreTest {
+    
+    private static final String ORDERS = "select * from orders where id = 1";
+    private static final String CUSTOMERS = "select * from customers where name = 'x'";
+    
+    @TempDir
+    Path dir;
+    
+    private final QueryDebugProperties properties = new QueryDebugProperties();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    
+    @Test
+    void warmsTheCacheWithThePlansStoredBefore() {
+        PlanStore store = open(new QueryPlanCache(properties));
+        store.record(plan(ORDERS, "FULL", 100));
+        store.record(plan(CUSTOMERS, "BY INDEX ROWID", 20));
+        store.close();
+        
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        PlanStore reopened = open(cache);
+        awaitWarmed(cache, SqlFingerprint.idOf(CUSTOMERS));
+        reopened.close();
+        
+        assertEquals(2, reopened.getStoredPlanCount());
+        QueryExecutionSummary orders = cache.peek(SqlFingerprint.idOf(ORDERS));
+        assertNotNull(orders);
+        assertEquals(100, orders.getCost());
+        assertEquals(SqlFingerprint.of(ORDERS).getNormalized(), orders.getFingerprint().getNormalized());
+        assertEquals(plan(ORDERS, "FULL", 100).getPlanTree().getPlanHash(), orders.getPlanTree().getPlanHash());
+        assertEquals("FULL", orders.getPlanTree().getOptions(1));
+    }
+    
+    @Test
+    void truncatesATornTailAndKeepsAppendingAfterTheLastIntactRecord() throws IOException {
+        PlanStore store = open(new QueryPlanCache(properties));
+        store.record(plan(ORDERS, "FULL", 100));
+        store.close();
+        long intactSize = Files.size(storePath());
+        // A length announcing more bytes than follow, as left by a crash mid-write
+        Files.write(storePath(), new byte[] {0, 0, 0, 64, 1, 2, 3}, StandardOpenOption.APPEND);
+        
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        PlanStore reopened = open(cache);
+        awaitWarmed(cache, SqlFingerprint.idOf(ORDERS));
+        assertEquals(intactSize, Files.size(storePath()));
+        reopened.record(plan(CUSTOMERS, "FULL", 20));
+        reopened.close();
+        
+        QueryPlanCache reloaded = new QueryPlanCache(properties);
+        PlanStore again = open(reloaded);
+        awaitWarmed(reloaded, SqlFingerprint.idOf(CUSTOMERS));
+        again.close();
+        assertEquals(2, again.getStoredPlanCount());
+    }
+    
+    @Test
+    void skipsRecordsThatCannotBeDecodedWhenWarmingTheCache() throws IOException {
+        PlanStore store = open(new QueryPlanCache(properties));
+        store.record(plan(ORDERS, "FULL", 100));
+        store.close();
+        // Checksummed key fields followed by a plan body that ends too early
+        ByteBuffer payload = ByteBuffer.allocate(40).putLong(42).putLong(7).putLong(System.currentTimeMillis())
+                .putDouble(50).putLong(1);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        ByteBuffer record = ByteBuffer.allocate(48).putInt(40).putInt((int) crc.getValue()).put(payload.array());
+        Files.write(storePath(), record.array(), StandardOpenOption.APPEND);
+        
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        PlanStore reopened = open(cache);
+        awaitWarmed(cache, SqlFingerprint.idOf(ORDERS));
+        reopened.record(plan(CUSTOMERS, "FULL", 20));
+        reopened.close();
+        
+        assertEquals(3, reopened.getStoredPlanCount());
+        assertEquals(1, reopened.getWrittenCount());
+        assertNull(cache.peek(42));
+    }
+    
+    @Test
+    void compactsTheFileOnceItHoldsMostlySupersededRecords() throws IOException {
+        // Every execution of an unchanged plan is written again
+        properties.getStore().setRefreshInterval(Duration.ZERO);
+        PlanStore store = open(new QueryPlanCache(properties));
+        store.record(plan(ORDERS, "FULL", 100));
+        store.close();
+        long recordSize = Files.size(storePath()) - 8;
+        
+        PlanStore reopened = open(new QueryPlanCache(properties));
+        for (int i = 0; i < 300; i++) {
+            reopened.record(plan(ORDERS, "FULL", 100));
+        }
+        reopened.close();
+        
+        assertEquals(301, store.getWrittenCount() + reopened.getWrittenCount());
+        assertTrue(Files.size(storePath()) <= 8 + 65 * recordSize, "file was not compacted");
+        assertFalse(Files.exists(dir.resolve("plans.qps.compact")));
+        PlanStore again = open(new QueryPlanCache(properties));
+        again.close();
+        assertEquals(1, again.getStoredPlanCount());
+    }
+    
+    @Test
+    void raisesAnEventWhenThePlanOrItsCostChanges() {
+        PlanStore store = open(new QueryPlanCache(properties));
+        store.record(plan(ORDERS, "FULL", 100));
+        await(() -> store.getWrittenCount() == 1);
+        store.record(plan(ORDERS, "BY INDEX ROWID", 100));
+        await(() -> store.getWrittenCount() == 2);
+        // Above the default threshold of half the stored cost, then within it
+        store.record(plan(ORDERS, "BY INDEX ROWID", 300));
+        await(() -> store.getWrittenCount() == 3);
+        store.record(plan(ORDERS, "BY INDEX ROWID", 310));
+        store.close();
+        
+        assertEquals(2, events.size());
+        PlanRegressionEvent planChanged = (PlanRegressionEvent) events.get(0);
+        assertEquals(PlanRegressionEvent.Kind.PLAN_CHANGED, planChanged.getKind());
+        assertEquals(SqlFingerprint.idOf(ORDERS), planChanged.getFingerprint().getId());
+        PlanRegressionEvent costChanged = (PlanRegressionEvent) events.get(1);
+        assertEquals(PlanRegressionEvent.Kind.COST_CHANGED, costChanged.getKind());
+        assertEquals(100, costChanged.getPreviousCost());
+        assertEquals(300, costChanged.getCost());
+        assertTrue(costChanged.isCostIncrease());
+    }
+    
+    private PlanStore open(QueryPlanCache cache) {
+        QueryDebugProperties.Store settings = properties.getStore();
+        settings.setEnabled(true);
+        settings.setPath(storePath().toString());
+        PlanStore store = new PlanStore(properties, cache, events::add);
+        store.open();
+        return store;
+    }
+    
+    private Path storePath() {
+        return dir.resolve("plans.qps");
+    }
+    
+    private static QueryExecutionSummary plan(String sql, String access, double cost) {
+        QueryExecutionSummary summary = new QueryExecutionSummary();
+        summary.setFingerprint(SqlFingerprint.of(sql));
+        summary.setCost(cost);
+        summary.setCardinality(10);
+        summary.setPlanTree(ExecutionPlanTree.builder()
+                .addNode(0, -1, "SELECT STATEMENT", null, null, cost, 10, 100)
+                .addNode(1, 0, "TABLE ACCESS", access, "ORDERS", cost, 10, 100)
+                .build());
+        return summary;
+    }
+    
+    private static void awaitWarmed(QueryPlanCache cache, long fingerprintId) {
+        await(() -> cache.peek(fingerprintId) != null);
+    }
+    
+    // The file is read and written on the store's own thread
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryGuardrailTest {
+    
+    private static final long CHEAP = 0x11;
+    private static final long EXPENSIVE = 0x22;
+    private static final long OVERRIDDEN = 0x33;
+    
+    private final QueryDebugProperties properties = new QueryDebugProperties();
+    private final QueryPlanCache planCache = new QueryPlanCache(properties);
+    
+    QueryGuardrailTest() {
+        QueryDebugProperties.Guardrail settings = properties.getGuardrail();
+        settings.setEnabled(true);
+        settings.setMaxCost(1_000);
+        settings.setMaxConcurrent(1);
+        settings.setThrottleTimeout(Duration.ofMillis(50));
+        settings.setWarnInterval(Duration.ofHours(1));
+        planCache.put(CHEAP, plan(10, 1));
+        planCache.put(EXPENSIVE, plan(5_000, 1));
+        planCache.put(OVERRIDDEN, plan(5_000, 1));
+    }
+    
+    @Test
+    void letsThroughStatementsUnderTheLimitOrWithoutAKnownPlan() throws QueryRejectedException {
+        properties.getGuardrail().setMode(QueryDebugProperties.GuardrailMode.REJECT);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        
+        assertNull(guardrail.admit(CHEAP, CHEAP, null));
+        assertNull(guardrail.admit(0x44, 0x44, null));
+        assertEquals(0, guardrail.getRejectedCount());
+    }
+    
+    @Test
+    void warnsAtMostOncePerIntervalAndLetsTheStatementRun() throws QueryRejectedException {
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryGuardrail.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertNull(guardrail.admit(EXPENSIVE, EXPENSIVE, "select * from big"));
+            }
+        } finally {
+            logger.detachAppender(appender);
+        }
+        
+        assertEquals(3, guardrail.getWarnedCount());
+        assertEquals(1, appender.list.size());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("select * from big"));
+    }
+    
+    @Test
+    void rejectsOverTheLimitWithAnSqlState() {
+        properties.getGuardrail().setMode(QueryDebugProperties.GuardrailMode.REJECT);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        
+        QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> guardrail.admit(EXPENSIVE, EXPENSIVE, null));
+        assertEquals(QueryRejectedException.Reason.OVER_LIMIT, e.getReason());
+        assertEquals(QueryRejectedException.SQL_STATE, e.getSQLState());
+        assertEquals(5_000, e.getCost());
+        assertEquals(1, guardrail.getRejectedCount());
+    }
+    
+    @Test
+    void throttlesToMaxConcurrentAndRejectsAfterTheTimeout() throws QueryRejectedException {
+        properties.getGuardrail().setMode(QueryDebugProperties.GuardrailMode.THROTTLE);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        
+        Semaphore permit = guardrail.admit(EXPENSIVE, EXPENSIVE, null);
+        assertNotNull(permit);
+        
+        long start = System.nanoTime();
+        QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> guardrail.admit(EXPENSIVE, EXPENSIVE, null));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertEquals(QueryRejectedException.Reason.THROTTLED, e.getReason());
+        assertEquals(1, guardrail.getThrottledCount());
+        
+        // Other statements have permits of their own
+        planCache.put(0x55, plan(5_000, 1));
+        assertNotNull(guardrail.admit(0x55, 0x55, null));
+        
+        guardrail.release(permit);
+        assertNotNull(guardrail.admit(EXPENSIVE, EXPENSIVE, null));
+    }
+    
+    @Test
+    void appliesPerStatementOverridesOverTheGlobalLimits() throws QueryRejectedException {
+        QueryDebugProperties.Limit reject = new QueryDebugProperties.Limit();
+        reject.setMode(QueryDebugProperties.GuardrailMode.REJECT);
+        properties.getGuardrail().getStatements().put(Long.toHexString(OVERRIDDEN), reject);
+        QueryDebugProperties.Limit generous = new QueryDebugProperties.Limit();
+        generous.setMaxCost(10_000.0);
+        properties.getGuardrail().getStatements().put(Long.toHexString(EXPENSIVE), generous);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        
+        assertNull(guardrail.admit(EXPENSIVE, EXPENSIVE, null));
+        assertEquals(0, guardrail.getWarnedCount());
+        assertThrows(QueryRejectedException.class, () -> guardrail.admit(OVERRIDDEN, OVERRIDDEN, null));
+    }
+    
+    @Test
+    void prefersThePlanOfTheBindBucket() throws QueryRejectedException {
+        properties.getGuardrail().setMode(QueryDebugProperties.GuardrailMode.REJECT);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        long bucketKey = 0x66;
+        planCache.put(bucketKey, plan(10, 1));
+        
+        // The statement's own plan is over the limit, the bucket's is not
+        assertNull(guardrail.admit(EXPENSIVE, bucketKey, null));
+        assertThrows(QueryRejectedException.class, () -> guardrail.admit(EXPENSIVE, 0x77, null));
+    }
+    
+    @Test
+    void ignoresAPlanCachedForAStatementWithACollidingId() throws QueryRejectedException {
+        properties.getGuardrail().setMode(QueryDebugProperties.GuardrailMode.REJECT);
+        QueryGuardrail guardrail = new QueryGuardrail(properties, planCache);
+        QueryExecutionSummary plan = plan(5_000, 1);
+        plan.setFingerprint(SqlFingerprint.restore("SELECT * FROM BIG", 0x88));
+        planCache.put(0x88, plan);
+        
+        assertNull(guardrail.admit(0x88, 0x88, "select * from small"));
+        assertThrows(QueryRejectedException.class, () -> guardrail.admit(0x88, 0x88, "select * from big"));
+    }
+    
+    private static QueryExecutionSummary plan(double cost, long cardinality) {
+        QueryExecutionSummary plan = new QueryExecutionSummary();
+        plan.setCost(cost);
+        plan.setCardinality(cardinality);
+        return plan;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryLatencyRecorderTest {
+    
+    @Test
+    void accumulatesTheCostOfThePlanEachExecutionRanWith() {
+        QueryDebugProperties properties = new QueryDebugProperties();
+        QueryLatencyRecorder recorder = new QueryLatencyRecorder(properties, new QueryPlanCache(properties),
+                new QueryDebugFormatter());
+        
+        recorder.record(7, null, 1_000_000, true, null);
+        QueryLatencyRecorder.FingerprintLatency latency = recorder.get(7);
+        assertEquals(0, latency.getCostedCount());
+        assertTrue(Double.isNaN(latency.getMinCost()));
+        
+        // The plan changes between executions; each one counts the cost it ran with
+        recorder.record(7, null, 1_000_000, true, plan(10, 100));
+        recorder.record(7, null, 1_000_000, false, plan(10, 100));
+        recorder.record(7, null, 1_000_000, true, plan(250, 40));
+        
+        assertEquals(3, latency.getSuccessCount());
+        assertEquals(1, latency.getFailureCount());
+        assertEquals(3, latency.getCostedCount());
+        assertEquals(270.0, latency.getTotalCost());
+        assertEquals(10.0, latency.getMinCost());
+        assertEquals(250.0, latency.getMaxCost());
+        assertEquals(100, latency.getMaxCardinality());
+    }
+    
+    private static QueryExecutionSummary plan(double cost, long cardinality) {
+        QueryExecutionSummary plan = new QueryExecutionSummary();
+        plan.setCost(cost);
+        plan.setCardinality(cardinality);
+        return plan;
+    }
+}
\ No newline at end of file
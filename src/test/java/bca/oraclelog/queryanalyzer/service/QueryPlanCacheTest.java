@@ -0,0 +1,106 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.QueryExecutionSummary;
+import bca.oraclelog.queryanalyzer.model.SqlFingerprint;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryPlanCacheTest {
+    
+    private final QueryDebugProperties properties = new QueryDebugProperties();
+    
+    @Test
+    void countsHitsAndMissesButNotPeeks() {
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        QueryExecutionSummary plan = plan("select a from t");
+        cache.put(1, plan);
+        
+        assertSame(plan, cache.get(1));
+        assertNull(cache.get(2));
+        assertSame(plan, cache.peek(1));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+    
+    @Test
+    void expiresEntriesAfterTheTtl() throws InterruptedException {
+        properties.getCache().setTtl(Duration.ofMillis(1));
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        cache.put(1, plan("select a from t"));
+        Thread.sleep(5);
+        
+        assertNull(cache.peek(1));
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getExpirationCount());
+        
+        // A refresh starts a new TTL
+        properties.getCache().setTtl(Duration.ofMinutes(1));
+        QueryPlanCache longLived = new QueryPlanCache(properties);
+        longLived.put(1, plan("select a from t"));
+        longLived.put(1, plan("select a from t"));
+        assertNotNull(longLived.get(1));
+        assertEquals(1, longLived.size());
+    }
+    
+    @Test
+    void evictsInClockOrderGivingReadEntriesASecondChance() {
+        properties.getCache().setMaxSize(3);
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        cache.put(1, plan("select a from t"));
+        cache.put(2, plan("select b from t"));
+        cache.put(3, plan("select c from t"));
+        cache.get(1);
+        cache.put(4, plan("select d from t"));
+        
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.peek(1));
+        assertNull(cache.peek(2));
+        assertNotNull(cache.peek(3));
+        assertNotNull(cache.peek(4));
+        
+        // 1 went to the back of the queue when it was passed over, so 3 goes next
+        cache.put(5, plan("select e from t"));
+        assertNull(cache.peek(3));
+        assertNotNull(cache.peek(1));
+    }
+    
+    @Test
+    void treatsAPlanOfACollidingStatementAsAMiss() {
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        long id = SqlFingerprint.idOf("select a from t where id = 1");
+        QueryExecutionSummary plan = new QueryExecutionSummary();
+        plan.setFingerprint(SqlFingerprint.restore("SELECT B FROM T", id));
+        cache.put(id, plan);
+        
+        assertNull(cache.get(id, "select a from t where id = 1"));
+        assertSame(plan, cache.get(id, "select b from t"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+    
+    @Test
+    void storesNothingWhenDisabled() {
+        properties.getCache().setEnabled(false);
+        QueryPlanCache cache = new QueryPlanCache(properties);
+        cache.put(1, plan("select a from t"));
+        
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+    
+    private static QueryExecutionSummary plan(String sql) {
+        QueryExecutionSummary summary = new QueryExecutionSummary();
+        summary.setFingerprint(SqlFingerprint.of(sql));
+        return summary;
+    }
+}
\ No newline at end of file
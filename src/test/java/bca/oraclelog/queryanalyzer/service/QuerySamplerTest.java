@@ -0,0 +1,103 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuerySamplerTest {
+    
+    private final QueryDebugProperties properties = new QueryDebugProperties();
+    private final QueryDebugProperties.Sampling sampling = properties.getSampling();
+    
+    @Test
+    void samplesTheFirstExecutionsOfAStatementThenOneInM() {
+        sampling.setFirstPerFingerprint(3);
+        sampling.setThenOneIn(4);
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        StringBuilder decisions = new StringBuilder();
+        for (int i = 0; i < 11; i++) {
+            decisions.append(sampler.shouldSample(1) ? 'x' : '.');
+        }
+        assertEquals("xxx...x...x", decisions.toString());
+        // Every statement shape has its own count
+        assertTrue(sampler.shouldSample(2));
+        assertEquals(6, sampler.getSampledCount());
+        assertEquals(6, sampler.getSampledOutCount());
+    }
+    
+    @Test
+    void samplesNothingAtARateOfZero() {
+        sampling.setRate(0);
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        for (int i = 0; i < 100; i++) {
+            assertFalse(sampler.shouldSample(i));
+        }
+    }
+    
+    @Test
+    void grantsABurstOfExplainsThenRefillsAtTheConfiguredRate() throws InterruptedException {
+        sampling.setMaxExplainsPerSecond(10);
+        sampling.setExplainBurst(3);
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        assertTrue(sampler.tryAcquireExplain());
+        assertTrue(sampler.tryAcquireExplain());
+        assertTrue(sampler.tryAcquireExplain());
+        assertFalse(sampler.tryAcquireExplain());
+        
+        // One interval of 100 ms has passed since the burst, so exactly one permit is back
+        Thread.sleep(150);
+        assertTrue(sampler.tryAcquireExplain());
+        assertFalse(sampler.tryAcquireExplain());
+        assertEquals(2, sampler.getExplainsDeniedCount());
+    }
+    
+    @Test
+    void grantsEveryExplainWithoutABudget() {
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(sampler.tryAcquireExplain());
+        }
+        assertEquals(0, sampler.getExplainsDeniedCount());
+    }
+    
+    @Test
+    void backsOffWhileAnalysesAreSlowOrStarvedAndRecoversWhenTheyAreFast() {
+        // Lets every call change the level, so each step is visible
+        sampling.setRecoveryInterval(Duration.ZERO);
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        sampler.recordAnalysis(Duration.ofSeconds(1).toNanos(), true);
+        sampler.recordAnalysis(1_000, false);
+        sampler.recordSaturation();
+        assertEquals(3, sampler.getBackoffLevel());
+        
+        sampler.recordAnalysis(1_000, true);
+        assertEquals(2, sampler.getBackoffLevel());
+        
+        for (int i = 0; i < 20; i++) {
+            sampler.recordSaturation();
+        }
+        assertEquals(10, sampler.getBackoffLevel());
+    }
+    
+    @Test
+    void keepsTheRateWhenNotAdaptive() {
+        sampling.setAdaptive(false);
+        sampling.setRecoveryInterval(Duration.ZERO);
+        QuerySampler sampler = new QuerySampler(properties);
+        
+        sampler.recordAnalysis(1_000, false);
+        sampler.recordSaturation();
+        assertEquals(0, sampler.getBackoffLevel());
+        assertTrue(sampler.shouldSample(1));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SqlLogReaderTest {
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void splitsPlainStatementsAndSkipsCommentsAndSlashes() throws IOException {
+        Path log = write("-- captured\n"
+                + "select * from a where x = 1;\n"
+                + "\n"
+                + "update b\n"
+                + "   set y = 2\n"
+                + " where z = 3;  -- trailing note\n"
+                + "delete from c\n"
+                + "/\n"
+                + "select 1 from dual");
+        
+        assertEquals(List.of("select * from a where x = 1",
+                "update b\n   set y = 2\n where z = 3",
+                "delete from c",
+                "select 1 from dual"), readAll(log, 0));
+    }
+    
+    @Test
+    void keepsSemicolonsInsideLiteralsAndComments() throws IOException {
+        Path log = write("select 'a;\n"
+                + "b;' from t;\n"
+                + "select q'[x;]' from t /* ;\n"
+                + "still a comment; */ where \"odd;\" = 1;\n"
+                + "select 'it''s;' from t;\n");
+        
+        assertEquals(List.of("select 'a;\nb;' from t",
+                "select q'[x;]' from t /* ;\nstill a comment; */ where \"odd;\" = 1",
+                "select 'it''s;' from t"), readAll(log, 0));
+    }
+    
+    @Test
+    void endsPlsqlBlocksOnlyAtSlash() throws IOException {
+        Path log = write("begin\n"
+                + "  update t set x = 1;\n"
+                + "  commit;\n"
+                + "end;\n"
+                + "/\n"
+                + "create or replace\n"
+                + "procedure p is\n"
+                + "begin\n"
+                + "  null;\n"
+                + "end;\n"
+                + "/\n"
+                + "select 1 from dual;\n");
+        
+        assertEquals(List.of("begin\n  update t set x = 1;\n  commit;\nend;",
+                "create or replace\nprocedure p is\nbegin\n  null;\nend;",
+                "select 1 from dual"), readAll(log, 0));
+    }
+    
+    @Test
+    void resumesFromTheRecordedOffset() throws IOException {
+        String first = "select 1 from dual;\n";
+        String second = "-- é\nselect 'ü' from dual;\n";
+        Path log = write(first + second + "select 3 from dual;\n");
+        
+        long offset;
+        try (SqlLogReader reader = new SqlLogReader(log, QueryDebugProperties.BatchInputFormat.SQL, 0)) {
+            assertEquals("select 1 from dual", reader.next());
+            assertEquals(first.length(), reader.getOffset());
+            assertEquals("select 'ü' from dual", reader.next());
+            offset = reader.getOffset();
+        }
+        assertEquals((first + second).getBytes(StandardCharsets.UTF_8).length, offset);
+        
+        assertEquals(List.of("select 3 from dual"), readAll(log, offset));
+    }
+    
+    @Test
+    void offsetReachesTheEndOfFileAfterTheLastStatement() throws IOException {
+        Path log = write("select 1 from dual;\n\n-- nothing more\n");
+        
+        try (SqlLogReader reader = new SqlLogReader(log, QueryDebugProperties.BatchInputFormat.SQL, 0)) {
+            assertEquals("select 1 from dual", reader.next());
+            assertNull(reader.next());
+            assertEquals(Files.size(log), reader.getOffset());
+        }
+    }
+    
+    @Test
+    void readsQueriesFromJsonLines() throws IOException {
+        Path log = write("{\"fingerprint\":\"1\",\"query\":\"select \\\"a\\\"\\nfrom t\"}\r\n"
+                + "{\"fingerprint\":\"2\"}\n"
+                + "{\"query\": \"select \\u00e9 from dual\"}\n");
+        
+        try (SqlLogReader reader = new SqlLogReader(log, QueryDebugProperties.BatchInputFormat.JSON_LINES, 0)) {
+            assertEquals("select \"a\"\nfrom t", reader.next());
+            assertEquals("select é from dual", reader.next());
+            assertNull(reader.next());
+            assertEquals(Files.size(log), reader.getOffset());
+        }
+    }
+    
+    private Path write(String content) throws IOException {
+        Path log = dir.resolve("captured.sql");
+        Files.writeString(log, content, StandardCharsets.UTF_8);
+        return log;
+    }
+    
+    private static List<String> readAll(Path log, long offset) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (SqlLogReader reader = new SqlLogReader(log, QueryDebugProperties.BatchInputFormat.SQL, offset)) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+}
\ No newline at end of file
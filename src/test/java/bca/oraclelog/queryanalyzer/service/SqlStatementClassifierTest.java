@@ -0,0 +1,76 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.model.SqlCommandType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlStatementClassifierTest {
+    
+    @Test
+    void classifiesByTheLeadingKeywordInAnyCase() {
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify("select 1 from dual"));
+        assertEquals(SqlCommandType.INSERT, SqlStatementClassifier.classify("Insert into t values (1)"));
+        assertEquals(SqlCommandType.UPDATE, SqlStatementClassifier.classify("UPDATE t set a = 1"));
+        assertEquals(SqlCommandType.DELETE, SqlStatementClassifier.classify("delete from t"));
+        assertEquals(SqlCommandType.MERGE, SqlStatementClassifier.classify(
+                "merge into t using s on (t.id = s.id) when matched then update set t.a = s.a"));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("create table t (a number)"));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("commit"));
+    }
+    
+    @Test
+    void treatsCommonTableExpressionsAsSelects() {
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify(
+                "WITH recent AS (select * from orders) select * from recent"));
+        assertTrue(SqlStatementClassifier.isAnalyzable("with x as (select 1 from dual) select * from x"));
+    }
+    
+    @Test
+    void skipsLeadingWhitespaceCommentsHintsAndParentheses() {
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify(
+                "  -- generated by the ORM\n  /* caller: OrderRepository */\n\tselect a from t"));
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify(
+                "((select a from t) union (select b from u))"));
+        assertEquals(SqlCommandType.UPDATE, SqlStatementClassifier.classify("/*+ parallel */ update t set a = 1"));
+    }
+    
+    @Test
+    void requiresAWholeKeyword() {
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("selection_proc(1)"));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("updates"));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("delete$log"));
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify("select"));
+        assertEquals(SqlCommandType.SELECT, SqlStatementClassifier.classify("select*from t"));
+    }
+    
+    @Test
+    void classifiesEmptyOrUnterminatedInputAsOther() {
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify(null));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify(""));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("   \n "));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("/* never closed select 1 from dual"));
+        assertEquals(SqlCommandType.OTHER, SqlStatementClassifier.classify("-- only a comment"));
+        assertFalse(SqlStatementClassifier.isAnalyzable("call refresh_stats()"));
+    }
+    
+    @Test
+    void recognizesAnonymousBlocksAndStoredProgramUnits() {
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("begin null; end;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("-- setup\nDECLARE x number; BEGIN x := 1; END;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("create procedure p as begin null; end;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("CREATE OR REPLACE FUNCTION f RETURN number IS BEGIN RETURN 1; END;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("create or replace editionable package body pkg as end;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("create noneditionable trigger trg before insert on t begin null; end;"));
+        assertTrue(SqlStatementClassifier.isPlsqlBlock("create  or\n replace type t_row as object (a number)"));
+        
+        assertFalse(SqlStatementClassifier.isPlsqlBlock("create table t (a number)"));
+        assertFalse(SqlStatementClassifier.isPlsqlBlock("create or replace view v as select 1 from dual"));
+        assertFalse(SqlStatementClassifier.isPlsqlBlock("create or procedure p"));
+        assertFalse(SqlStatementClassifier.isPlsqlBlock("beginning_of_time"));
+        assertFalse(SqlStatementClassifier.isPlsqlBlock("select 1 from dual"));
+        assertFalse(SqlStatementClassifier.isPlsqlBlock(null));
+    }
+}
\ No newline at end of file
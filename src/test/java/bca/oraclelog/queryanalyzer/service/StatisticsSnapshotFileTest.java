@@ -0,0 +1,223 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import bca.oraclelog.queryanalyzer.config.QueryDebugProperties;
+import bca.oraclelog.queryanalyzer.model.FingerprintStatistics;
+import bca.oraclelog.queryanalyzer.model.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatisticsSnapshotFileTest {
+    
+    // Around every varint length boundary, up to the largest value the format carries
+    private static final long[] VARINT_VALUES = {
+            0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, 1L << 56, Long.MAX_VALUE
+    };
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void readsBackEveryFieldIncludingVarintBoundaries() throws IOException {
+        List<FingerprintStatistics> written = new ArrayList<>();
+        long fingerprintId = Long.MIN_VALUE;
+        for (long value : VARINT_VALUES) {
+            FingerprintStatistics statistics = new FingerprintStatistics();
+            statistics.reset(fingerprintId);
+            statistics.setInstanceCount(value);
+            statistics.setSuccessCount(value);
+            statistics.setFailureCount(value / 2);
+            statistics.setTotalMicros(value);
+            statistics.setMaxMicros(value);
+            statistics.getLatencyCounts()[0] = value;
+            statistics.getLatencyCounts()[LatencyHistogram.BUCKET_COUNT - 1] = value;
+            // Costs are only stored for records with costed executions
+            if (value > 0 && value % 2 == 0) {
+                statistics.setCostedExecutions(value);
+                statistics.setTotalCost(value * 1.5);
+                statistics.setMinCost(0.25);
+                statistics.setMaxCost(value);
+                statistics.setMaxCardinality(value);
+                statistics.setSampleQuery("select 'ü' from dual where id = " + value);
+            }
+            written.add(statistics);
+            fingerprintId += Long.MAX_VALUE / VARINT_VALUES.length;
+        }
+        
+        Path path = dir.resolve("a" + StatisticsSnapshotFile.EXTENSION);
+        write(path, "host-1", 3, 1_700_000_000_000L, written);
+        
+        try (StatisticsSnapshotFile.Reader reader = StatisticsSnapshotFile.open(path)) {
+            assertEquals("host-1", reader.getInstanceId());
+            assertEquals(3, reader.getInstanceCount());
+            assertEquals(1_700_000_000_000L, reader.getCreatedAt());
+            for (FingerprintStatistics expected : written) {
+                assertTrue(reader.next());
+                assertSameStatistics(expected, reader.current());
+            }
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+        }
+    }
+    
+    @Test
+    void detectsATruncatedSnapshot() throws IOException {
+        Path path = dir.resolve("b" + StatisticsSnapshotFile.EXTENSION);
+        write(path, "host-2", 1, 0, List.of(statistics(1, 10, new Random(1)), statistics(2, 10, new Random(2))));
+        
+        // Drop the trailer and the tail of the last record, then compress what is left again
+        byte[] payload;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            payload = in.readAllBytes();
+        }
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(truncated)) {
+            out.write(payload, 0, payload.length - 12);
+        }
+        Files.write(path, truncated.toByteArray());
+        
+        try (StatisticsSnapshotFile.Reader reader = StatisticsSnapshotFile.open(path)) {
+            assertTrue(reader.next());
+            IOException e = assertThrows(IOException.class, () -> {
+                while (reader.next()) {
+                    // Read to the end
+                }
+            });
+            assertTrue(e.getMessage().contains("truncated"), e.getMessage());
+        }
+    }
+    
+    @Test
+    void rejectsRecordsOutOfOrderAndLeavesNoFileUnlessFinished() throws IOException {
+        Path path = dir.resolve("c" + StatisticsSnapshotFile.EXTENSION);
+        try (StatisticsSnapshotFile.Writer writer = StatisticsSnapshotFile.create(path, "host-3", 1, 0)) {
+            writer.write(statistics(5, 1, new Random(5)));
+            assertThrows(IllegalArgumentException.class, () -> writer.write(statistics(5, 1, new Random(6))));
+            assertThrows(IllegalArgumentException.class, () -> writer.write(statistics(4, 1, new Random(7))));
+        }
+        
+        assertFalse(Files.exists(path));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void mergesInStagesToTheSameSnapshotAsInOnePass() throws IOException {
+        Random random = new Random(11);
+        List<Path> instances = new ArrayList<>();
+        for (int instance = 0; instance < 4; instance++) {
+            List<FingerprintStatistics> records = new ArrayList<>();
+            for (long fingerprintId = -20; fingerprintId < 20; fingerprintId++) {
+                // Every instance sees a different subset of the statements
+                if (random.nextInt(3) != 0) {
+                    records.add(statistics(fingerprintId, 1 + random.nextInt(50), random));
+                }
+            }
+            Path path = dir.resolve("instance-" + instance + StatisticsSnapshotFile.EXTENSION);
+            write(path, "instance-" + instance, 1, 0, records);
+            instances.add(path);
+        }
+        
+        Path onePass = merge(dir.resolve("all.out"), instances.get(0), instances.get(1), instances.get(2),
+                instances.get(3));
+        Path first = merge(dir.resolve("first.out"), instances.get(0), instances.get(1));
+        Path second = merge(dir.resolve("second.out"), instances.get(2), instances.get(3));
+        Path staged = merge(dir.resolve("staged.out"), second, first);
+        // Naming a snapshot twice, or through an alias, must not count it twice
+        Path repeated = merge(dir.resolve("repeated.out"), first, second, dir.resolve("x/../first.out"));
+        
+        List<FingerprintStatistics> expected = readAll(onePass);
+        List<FingerprintStatistics> stagedRecords = readAll(staged);
+        List<FingerprintStatistics> repeatedRecords = readAll(repeated);
+        assertEquals(expected.size(), stagedRecords.size());
+        assertEquals(expected.size(), repeatedRecords.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameStatistics(expected.get(i), stagedRecords.get(i));
+            assertSameStatistics(expected.get(i), repeatedRecords.get(i));
+        }
+        try (StatisticsSnapshotFile.Reader reader = StatisticsSnapshotFile.open(staged)) {
+            assertEquals(4, reader.getInstanceCount());
+        }
+    }
+    
+    private static FingerprintStatistics statistics(long fingerprintId, int executions, Random random) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < executions; i++) {
+            histogram.recordMicros(random.nextInt(2_000_000));
+        }
+        // Whole-number costs, so sums are exact in any order
+        int costed = random.nextInt(executions + 1);
+        double cost = 1 + random.nextInt(1_000);
+        return FingerprintStatistics.of(fingerprintId, random.nextBoolean() ? "select " + fingerprintId : null,
+                executions - executions / 5, executions / 5, histogram, costed, cost * costed, cost, cost,
+                costed > 0 ? random.nextInt(100_000) : 0);
+    }
+    
+    private static void write(Path path, String instanceId, long instanceCount, long createdAt,
+                              List<FingerprintStatistics> records) throws IOException {
+        try (StatisticsSnapshotFile.Writer writer = StatisticsSnapshotFile.create(path, instanceId, instanceCount,
+                createdAt)) {
+            for (FingerprintStatistics statistics : records) {
+                writer.write(statistics);
+            }
+            writer.finish();
+            assertEquals(records.size(), writer.getRecordCount());
+        }
+    }
+    
+    private Path merge(Path output, Path... inputs) throws IOException {
+        QueryDebugProperties.Snapshots settings = new QueryDebugProperties.Snapshots();
+        for (Path input : inputs) {
+            settings.getMergeInputs().add(input.toString());
+        }
+        settings.setMergeOutput(output.toString());
+        settings.setMergeReport(dir.resolve(output.getFileName() + ".txt").toString());
+        new StatisticsSnapshotMerger(settings, new QueryDebugFormatter()).run();
+        return output;
+    }
+    
+    private static List<FingerprintStatistics> readAll(Path path) throws IOException {
+        List<FingerprintStatistics> records = new ArrayList<>();
+        try (StatisticsSnapshotFile.Reader reader = StatisticsSnapshotFile.open(path)) {
+            while (reader.next()) {
+                records.add(reader.current().copy());
+            }
+        }
+        return records;
+    }
+    
+    private static void assertSameStatistics(FingerprintStatistics expected, FingerprintStatistics actual) {
+        assertEquals(expected.getFingerprintId(), actual.getFingerprintId());
+        assertEquals(expected.getSampleQuery(), actual.getSampleQuery());
+        assertEquals(expected.getInstanceCount(), actual.getInstanceCount());
+        assertEquals(expected.getSuccessCount(), actual.getSuccessCount());
+        assertEquals(expected.getFailureCount(), actual.getFailureCount());
+        assertArrayEquals(expected.getLatencyCounts(), actual.getLatencyCounts());
+        assertEquals(expected.getTotalMicros(), actual.getTotalMicros());
+        assertEquals(expected.getMaxMicros(), actual.getMaxMicros());
+        assertEquals(expected.getCostedExecutions(), actual.getCostedExecutions());
+        assertEquals(expected.getTotalCost(), actual.getTotalCost());
+        assertEquals(expected.getMinCost(), actual.getMinCost());
+        assertEquals(expected.getMaxCost(), actual.getMaxCost());
+        assertEquals(expected.getMaxCardinality(), actual.getMaxCardinality());
+    }
+}
\ No newline at end of file
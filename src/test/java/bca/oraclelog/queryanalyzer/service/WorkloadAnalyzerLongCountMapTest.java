@@ -0,0 +1,86 @@
+package bca.oraclelog.queryanalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WorkloadAnalyzerLongCountMapTest {
+    
+    @Test
+    void countsTheZeroKeyAlongsideOthers() {
+        WorkloadAnalyzer.LongCountMap map = new WorkloadAnalyzer.LongCountMap();
+        
+        assertEquals(0, map.get(0));
+        assertEquals(1, map.increment(0));
+        assertEquals(2, map.increment(0));
+        assertEquals(1, map.increment(42));
+        
+        assertEquals(2, map.get(0));
+        assertEquals(1, map.get(42));
+        assertEquals(2, map.size());
+        
+        map.put(0, 7);
+        assertEquals(7, map.get(0));
+        assertEquals(2, map.size());
+    }
+    
+    @Test
+    void keepsEveryCountWhileGrowingPastItsInitialCapacity() {
+        WorkloadAnalyzer.LongCountMap map = new WorkloadAnalyzer.LongCountMap();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        
+        // Negative keys and keys differing only in the high word included
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(5_000) == 0 ? 0 : (long) random.nextInt(20_000) << (i % 2 == 0 ? 0 : 32);
+            if (i % 3 == 0) {
+                key = -key;
+            }
+            expected.merge(key, 1L, Long::sum);
+            assertEquals((long) expected.get(key), map.increment(key));
+        }
+        
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, count) -> assertEquals((long) count, map.get(key), "key " + key));
+        assertEquals(0, map.get(Long.MAX_VALUE));
+    }
+    
+    @Test
+    void writesEntriesThatReadBackIntoAnEqualMap() throws IOException {
+        WorkloadAnalyzer.LongCountMap map = new WorkloadAnalyzer.LongCountMap();
+        for (long key = 0; key < 3_000; key++) {
+            map.put(key * 31, key + 1);
+        }
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            map.writeTo(out);
+        }
+        
+        WorkloadAnalyzer.LongCountMap restored = new WorkloadAnalyzer.LongCountMap();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                restored.put(in.readLong(), in.readLong());
+            }
+        }
+        
+        assertEquals(map.size(), restored.size());
+        for (long key = 0; key < 3_000; key++) {
+            assertEquals(key + 1, restored.get(key * 31));
+        }
+        
+        restored.clear();
+        assertEquals(0, restored.size());
+        assertEquals(0, restored.get(0));
+    }
+}
\ No newline at end of file